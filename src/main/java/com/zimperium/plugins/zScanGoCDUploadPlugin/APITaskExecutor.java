@@ -2,22 +2,25 @@ package com.zimperium.plugins.zScanGoCDUploadPlugin;
 
 import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
 
-import okhttp3.MediaType;
-import okhttp3.MultipartBody;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
-import okhttp3.ResponseBody;
-
-
-import java.util.concurrent.TimeUnit;
 import java.util.Map;
 import java.util.LinkedHashMap;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLHandshakeException;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
@@ -25,39 +28,111 @@ import com.google.gson.JsonParser;
  * APITaskExecutor encapsulates API calls to the Zimperium server. It provides public methods
  * to login/obtain auth token, refresh a token, upload a binary, assign application to a team, and check status of
  * an assessment.  Auth tokens are managed internally. Auth token is exposed to the outside through a getter function.  
+ * All calls are registered with the task's {@link CancellationToken}, so they are aborted when the job is cancelled;
+ * a cancelled call surfaces as a {@link java.util.concurrent.CancellationException}.  Requests are sent through the
+ * {@link HttpTransport} selected in the task configuration.
+ *
+ * <p>One executor is shared by all binaries of a job, which the {@link UploadScheduler} may process at the same time.
+ * Tokens are therefore only replaced under a lock, and concurrent refreshes within
+ * {@link #minRefreshInterval} seconds of each other result in a single refresh request.  Messages about a binary go
+ * to the console set for its thread with {@link #setBinaryConsole(JobConsoleLogger)}.</p>
  */
 public class APITaskExecutor {
-    public static final MediaType JSON_TYPE = MediaType.parse("application/json");
-    public static final MediaType FILE_TYPE = MediaType.parse("application/octet-stream");
+    public static final String JSON_TYPE = "application/json";
+    public static final String FILE_TYPE = "application/octet-stream";
     public static final String toolId = "GOCD";
     public static final String toolName = "GoCD Plugin";
 
-    private URLBuilder urlBuilder;
-    JobConsoleLogger console;
+    // the upload API does not document a checksum field, so sending one is opt-in
+    public static final String SEND_DIGEST_PROPERTY = "zscan.upload.sendDigest";
+    public static final String SEND_DIGEST_ENV = "ZSCAN_UPLOAD_SEND_DIGEST";
+    public static final String DIGEST_FIELD = "buildFileSha256";
+    // nor the package ID and version read by the preflight check
+    public static final String SEND_METADATA_PROPERTY = "zscan.upload.sendMetadata";
+    public static final String SEND_METADATA_ENV = "ZSCAN_UPLOAD_SEND_METADATA";
 
-    private String authToken;
-    private String refreshToken;
+    public final static long minRefreshInterval = 60;
 
-    private final OkHttpClient client;
+    private URLBuilder urlBuilder;
+    JobConsoleLogger console;
+    // console of the binary the current thread processes, if any
+    private final ThreadLocal<JobConsoleLogger> binaryConsole = new ThreadLocal<>();
+    private final CancellationToken cancellation;
+
+    private volatile String authToken;
+    private volatile String refreshToken;
+    private volatile long tokenIssuedAt;
+    private volatile boolean serverUnavailable;
+    // held while tokens are obtained; a Lock rather than a monitor, so virtual threads do not pin their carrier during the call
+    private final ReentrantLock tokenLock = new ReentrantLock();
+
+    private final HttpTransport transport;
     private final Gson gson;
+    private volatile EventLog eventLog = EventLog.DISABLED;
+    private volatile String job = "";
 
-    public APITaskExecutor(URLBuilder urlBuilder, JobConsoleLogger console) {
+    public APITaskExecutor(URLBuilder urlBuilder, JobConsoleLogger console, CancellationToken cancellation, HttpTransport transport) {
         gson = new Gson();
 
         this.urlBuilder = urlBuilder;
         this.console = console;
+        this.cancellation = cancellation;
+        this.transport = transport;
+    }
 
-        client = new OkHttpClient.Builder()
-            .connectTimeout(10, TimeUnit.SECONDS)
-            .writeTimeout(10, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .build();
+    /**
+     * Sets the event log every API call is recorded in.
+     */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Sets the GoCD job recorded with the Java Flight Recorder event of every API call.
+     */
+    public void setJob(String job) {
+        this.job = job;
+    }
+
+    /**
+     * Sets the console messages about the binary processed by the calling thread are printed to, e.g. one that
+     * prefixes them with its file name; {@code null} to print to the job console again.
+     */
+    public void setBinaryConsole(JobConsoleLogger console) {
+        if (console != null) {
+            binaryConsole.set(console);
+        }
+        else {
+            binaryConsole.remove();
+        }
+    }
+
+    private JobConsoleLogger console() {
+        JobConsoleLogger console = binaryConsole.get();
+        return (console != null) ? console : this.console;
     }
 
     public String getAuthToken() {
         return authToken;
     }
 
+    /**
+     * @return {@code true} if the most recent call failed because the server could not be reached or responded
+     *         that it is temporarily unavailable (HTTP 502, 503 or 504), as opposed to rejecting the request; 
+     *         while calls run on several threads, use {@link #isServerUnavailable(ApiResponse)} instead
+     */
+    public boolean wasServerUnavailable() {
+        return serverUnavailable;
+    }
+
+    /**
+     * @param response response of a call that returns {@code null} if the server could not be reached
+     * @return {@code true} if the server could not be reached or responded that it is temporarily unavailable
+     */
+    public static boolean isServerUnavailable(ApiResponse response) {
+        return response == null || response.code() == 502 || response.code() == 503 || response.code() == 504;
+    }
+
     /**
      * Authenticates the client by sending a login request with the provided client ID and secret.
      * 
@@ -73,51 +148,65 @@ public class APITaskExecutor {
      * 
      * @throws NullPointerException if the response body does not contain the expected tokens.
      * 
-     * @see okhttp3.Request
-     * @see okhttp3.Response
-     * @see okhttp3.RequestBody
+     * @see ApiRequest
+     * @see ApiResponse
+     * @see RequestContent
      * @see java.io.IOException
      */
     public boolean login(String clientId, String clientSecret) {
+        tokenLock.lock();
+        try {
+            return sendLogin(clientId, clientSecret);
+        }
+        finally {
+            tokenLock.unlock();
+        }
+    }
 
+    private boolean sendLogin(String clientId, String clientSecret) {
         boolean result = false;
         String loginUrl = urlBuilder.getLoginURL();
-        console.printLine("Sending login request to " + loginUrl);
+        console().printLine("Sending login request to " + loginUrl);
 
         Map<String, String> loginPayload = new LinkedHashMap<>();
         loginPayload.put("clientId", clientId);
         loginPayload.put("secret", clientSecret);
 
         String jsonBody = gson.toJson(loginPayload);
-        RequestBody loginBody = RequestBody.create(jsonBody, JSON_TYPE);
-        Request request = new Request.Builder()
+        RequestContent loginBody = RequestContent.of(jsonBody, JSON_TYPE);
+        ApiRequest request = new ApiRequest.Builder()
             .url(loginUrl)
             .post(loginBody)
             .build();
 
-        try (Response response = client.newCall(request).execute()) {
+        TaskPlugin.metrics().logins.increment();
+        try (ApiResponse response = execute(request, "login", new PluginEvents.Login())) {
             if (!response.isSuccessful()) {
-                console.printLine("Unable to login: HTTP" + response.code() + " - " + response.body().string());
+                console().printLine("Unable to login: HTTP" + response.code() + " - " + response.body().errorString());
             }
             else {
-                ResponseBody responseBody = response.body();
+                ApiResponse.Body responseBody = response.body();
                 try {
                     JsonObject jsonObject = JsonParser.parseString(responseBody.string()).getAsJsonObject();
                     authToken = jsonObject.get("accessToken").getAsString();
                     refreshToken = jsonObject.get("refreshToken").getAsString();
+                    tokenIssuedAt = System.currentTimeMillis();
 
                     result = true;
                 }
                 catch (NullPointerException e) {
-                    console.printLine("Exception parsing login response: " + e.getLocalizedMessage());
+                    console().printLine("Exception parsing login response: " + e.getLocalizedMessage());
                 }
             }
         }
         catch (IOException e) {
-            console.printLine("Exception trying to login: " + e.getLocalizedMessage());
+            console().printLine("Exception trying to login: " + e.getLocalizedMessage());
         }
 
-        console.printLine(result ? "Login successful" : "Login unsuccessful");
+        if (!result) {
+            TaskPlugin.metrics().loginFailures.increment();
+        }
+        console().printLine(result ? "Login successful" : "Login unsuccessful");
         return result;
     }
 
@@ -126,27 +215,45 @@ public class APITaskExecutor {
      * 
      * <p>This method constructs a multipart request containing metadata such as 
      * the branch name, build number, and CI tool information, along with the file 
-     * to be uploaded. If the request is successful, it logs the success message 
-     * and the time taken for the upload. If an exception occurs during the upload, 
-     * it prints an error message to the console.</p>
+     * to be uploaded. Directories are uploaded as a ZIP archive that is built while it 
+     * is being sent (see {@link DirectoryZipContent}). While the file is being sent, 
+     * progress is printed to the console periodically (see {@link ProgressContent}). If the request is successful, it logs 
+     * the success message, the time taken for the upload and the average throughput. 
+     * If an exception occurs during the upload, it prints an error message to the console.</p>
      * 
-     * @param file    The {@link File} object representing the binary to be uploaded.
+     * @param file    The {@link File} object representing the binary (or directory) to be uploaded.
      * @param context The {@link Context} object containing environment variables 
      *                such as branch name and build number.
-     * @return A {@link Response} object containing the server's response to the upload request.
+     * @param info    Result of the preflight inspection of the file; the package ID and 
+     *                version are sent along when they are known.
+     * @return An {@link ApiResponse} object containing the server's response to the upload request.
      *         If an exception occurs, the method returns {@code null}.
      * 
      * @throws NullPointerException if {@code file} or {@code context} is {@code null}.
      * @throws IllegalArgumentException if the specified file does not exist.
      * 
-     * @see okhttp3.Request
-     * @see okhttp3.RequestBody
-     * @see okhttp3.MultipartBody
-     * @see okhttp3.Response
+     * @see ApiRequest
+     * @see MultipartContent
+     * @see ApiResponse
      * @see java.io.IOException
      */
-    public Response uploadBinary(File file, Context context) {
-        console.printLine("Uploading " + file.getAbsolutePath() + " to " + urlBuilder.getUploadURL());
+    public ApiResponse uploadBinary(File file, Context context, BinaryInfo info) {
+        String uploadName = file.isDirectory() ? file.getAbsolutePath() + DirectoryZipContent.extension : file.getAbsolutePath();
+        return uploadBinary(file, uploadName, context, info);
+    }
+
+    /**
+     * Same as {@link #uploadBinary(File, Context, BinaryInfo)}, but sends the file under the specified name 
+     * (e.g., the original path of a file uploaded from the {@link Outbox}).
+     * 
+     * @param file       The binary (or directory) to be uploaded.
+     * @param uploadName The file name sent to the server.
+     * @param context    Environment variables such as branch name and build number.
+     * @param info       Result of the preflight inspection of the file.
+     * @return An {@link ApiResponse} object containing the server's response, or {@code null} if an exception occurred.
+     */
+    public ApiResponse uploadBinary(File file, String uploadName, Context context, BinaryInfo info) {
+        console().printLine("Uploading " + file.getAbsolutePath() + " to " + urlBuilder.getUploadURL());
 
         @SuppressWarnings("unchecked")
         Map<String, String> envVars = context.getEnvironmentVariables();
@@ -154,38 +261,94 @@ public class APITaskExecutor {
         String branchName = (envVars.get("BRANCH_NAME") != null) ? envVars.get("BRANCH_NAME") : "";
         String buildNumber = (envVars.get("BUILD_NUMBER") != null) ? envVars.get("BUILD_NUMBER") : "";
 
-        RequestBody uploadRequestBody = new MultipartBody.Builder()
-            .setType(MultipartBody.FORM)
+        // directories (e.g., .app bundles) are zipped on the fly while they are being sent
+        boolean isDirectory = file.isDirectory();
+        RequestContent contentBody = isDirectory ? new DirectoryZipContent(file) : RequestContent.of(file, FILE_TYPE);
+
+        // checksums are computed while the file is sent, so the file is read only once
+        DigestContent digestBody = new DigestContent(contentBody);
+        ProgressContent fileBody = new ProgressContent(digestBody, file.getName(), console());
+
+        MultipartContent.Builder uploadBodyBuilder = new MultipartContent.Builder()
             .addFormDataPart("ciToolId", toolId)
             .addFormDataPart("ciToolName", toolName)
             .addFormDataPart("branchName", branchName)
-            .addFormDataPart("buildNumber", buildNumber)
-            .addFormDataPart("buildFile", file.getAbsolutePath(), RequestBody.create(file, FILE_TYPE))
-            .build();
+            .addFormDataPart("buildNumber", buildNumber);
+        if (Boolean.parseBoolean(System.getProperty(SEND_METADATA_PROPERTY, System.getenv(SEND_METADATA_ENV)))) {
+            if (!info.getPackageId().isEmpty()) {
+                uploadBodyBuilder.addFormDataPart("appPackageId", info.getPackageId());
+            }
+            if (!info.getVersion().isEmpty()) {
+                uploadBodyBuilder.addFormDataPart("appVersion", info.getVersion());
+            }
+        }
+        uploadBodyBuilder.addFormDataPart("buildFile", uploadName, fileBody);
+        boolean sendDigest = Boolean.parseBoolean(System.getProperty(SEND_DIGEST_PROPERTY, System.getenv(SEND_DIGEST_ENV)));
+        if (sendDigest) {
+            // follows the file, so the digest is known by the time it is written
+            uploadBodyBuilder.addFormDataPart(DIGEST_FIELD, null, digestBody.sha256Part());
+        }
+        MultipartContent uploadRequestBody = uploadBodyBuilder.build();
         
-        Request uploadRequest = new Request.Builder()
+        ApiRequest uploadRequest = new ApiRequest.Builder()
             .header("Authorization", "BEARER " + authToken)
             .url(urlBuilder.getUploadURL())
             .post(uploadRequestBody)
             .build();
         
-        Response uploadResponse = null;
+        PluginEvents.Upload uploadEvent = new PluginEvents.Upload();
+        uploadEvent.file = file.getAbsolutePath();
+
+        ApiResponse uploadResponse = null;
+        TaskPlugin.metrics().uploads.increment();
         try {
             long start = System.currentTimeMillis();
-            uploadResponse = client.newCall(uploadRequest).execute();
+            // the event is committed below, once the checksum of the file as sent is known
+            uploadResponse = call(uploadRequest, "uploading " + file.getAbsolutePath(), uploadEvent);
             long end = System.currentTimeMillis();
 
             if (uploadResponse.isSuccessful()) {
-                console.printLine("Successfully uploaded " + file.getAbsolutePath() + " to " + urlBuilder.getUploadURL() + " (" + (end - start) + "ms)");
+                // the response is small; read here so the build ID can be recorded with the event, and passed on
+                String uploadResult = uploadResponse.body().string();
+                uploadResponse = uploadResponse.withBody(uploadResult);
+                uploadEvent.buildId = buildIdOf(uploadResult);
+                TaskPlugin.metrics().recordUpload(fileBody.getBytesWritten(), fileBody.getElapsedMillis());
+                console().printLine("Successfully uploaded " + file.getAbsolutePath() + " to " + urlBuilder.getUploadURL() + " (" + (end - start) + "ms, " 
+                    + String.format("%.2f", fileBody.getBytesPerSecond() / (1024.0 * 1024.0)) + " MB/s)");
+                if (sendDigest) {
+                    console().printLine("SHA-256 of " + uploadName + ": " + digestBody.getSha256() + " (CRC32C: " + digestBody.getCrc32c() + ")");
+                }
             }
+            uploadEvent.sha256 = digestBody.getSha256();
         }
         catch(IOException e) {
-            console.printLine("Exception uploading file: " + e.getLocalizedMessage());
+            console().printLine("Exception uploading file: " + e.getLocalizedMessage());
+        }
+        finally {
+            commit(uploadEvent);
+        }
+
+        if (uploadResponse == null || !uploadResponse.isSuccessful()) {
+            TaskPlugin.metrics().uploadFailures.increment();
         }
 
         return uploadResponse;
     }
 
+    /**
+     * @return build ID in the response to an upload, or {@code null} if it has none
+     */
+    private static String buildIdOf(String uploadResult) {
+        try {
+            JsonElement buildId = JsonParser.parseString(uploadResult).getAsJsonObject().get("buildId");
+            return (buildId == null || buildId.isJsonNull()) ? null : buildId.getAsString();
+        }
+        catch (RuntimeException e) {
+            // reported by the caller, which parses the response again
+            return null;
+        }
+    }
+
     /**
      * Sends an HTTP GET request to retrieve the list of teams.
      * 
@@ -194,33 +357,36 @@ public class APITaskExecutor {
      * to retrieve the response to the console. If an I/O exception occurs, an error message 
      * is printed instead.</p>
      * 
-     * @return A {@link Response} object containing the HTTP response with the list of teams.
+     * @param buildId The Build ID of the upload the lookup is made for; recorded with the call.
+     * @return An {@link ApiResponse} object containing the HTTP response with the list of teams.
      *         If an exception occurs, the method returns {@code null}.
      * 
      * @throws NullPointerException if the authorization token is {@code null}.
-     * @see okhttp3.Request
-     * @see okhttp3.Response
+     * @see ApiRequest
+     * @see ApiResponse
      * @see java.io.IOException
      */
-    public Response listTeams() {
-        Request teamListRequest = new Request.Builder()
+    public ApiResponse listTeams(String buildId) {
+        ApiRequest teamListRequest = new ApiRequest.Builder()
         .header("Authorization", "BEARER " + authToken)
         .url(urlBuilder.getTeamsURL())
         .get()
         .build();
     
-        Response teamListResponse = null;
+        ApiResponse teamListResponse = null;
         try {
             long start = System.currentTimeMillis();
-            teamListResponse = client.newCall(teamListRequest).execute();
+            PluginEvents.TeamLookup teamEvent = new PluginEvents.TeamLookup();
+            teamEvent.buildId = buildId;
+            teamListResponse = execute(teamListRequest, "getting list of teams", teamEvent);
             long end = System.currentTimeMillis();
 
             if (teamListResponse.isSuccessful()) {
-                console.printLine("Received list of teams in " + (end - start) + "ms");
+                console().printLine("Received list of teams in " + (end - start) + "ms");
             }
         }
         catch(IOException e) {
-            console.printLine("Exception getting list of teams: " + e.getLocalizedMessage());
+            console().printLine("Exception getting list of teams: " + e.getLocalizedMessage());
         }
 
         return teamListResponse;
@@ -236,17 +402,18 @@ public class APITaskExecutor {
      * 
      * @param appId  The ID of the application to be assigned to the team.
      * @param teamId The ID of the team to which the application will be assigned.
+     * @param buildId The Build ID of the upload that created the application; recorded with the call.
      * @return {@code true} if the application was successfully assigned to the team; 
      *         {@code false} if the request fails or an exception occurs.
      * 
      * @throws NullPointerException if {@code appId} or {@code teamId} is {@code null}.
      * 
-     * @see okhttp3.Request
-     * @see okhttp3.Response
-     * @see okhttp3.RequestBody
+     * @see ApiRequest
+     * @see ApiResponse
+     * @see RequestContent
      * @see java.io.IOException
      */
-    public boolean assignAppToTeam(String appId, String teamId) {
+    public boolean assignAppToTeam(String appId, String teamId, String buildId) {
         boolean result = false;
 
         // create payload in the json format {"teamId": ""}
@@ -254,27 +421,118 @@ public class APITaskExecutor {
         teamPayload.put("teamId", teamId);
 
         String jsonBody = gson.toJson(teamPayload);
-        RequestBody teamBody = RequestBody.create(jsonBody, JSON_TYPE);
-        Request assignRequest = new Request.Builder()
+        RequestContent teamBody = RequestContent.of(jsonBody, JSON_TYPE);
+        ApiRequest assignRequest = new ApiRequest.Builder()
             .url(urlBuilder.getCompleteUploadURL(appId))
             .header("Authorization", "BEARER " + authToken)
             .put(teamBody)
             .build();
 
-        try {
-            Response assignResponse = client.newCall(assignRequest).execute();
+        PluginEvents.Assignment assignEvent = new PluginEvents.Assignment();
+        assignEvent.appId = appId;
+        assignEvent.buildId = buildId;
 
+        try (ApiResponse assignResponse = execute(assignRequest, "assigning application " + appId + " to team " + teamId, assignEvent)) {
             if(assignResponse.isSuccessful()) {
-                console.printLine("Successfully assigned application to team.");
+                console().printLine("Successfully assigned application to team.");
                 result = true;
             }
             else {
-                console.printLine("Unable to assign this app to a team.  Please review team name setting and retry.");
-                console.printLine("HTTP " + assignResponse.code() + ": " + assignResponse.body().string());
+                console().printLine("Unable to assign this app to a team.  Please review team name setting and retry.");
+                console().printLine("HTTP " + assignResponse.code() + ": " + assignResponse.body().errorString());
             }
         }
         catch (IOException e) {
-            console.printLine("Unable to assign this app to a team. Unexpected exception: " + e.getLocalizedMessage());
+            console().printLine("Unable to assign this app to a team. Unexpected exception: " + e.getLocalizedMessage());
+        }
+
+        return result;
+    }
+
+    /**
+     * Looks up a team by name and assigns an application to it.  If no team with that name exists, the 
+     * application is assigned to the 'Default' team.
+     * 
+     * <p>Problems are printed to the console; only cancellation and unexpected runtime exceptions are 
+     * propagated to the caller.</p>
+     * 
+     * @param zdevAppId The ID of the application to be assigned to the team.
+     * @param teamName  The name of the team to which the application will be assigned.
+     * @param buildId   The Build ID of the upload that created the application; recorded with the calls.
+     * @return {@code true} if the application was successfully assigned to a team; {@code false} otherwise.
+     * 
+     * @see #listTeams(String)
+     * @see #assignAppToTeam(String, String, String)
+     */
+    public boolean assignAppToTeamByName(String zdevAppId, String teamName, String buildId) {
+        boolean result = false;
+        String teamId = "";
+
+        // get list of teams from the server
+        try (ApiResponse listTeamsResponse = listTeams(buildId)) {
+            if(listTeamsResponse == null) {
+                // the problem has been printed already
+                return false;
+            }
+            if(!listTeamsResponse.isSuccessful()) {
+                console().printLine("Unable to assign this app to a team.  Please review team name setting and credentials, and retry.");
+                console().printLine("HTTP " + listTeamsResponse.code() + ": " + listTeamsResponse.body().errorString());
+                return false;
+            }
+
+            // extract list of teams from the response
+            String teams = listTeamsResponse.body().string();
+            JsonObject teamsObject = JsonParser.parseString(teams).getAsJsonObject();
+            if(!teamsObject.isJsonNull() && !teamsObject.isEmpty() && teamsObject.get("content").isJsonArray()) {
+                JsonArray teamArray = teamsObject.get("content").getAsJsonArray();
+                console().printLine("Found " + teamArray.size() + " teams");
+                for (JsonElement teamElement : teamArray) {
+                    String name = teamElement.getAsJsonObject().get("name").getAsString();
+                    // log(console, "Team " + name);
+                    if(name.equals(teamName)){
+                        teamId = teamElement.getAsJsonObject().get("id").getAsString();
+                        //log(console, "Found team with ID: " + teamId);
+                        break;
+                    }
+                }
+
+                // if we did not find the specified team, try 'Default'
+                if(teamId.isEmpty() && !teamName.equals("Default")) {
+                    console().printLine("Team " + teamName + " not found.  Trying the 'Default' team.");
+                    for (JsonElement teamElement : teamArray) {
+                        String name = teamElement.getAsJsonObject().get("name").getAsString();
+                        // log(console, "Team " + name);
+                        if(name.equals("Default")){
+                            teamId = teamElement.getAsJsonObject().get("id").getAsString();
+                            console().printLine("Found team with ID: " + teamId);
+                            break;
+                        }
+                    }
+                }
+
+                // Assign the app to the team
+                if(!teamId.isEmpty()) {
+                    result = assignAppToTeam(zdevAppId, teamId, buildId);
+                }
+                else {
+                    console().printLine("Unable to assign this app to a team.  Unexpected response from the server.");
+                    console().printLine("HTTP " + listTeamsResponse.code() + ": " + abbreviate(teams));
+                }
+            }
+            else {
+                console().printLine("Unable to assign this app to a team.  Please review team name setting and credentials, and retry.");
+                console().printLine("HTTP " + listTeamsResponse.code() + ": " + abbreviate(teams));
+            }
+        }
+        catch(CancellationException e) {
+            throw e;
+        }
+        catch(RuntimeException e) {
+            console().printLine("Unexpected runtime exception: " + e.getLocalizedMessage());
+            throw e;
+        }
+        catch(Exception e) {
+            console().printLine("Error processing team list: " + e.getLocalizedMessage());
         }
 
         return result;
@@ -291,27 +549,47 @@ public class APITaskExecutor {
      * 
      * @param buildId The Build ID of the assessment whose status needs to be checked.
      *                This value is appended to the status URL for the request.
-     * @return The {@link Response} object containing the HTTP response from the server.
+     * @return The {@link ApiResponse} object containing the HTTP response from the server.
      *         If an exception occurs during the call, the method returns {@code null}.
      * @throws NullPointerException if {@code buildId} is {@code null}.
      * 
-     * @see okhttp3.Request
-     * @see okhttp3.Response
+     * @see ApiRequest
+     * @see ApiResponse
      * @see java.io.IOException
      */
-    public Response checkStatus(String buildId) {
-        Request statusRequest = new Request.Builder()
+    public ApiResponse checkStatus(String buildId) {
+        return checkStatus(buildId, null);
+    }
+
+    /**
+     * Same as {@link #checkStatus(String)}, but asks the server to answer 304 Not Modified (without a body) if the
+     * status has not changed since {@code snapshot} was taken.
+     *
+     * @param buildId  The Build ID of the assessment whose status needs to be checked.
+     * @param snapshot The status received by earlier polls of the build, or {@code null} to poll unconditionally.
+     * @return The {@link ApiResponse} object containing the HTTP response from the server, or {@code null} if an
+     *         exception occurred; update the snapshot with {@link StatusSnapshot#update(ApiResponse)}.
+     */
+    public ApiResponse checkStatus(String buildId, StatusSnapshot snapshot) {
+        ApiRequest.Builder statusRequestBuilder = new ApiRequest.Builder()
         .header("Authorization", "BEARER " + authToken)
         .url(urlBuilder.getStatusURL(buildId))
-        .get()
-        .build();
+        .get();
+        if (snapshot != null) {
+            snapshot.addConditions(statusRequestBuilder);
+        }
+        ApiRequest statusRequest = statusRequestBuilder.build();
     
-        Response statusResponse = null;
+        PluginEvents.StatusPoll statusEvent = new PluginEvents.StatusPoll();
+        statusEvent.buildId = buildId;
+
+        ApiResponse statusResponse = null;
+        TaskPlugin.metrics().statusPolls.increment();
         try {
-            statusResponse = client.newCall(statusRequest).execute();
+            statusResponse = execute(statusRequest, "checking status of build " + buildId, statusEvent);
         }
         catch(IOException e) {
-            console.printLine("Exception checking assessment status: " + e.getLocalizedMessage());
+            console().printLine("Exception checking assessment status: " + e.getLocalizedMessage());
         }
 
         return statusResponse;
@@ -325,7 +603,9 @@ public class APITaskExecutor {
      * <p>This method sends a JSON payload containing the refresh token to the 
      * refresh URL. On a successful response, the new access and refresh tokens 
      * are extracted from the response body. If the current refresh token is null or empty, 
-     * the method returns {@code false} immediately without making a request.</p>
+     * the method returns {@code false} immediately without making a request.  If the tokens were obtained less than 
+     * {@link #minRefreshInterval} seconds ago (e.g., by another binary of the same job), the method returns {@code true} 
+     * without making a request.</p>
      * 
      * @return {@code true} if the token was successfully refreshed and both the 
      *         access and refresh tokens were updated; {@code false} otherwise.
@@ -334,52 +614,206 @@ public class APITaskExecutor {
      * 
      * @throws NullPointerException if the response body is missing required token fields.
      * 
-     * @see okhttp3.Request
-     * @see okhttp3.Response
-     * @see okhttp3.RequestBody
+     * @see ApiRequest
+     * @see ApiResponse
+     * @see RequestContent
      * @see java.io.IOException
      */
     public boolean refreshToken() {
+        tokenLock.lock();
+        try {
+            return sendRefresh();
+        }
+        finally {
+            tokenLock.unlock();
+        }
+    }
+
+    private boolean sendRefresh() {
         if(refreshToken == null || refreshToken.isEmpty()) {
             return false;
         }
+        if(System.currentTimeMillis() - tokenIssuedAt < minRefreshInterval * 1000) {
+            // refreshed by another binary of this job a moment ago
+            return true;
+        }
 
         boolean result = false;
         String refreshUrl = urlBuilder.getRefreshURL();
-        console.printLine("Refreshing access token...");
+        console().printLine("Refreshing access token...");
+        TaskPlugin.metrics().tokenRefreshes.increment();
 
         Map<String, String> refreshPayload = new LinkedHashMap<>();
         refreshPayload.put("refreshToken", refreshToken);
 
         String jsonBody = gson.toJson(refreshPayload);
-        RequestBody refreshBody = RequestBody.create(jsonBody, JSON_TYPE);
-        Request request = new Request.Builder()
+        RequestContent refreshBody = RequestContent.of(jsonBody, JSON_TYPE);
+        ApiRequest request = new ApiRequest.Builder()
             .url(refreshUrl)
             .post(refreshBody)
             .build();
 
-        try (Response response = client.newCall(request).execute()) {
+        try (ApiResponse response = execute(request, "refreshing access token", new PluginEvents.TokenRefresh())) {
             if (!response.isSuccessful()) {
-                console.printLine("Unable to refresh token: HTTP" + response.code() + " - " + response.body().string());
+                console().printLine("Unable to refresh token: HTTP" + response.code() + " - " + response.body().errorString());
             }
             else {
-                ResponseBody responseBody = response.body();
+                ApiResponse.Body responseBody = response.body();
                 try {
                     JsonObject jsonObject = JsonParser.parseString(responseBody.string()).getAsJsonObject();
                     authToken = jsonObject.get("accessToken").getAsString();
                     refreshToken = jsonObject.get("refreshToken").getAsString();
+                    tokenIssuedAt = System.currentTimeMillis();
 
                     result = true;
                 }
                 catch (NullPointerException e) {
-                    console.printLine("Exception parsing refresh token response: " + e.getLocalizedMessage());
+                    console().printLine("Exception parsing refresh token response: " + e.getLocalizedMessage());
                 }
             }
         }
         catch (IOException e) {
-            console.printLine("Exception trying to refresh token: " + e.getLocalizedMessage());
+            console().printLine("Exception trying to refresh token: " + e.getLocalizedMessage());
         }
 
         return result;
     }    
+
+    /**
+     * Sends the request through the transport.  If the endpoint setting lists several base URLs and the current one
+     * cannot be reached (connection failure or HTTP 502, 503 or 504), the request is sent to the next one, unless the
+     * run has been pinned to its endpoint (see {@link URLBuilder#failOver(String)}).  The base URLs are expected to
+     * front the same console, so tokens remain valid after a failover.
+     *
+     * <p>Requests that are not idempotent (see {@link #isIdempotent(ApiRequest)}) are only sent again after a
+     * connection failure: after a gateway error or a read timeout the server may already have processed them.</p>
+     */
+    private ApiResponse send(ApiRequest request, String description) throws IOException {
+        while (true) {
+            String baseUrl = urlBuilder.getBaseUrl();
+            String reason;
+            try {
+                ApiResponse response = transport.execute(request, cancellation, description);
+                if (!isServerUnavailable(response) || !isIdempotent(request) || urlBuilder.getBaseUrls().size() < 2) {
+                    return response;
+                }
+                reason = "HTTP " + response.code();
+                if (!urlBuilder.failOver(baseUrl)) {
+                    return response;
+                }
+                response.close();
+            }
+            catch (IOException e) {
+                if (!isConnectFailure(e) || cancellation.isCancelled() || !urlBuilder.failOver(baseUrl)) {
+                    throw e;
+                }
+                reason = (e.getLocalizedMessage() != null) ? e.getLocalizedMessage() : e.getClass().getSimpleName();
+            }
+
+            console().printLine("Endpoint " + baseUrl + " is unavailable (" + reason + "). Switching to " + urlBuilder.getBaseUrl() + ".");
+            EndpointSelector.INSTANCE.invalidate(urlBuilder.getBaseUrls());
+            if (request.url().startsWith(baseUrl)) {
+                request = request.newBuilder().url(urlBuilder.getBaseUrl() + request.url().substring(baseUrl.length())).build();
+            }
+        }
+    }
+
+    // bodies that could not be used are printed only up to ApiResponse.maxErrorBodyBytes
+    private static String abbreviate(String body) {
+        return (body.length() > ApiResponse.maxErrorBodyBytes) ? body.substring(0, ApiResponse.maxErrorBodyBytes) + "... (truncated)" : body;
+    }
+
+    /**
+     * @return {@code false} for POST and PUT requests, which log in, upload binaries and assign applications to teams,
+     *         so sending them twice may have a different effect than sending them once
+     */
+    static boolean isIdempotent(ApiRequest request) {
+        return !"POST".equalsIgnoreCase(request.method()) && !"PUT".equalsIgnoreCase(request.method());
+    }
+
+    /**
+     * @return {@code true} if the server could not be reached at all, so no part of the request was processed
+     */
+    static boolean isConnectFailure(IOException exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException
+                    || cause instanceof NoRouteToHostException || cause instanceof SSLHandshakeException
+                    || cause instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executes the request through the transport (which registers the call with the cancellation token) and 
+     * records it as a Java Flight Recorder event and in the event log.
+     * 
+     * @param request     The request to execute.
+     * @param description What the call does; reported if the job is cancelled while it is in progress.
+     * @param event       The (not yet started) event describing the call; committed when the call completes.
+     * @return The server's response.
+     * 
+     * @throws IOException if the call fails.
+     * @throws java.util.concurrent.CancellationException if the job has been cancelled before or during the call.
+     */
+    private ApiResponse execute(ApiRequest request, String description, PluginEvents.ApiCallEvent event) throws IOException {
+        try {
+            return call(request, description, event);
+        }
+        finally {
+            commit(event);
+        }
+    }
+
+    /**
+     * Like {@link #execute(ApiRequest, String, PluginEvents.ApiCallEvent)}, but leaves the event to be committed by
+     * the caller (see {@link #commit(PluginEvents.ApiCallEvent)}), so fields that are only known after the call can
+     * still be recorded.
+     */
+    private ApiResponse call(ApiRequest request, String description, PluginEvents.ApiCallEvent event) throws IOException {
+        cancellation.throwIfCancelled();
+
+        event.begin();
+        serverUnavailable = false;
+        long start = System.nanoTime();
+        try {
+            ApiResponse response = send(request, description);
+            serverUnavailable = isServerUnavailable(response);
+            eventLog.record("api_call", "description", description, "method", request.method(), "endpoint", request.path(),
+                "httpCode", response.code(), "durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                "responseBytes", response.body().contentLength());
+            if (event.shouldCommit()) {
+                event.httpCode = response.code();
+                event.bytes = Math.max(0, (request.content() != null) ? request.content().contentLength() : 0)
+                    + Math.max(0, response.body().contentLength());
+            }
+            return response;
+        }
+        catch (IOException e) {
+            // transports report thread interruption as a plain InterruptedIOException (okio also clears the interrupted flag)
+            if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+                cancellation.cancel("job thread was interrupted");
+            }
+            eventLog.record("api_call", "description", description, "method", request.method(), "endpoint", request.path(),
+                "durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), "error", e.toString());
+            cancellation.throwIfCancelled();
+            // a request that changes state may have been processed before e.g. a read timeout
+            serverUnavailable = isIdempotent(request) || isConnectFailure(e);
+            throw e;
+        }
+        finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.endpoint = request.path();
+                event.job = job;
+            }
+        }
+    }
+
+    private static void commit(PluginEvents.ApiCallEvent event) {
+        if (event.shouldCommit()) {
+            event.commit();
+        }
+    }
 }
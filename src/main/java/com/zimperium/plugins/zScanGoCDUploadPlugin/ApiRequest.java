@@ -0,0 +1,110 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ApiRequest describes an HTTP request to the Zimperium server independently of the HTTP client that sends it
+ * (see {@link HttpTransport}).  Instances are immutable and are created with {@link Builder}.
+ */
+public class ApiRequest {
+    private final String method;
+    private final String url;
+    private final Map<String, String> headers;
+    private final RequestContent content;
+
+    private ApiRequest(Builder builder) {
+        this.method = builder.method;
+        this.url = builder.url;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(builder.headers));
+        this.content = builder.content;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public String url() {
+        return url;
+    }
+
+    /**
+     * @return path component of the URL, e.g. for log messages and events that must not include query strings
+     */
+    public String path() {
+        return URI.create(url).getRawPath();
+    }
+
+    public Map<String, String> headers() {
+        return headers;
+    }
+
+    public String header(String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return body of the request, or {@code null} if it has none
+     */
+    public RequestContent content() {
+        return content;
+    }
+
+    /**
+     * @return a builder initialized with this request, e.g. to send it to a different URL
+     */
+    public Builder newBuilder() {
+        Builder builder = new Builder().url(url).method(method, content);
+        builder.headers.putAll(headers);
+        return builder;
+    }
+
+    public static class Builder {
+        private String method = "GET";
+        private String url;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private RequestContent content;
+
+        public Builder url(String url) {
+            this.url = url;
+            return this;
+        }
+
+        public Builder header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        public Builder get() {
+            return method("GET", null);
+        }
+
+        public Builder post(RequestContent content) {
+            return method("POST", content);
+        }
+
+        public Builder put(RequestContent content) {
+            return method("PUT", content);
+        }
+
+        public Builder method(String method, RequestContent content) {
+            this.method = method;
+            this.content = content;
+            return this;
+        }
+
+        public ApiRequest build() {
+            if (url == null) {
+                throw new IllegalStateException("url == null");
+            }
+            return new ApiRequest(this);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ApiResponse is the response to an {@link ApiRequest}, independent of the HTTP client that received it.  The body
+ * is streamed from the connection; it must be consumed or closed, either directly or by closing the response, so
+ * the connection can be reused.
+ *
+ * <p>Text bodies are read up to {@link #maxBodyBytes}, and bodies of failed calls are printed up to
+ * {@link #maxErrorBodyBytes} (see {@link Body#errorString()}).  A body that is garbage collected without having been
+ * closed is closed then, and logged as a leak; with the {@code zscan.debug.responses} system property or the
+ * {@code ZSCAN_DEBUG_RESPONSES} environment variable set to {@code true}, the log includes the call site that
+ * received the response.  The number of open responses is exported as the {@code zscan_open_responses} metric.</p>
+ */
+public class ApiResponse implements Closeable {
+    public final static int maxBodyBytes = 16 * 1024 * 1024;
+    public final static int maxErrorBodyBytes = 4 * 1024;
+    public static final String DEBUG_PROPERTY = "zscan.debug.responses";
+    public static final String DEBUG_ENV = "ZSCAN_DEBUG_RESPONSES";
+
+    private static final boolean DEBUG = Boolean.parseBoolean(System.getProperty(DEBUG_PROPERTY, System.getenv(DEBUG_ENV)));
+    private static final Cleaner LEAKS = Cleaner.create();
+
+    private final int code;
+    private final Map<String, List<String>> headers;
+    private final Body body;
+
+    /**
+     * @param code    HTTP status code
+     * @param headers response headers; names are matched case-insensitively
+     * @param stream  body of the response
+     * @param onClose releases the connection (or the client's response object) once the body has been closed
+     */
+    public ApiResponse(int code, Map<String, List<String>> headers, InputStream stream, Closeable onClose) {
+        this.code = code;
+        Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) {
+            copy.putAll(headers);
+        }
+        this.headers = Collections.unmodifiableMap(copy);
+        this.body = new Body(stream, onClose, parseLength(header("Content-Length")));
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public boolean isSuccessful() {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * @return first value of the header, or {@code null} if the response does not have it
+     */
+    public String header(String name) {
+        List<String> values = headers.get(name);
+        return (values == null || values.isEmpty()) ? null : values.get(0);
+    }
+
+    public Map<String, List<String>> headers() {
+        return headers;
+    }
+
+    public Body body() {
+        return body;
+    }
+
+    /**
+     * @return a response with the same status code and headers and the given body, e.g. to pass on a response whose
+     *         body has been read already
+     */
+    public ApiResponse withBody(String body) {
+        return new ApiResponse(code, headers, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    @Override
+    public void close() {
+        body.close();
+    }
+
+    private static long parseLength(String value) {
+        try {
+            return (value != null) ? Long.parseLong(value.trim()) : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static final class Body implements Closeable {
+        private final InputStream stream;
+        private final long contentLength;
+        private final Release release;
+        private final Cleaner.Cleanable cleanable;
+        private volatile long bytesRead;
+
+        private Body(InputStream stream, Closeable onClose, long contentLength) {
+            this.stream = stream;
+            this.contentLength = contentLength;
+            this.release = new Release(stream, onClose, DEBUG ? new Throwable("Response received here") : null);
+            this.cleanable = LEAKS.register(this, release);
+            TaskPlugin.metrics().openResponses.increment();
+        }
+
+        /**
+         * @return value of the Content-Length header, or -1 if the server did not send it
+         */
+        public long contentLength() {
+            return contentLength;
+        }
+
+        /**
+         * @return number of bytes read by {@link #string()}
+         */
+        public long bytesRead() {
+            return bytesRead;
+        }
+
+        public InputStream byteStream() {
+            return stream;
+        }
+
+        /**
+         * Reads the rest of the body as UTF-8 text and closes it.
+         *
+         * @throws IOException if the body cannot be read, has been closed already or is longer than
+         *                     {@link #maxBodyBytes}
+         */
+        public String string() throws IOException {
+            try {
+                if (release.closed) {
+                    throw new IOException("The response body has been closed already");
+                }
+                if (stream == null) {
+                    return "";
+                }
+                byte[] bytes = stream.readNBytes(maxBodyBytes + 1);
+                if (bytes.length > maxBodyBytes) {
+                    throw new IOException("The response body is longer than " + maxBodyBytes + " bytes");
+                }
+                bytesRead = bytes.length;
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            finally {
+                close();
+            }
+        }
+
+        /**
+         * Reads up to {@link #maxErrorBodyBytes} of the body as UTF-8 text for an error message, and closes it.
+         * Never fails; problems reading the body are described in the returned text instead.
+         */
+        public String errorString() {
+            try {
+                if (release.closed) {
+                    return "(body already read)";
+                }
+                if (stream == null) {
+                    return "";
+                }
+                byte[] bytes = stream.readNBytes(maxErrorBodyBytes + 1);
+                if (bytes.length > maxErrorBodyBytes) {
+                    return new String(bytes, 0, maxErrorBodyBytes, StandardCharsets.UTF_8) + "... (truncated)";
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            catch (IOException e) {
+                return "(unable to read body: " + e.getLocalizedMessage() + ")";
+            }
+            finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            release.closed = true;
+            cleanable.clean();
+        }
+    }
+
+    /**
+     * Releases the connection of a body, either when the body is closed or after it has become unreachable.  Must not
+     * refer to the body, or the body would never become unreachable.
+     */
+    private static final class Release implements Runnable {
+        private final InputStream stream;
+        private final Closeable onClose;
+        private final Throwable callSite;
+        volatile boolean closed;
+
+        Release(InputStream stream, Closeable onClose, Throwable callSite) {
+            this.stream = stream;
+            this.onClose = onClose;
+            this.callSite = callSite;
+        }
+
+        // runs once, on close() or when the body has been garbage collected
+        @Override
+        public void run() {
+            TaskPlugin.metrics().openResponses.decrement();
+            if (!closed) {
+                closed = true;
+                if (callSite != null) {
+                    TaskPlugin.LOGGER.warn("A zScan API response was not closed; the connection has been released", callSite);
+                }
+                else {
+                    TaskPlugin.LOGGER.warn("A zScan API response was not closed; the connection has been released. Set "
+                        + DEBUG_PROPERTY + "=true to log where it was received.");
+                }
+            }
+            try {
+                if (stream != null) {
+                    stream.close();
+                }
+                if (onClose != null) {
+                    onClose.close();
+                }
+            }
+            catch (IOException e) {
+                // nothing useful to do; the connection is discarded
+            }
+        }
+    }
+}
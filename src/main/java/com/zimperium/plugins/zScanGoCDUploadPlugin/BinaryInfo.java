@@ -0,0 +1,103 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+/**
+ * BinaryInfo holds the outcome of a preflight inspection of a file about to be uploaded: whether it looks like a
+ * complete application package, its type and, where it could be read, its package ID and version.
+ */
+public class BinaryInfo {
+    public enum Type { APK, AAB, IPA, DIRECTORY, UNKNOWN }
+
+    private final Type type;
+    private final boolean valid;
+    private final String problem;
+    private final String warning;
+    private final String packageId;
+    private final String version;
+    private final int entryCount;
+
+    private BinaryInfo(Type type, boolean valid, String problem, String warning, String packageId, String version, int entryCount) {
+        this.type = type;
+        this.valid = valid;
+        this.problem = problem;
+        this.warning = warning;
+        this.packageId = packageId;
+        this.version = version;
+        this.entryCount = entryCount;
+    }
+
+    public static BinaryInfo valid(Type type, String packageId, String version, int entryCount) {
+        return new BinaryInfo(type, true, "", "", packageId, version, entryCount);
+    }
+
+    public static BinaryInfo invalid(Type type, String problem) {
+        return new BinaryInfo(type, false, problem, "", "", "", 0);
+    }
+
+    /**
+     * @return info of a file whose structure could not be checked; it is uploaded anyway and left to the server
+     */
+    public static BinaryInfo unchecked(Type type, String warning) {
+        return new BinaryInfo(type, true, "", warning, "", "", 0);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return why the file was rejected, or an empty string if it is valid
+     */
+    public String getProblem() {
+        return problem;
+    }
+
+    /**
+     * @return why the structure of the file could not be checked, or an empty string if it was checked
+     */
+    public String getWarning() {
+        return warning;
+    }
+
+    /**
+     * @return Android package name or iOS bundle identifier, or an empty string if it could not be read
+     */
+    public String getPackageId() {
+        return packageId;
+    }
+
+    /**
+     * @return version name (Android) or short version string (iOS), or an empty string if it could not be read
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public String toString() {
+        if (!valid) {
+            return type + " (invalid: " + problem + ")";
+        }
+        if (!warning.isEmpty()) {
+            return type + " (not checked: " + warning + ")";
+        }
+        StringBuilder description = new StringBuilder(type.toString());
+        if (!packageId.isEmpty()) {
+            description.append(" ").append(packageId);
+        }
+        if (!version.isEmpty()) {
+            description.append(" version ").append(version);
+        }
+        if (entryCount > 0) {
+            description.append(", ").append(entryCount).append(" entries");
+        }
+        return description.toString();
+    }
+}
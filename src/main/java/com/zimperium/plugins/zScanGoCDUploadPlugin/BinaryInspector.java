@@ -0,0 +1,510 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * BinaryInspector performs a fast local check of a file before it is uploaded, so truncated files and files of
+ * the wrong type are rejected in milliseconds instead of after a long upload.
+ *
+ * <p>Only the ZIP central directory is read, through a memory-mapped {@link FileChannel}; it is enough to verify
+ * that the archive is complete and to tell APK, AAB and IPA packages apart.  The only entry that is decompressed is
+ * the one carrying the package metadata (the binary AndroidManifest.xml of an APK or the Info.plist of an IPA),
+ * from which the package ID and version are read.  AAB manifests are protocol buffers; their metadata is not
+ * extracted.</p>
+ *
+ * <p>Files whose extension says they are APK, AAB or IPA packages are rejected if their structure does not
+ * match.  Files with other extensions only have to be complete ZIP archives.  Directories are not inspected.  A
+ * central directory this inspector cannot parse (e.g., because of a ZIP feature it does not know) is not a reason
+ * to reject the file: it is reported as a warning and the file is uploaded, leaving the verdict to the server.</p>
+ */
+public class BinaryInspector {
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long MAX_METADATA_SIZE = 4 * 1024 * 1024;
+
+    private static final Pattern INFO_PLIST = Pattern.compile("Payload/[^/]+\\.app/Info\\.plist");
+
+    /**
+     * Inspects the file.  Never throws; problems are reported through {@link BinaryInfo#isValid()} and
+     * {@link BinaryInfo#getWarning()}.
+     */
+    public BinaryInfo inspect(File file) {
+        if (file.isDirectory()) {
+            return BinaryInfo.valid(BinaryInfo.Type.DIRECTORY, "", "", 0);
+        }
+
+        BinaryInfo.Type expected = typeFromName(file.getName());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return inspect(channel, expected);
+        }
+        catch (IOException e) {
+            return BinaryInfo.invalid(expected, "unable to read the file: " + e.getLocalizedMessage());
+        }
+        catch (RuntimeException e) {
+            return BinaryInfo.unchecked(expected, "unable to parse the central directory: " + e);
+        }
+    }
+
+    static BinaryInfo.Type typeFromName(String name) {
+        String lowerCaseName = name.toLowerCase();
+        if (lowerCaseName.endsWith(".apk")) {
+            return BinaryInfo.Type.APK;
+        }
+        else if (lowerCaseName.endsWith(".aab")) {
+            return BinaryInfo.Type.AAB;
+        }
+        else if (lowerCaseName.endsWith(".ipa")) {
+            return BinaryInfo.Type.IPA;
+        }
+        return BinaryInfo.Type.UNKNOWN;
+    }
+
+    private BinaryInfo inspect(FileChannel channel, BinaryInfo.Type expected) throws IOException {
+        long size = channel.size();
+        if (size < EOCD_SIZE) {
+            return BinaryInfo.invalid(expected, "the file is too small to be a ZIP archive");
+        }
+
+        // the end of central directory record sits at the very end, followed only by an optional comment
+        int tailSize = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT_SIZE);
+        long tailStart = size - tailSize;
+        MappedByteBuffer tail = map(channel, tailStart, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tailSize) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            return BinaryInfo.invalid(expected, "no ZIP end of central directory record; the file is truncated or not a ZIP archive");
+        }
+
+        long entryCount = tail.getShort(eocd + 10) & 0xFFFF;
+        long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        long directoryEnd = tailStart + eocd;
+
+        if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            // ZIP64: the real values are in the ZIP64 end of central directory record
+            if (eocd < ZIP64_LOCATOR_SIZE || tail.getInt(eocd - ZIP64_LOCATOR_SIZE) != ZIP64_LOCATOR_SIGNATURE) {
+                return BinaryInfo.unchecked(expected, "damaged ZIP64 end of central directory");
+            }
+            long zip64Eocd = tail.getLong(eocd - ZIP64_LOCATOR_SIZE + 8);
+            if (zip64Eocd < 0 || zip64Eocd + ZIP64_EOCD_SIZE > size) {
+                return BinaryInfo.unchecked(expected, "damaged ZIP64 end of central directory");
+            }
+            MappedByteBuffer record = map(channel, zip64Eocd, ZIP64_EOCD_SIZE);
+            if (record.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                return BinaryInfo.unchecked(expected, "damaged ZIP64 end of central directory");
+            }
+            entryCount = record.getLong(32);
+            directorySize = record.getLong(40);
+            directoryOffset = record.getLong(48);
+            directoryEnd = zip64Eocd;
+        }
+
+        if (directoryOffset < 0 || directorySize < 0 || directoryOffset + directorySize > directoryEnd || directorySize > Integer.MAX_VALUE) {
+            return BinaryInfo.unchecked(expected, "the central directory points outside the file");
+        }
+
+        MappedByteBuffer directory = map(channel, directoryOffset, directorySize);
+        boolean hasManifest = false;
+        boolean hasBundleConfig = false;
+        boolean hasBaseManifest = false;
+        Entry androidManifest = null;
+        Entry infoPlist = null;
+
+        int pos = 0;
+        for (long i = 0; i < entryCount; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > directorySize || directory.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                return BinaryInfo.unchecked(expected, "damaged central directory entry #" + i);
+            }
+            int nameLength = directory.getShort(pos + 28) & 0xFFFF;
+            int extraLength = directory.getShort(pos + 30) & 0xFFFF;
+            int commentLength = directory.getShort(pos + 32) & 0xFFFF;
+            String name = readString(directory, pos + CENTRAL_HEADER_SIZE, nameLength);
+
+            if (name.equals("AndroidManifest.xml")) {
+                hasManifest = true;
+                androidManifest = readEntry(directory, pos, nameLength, extraLength);
+            }
+            else if (name.equals("BundleConfig.pb")) {
+                hasBundleConfig = true;
+            }
+            else if (name.equals("base/manifest/AndroidManifest.xml")) {
+                hasBaseManifest = true;
+            }
+            else if (infoPlist == null && INFO_PLIST.matcher(name).matches()) {
+                infoPlist = readEntry(directory, pos, nameLength, extraLength);
+            }
+
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        BinaryInfo.Type detected;
+        if (hasBundleConfig && hasBaseManifest) {
+            detected = BinaryInfo.Type.AAB;
+        }
+        else if (hasManifest) {
+            detected = BinaryInfo.Type.APK;
+        }
+        else if (infoPlist != null) {
+            detected = BinaryInfo.Type.IPA;
+        }
+        else {
+            detected = BinaryInfo.Type.UNKNOWN;
+        }
+
+        if (expected != BinaryInfo.Type.UNKNOWN && detected != expected) {
+            return BinaryInfo.invalid(expected, (detected == BinaryInfo.Type.UNKNOWN)
+                ? "the archive does not have the structure of an " + expected + " package"
+                : "the file name says " + expected + " but the archive is an " + detected + " package");
+        }
+
+        String[] metadata = { "", "" };
+        try {
+            if (detected == BinaryInfo.Type.APK) {
+                metadata = parseBinaryXmlManifest(inflate(channel, androidManifest));
+            }
+            else if (detected == BinaryInfo.Type.IPA) {
+                metadata = parsePlist(inflate(channel, infoPlist));
+            }
+        }
+        catch (IOException | DataFormatException | RuntimeException e) {
+            // metadata is informational; a package we cannot parse is not necessarily broken
+        }
+
+        return BinaryInfo.valid(detected, metadata[0], metadata[1], (int) Math.min(entryCount, Integer.MAX_VALUE));
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static String readString(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Location and size of an entry's data as recorded in its central directory header.
+     */
+    private static final class Entry {
+        int method;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+    }
+
+    private static Entry readEntry(ByteBuffer directory, int pos, int nameLength, int extraLength) {
+        Entry entry = new Entry();
+        entry.method = directory.getShort(pos + 10) & 0xFFFF;
+        entry.compressedSize = directory.getInt(pos + 20) & 0xFFFFFFFFL;
+        entry.size = directory.getInt(pos + 24) & 0xFFFFFFFFL;
+        entry.localHeaderOffset = directory.getInt(pos + 42) & 0xFFFFFFFFL;
+
+        // ZIP64 extended information replaces the fields that are set to 0xFFFFFFFF, in this order
+        int extra = pos + CENTRAL_HEADER_SIZE + nameLength;
+        int extraEnd = extra + extraLength;
+        while (extra + 4 <= extraEnd) {
+            int id = directory.getShort(extra) & 0xFFFF;
+            int length = directory.getShort(extra + 2) & 0xFFFF;
+            if (id == 0x0001) {
+                int field = extra + 4;
+                if (entry.size == 0xFFFFFFFFL) {
+                    entry.size = directory.getLong(field);
+                    field += 8;
+                }
+                if (entry.compressedSize == 0xFFFFFFFFL) {
+                    entry.compressedSize = directory.getLong(field);
+                    field += 8;
+                }
+                if (entry.localHeaderOffset == 0xFFFFFFFFL) {
+                    entry.localHeaderOffset = directory.getLong(field);
+                }
+                break;
+            }
+            extra += 4 + length;
+        }
+        return entry;
+    }
+
+    /**
+     * Reads and, if necessary, decompresses a single (small) entry.
+     */
+    private static byte[] inflate(FileChannel channel, Entry entry) throws IOException, DataFormatException {
+        if (entry.size > MAX_METADATA_SIZE || entry.compressedSize > MAX_METADATA_SIZE) {
+            throw new IOException("metadata entry is too large");
+        }
+
+        MappedByteBuffer header = map(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("damaged local file header");
+        }
+        long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        MappedByteBuffer data = map(channel, dataOffset, entry.compressedSize);
+
+        byte[] content = new byte[(int) entry.size];
+        if (entry.method == 0) {
+            data.get(0, content, 0, content.length);
+            return content;
+        }
+        if (entry.method != 8) {
+            throw new IOException("unsupported compression method " + entry.method);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            int length = 0;
+            while (length < content.length && !inflater.finished()) {
+                int inflated = inflater.inflate(content, length, content.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            return content;
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads the package name and version name from a compiled (binary XML) AndroidManifest.xml.
+     *
+     * @return { package, versionName }, with empty strings for values that are not present
+     */
+    static String[] parseBinaryXmlManifest(byte[] xml) {
+        String[] result = { "", "" };
+        ByteBuffer buffer = ByteBuffer.wrap(xml).order(ByteOrder.LITTLE_ENDIAN);
+        if ((buffer.getShort(0) & 0xFFFF) != 0x0003) {
+            return result;
+        }
+
+        String[] strings = null;
+        int pos = buffer.getShort(2) & 0xFFFF;
+        while (pos + 8 <= xml.length) {
+            int type = buffer.getShort(pos) & 0xFFFF;
+            int headerSize = buffer.getShort(pos + 2) & 0xFFFF;
+            int chunkSize = buffer.getInt(pos + 4);
+            if (chunkSize < 8) {
+                break;
+            }
+
+            if (type == 0x0001) {
+                strings = readStringPool(buffer, pos);
+            }
+            else if (type == 0x0102 && strings != null) {
+                // first start element; for a manifest this is <manifest>
+                int element = pos + headerSize;
+                if (!"manifest".equals(stringAt(strings, buffer.getInt(element + 4)))) {
+                    return result;
+                }
+                int attributeStart = buffer.getShort(element + 8) & 0xFFFF;
+                int attributeSize = buffer.getShort(element + 10) & 0xFFFF;
+                int attributeCount = buffer.getShort(element + 12) & 0xFFFF;
+                for (int i = 0; i < attributeCount; i++) {
+                    int attribute = element + attributeStart + i * attributeSize;
+                    String name = stringAt(strings, buffer.getInt(attribute + 4));
+                    int rawValue = buffer.getInt(attribute + 8);
+                    int dataType = buffer.get(attribute + 15) & 0xFF;
+                    int data = buffer.getInt(attribute + 16);
+
+                    String value;
+                    if (rawValue >= 0) {
+                        value = stringAt(strings, rawValue);
+                    }
+                    else if (dataType == 0x03) {
+                        value = stringAt(strings, data);
+                    }
+                    else if (dataType >= 0x10 && dataType <= 0x11) {
+                        value = String.valueOf(data);
+                    }
+                    else {
+                        value = "";
+                    }
+
+                    if (name.equals("package")) {
+                        result[0] = value;
+                    }
+                    else if (name.equals("versionName")) {
+                        result[1] = value;
+                    }
+                }
+                return result;
+            }
+            pos += chunkSize;
+        }
+        return result;
+    }
+
+    private static String[] readStringPool(ByteBuffer buffer, int pool) {
+        int headerSize = buffer.getShort(pool + 2) & 0xFFFF;
+        int count = buffer.getInt(pool + 8);
+        boolean utf8 = (buffer.getInt(pool + 16) & (1 << 8)) != 0;
+        int stringsStart = pool + buffer.getInt(pool + 20);
+
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            int pos = stringsStart + buffer.getInt(pool + headerSize + i * 4);
+            if (utf8) {
+                // UTF-16 length, then UTF-8 length, each 1 or 2 bytes
+                pos += ((buffer.get(pos) & 0x80) != 0) ? 2 : 1;
+                int length = buffer.get(pos) & 0xFF;
+                if ((length & 0x80) != 0) {
+                    length = ((length & 0x7F) << 8) | (buffer.get(pos + 1) & 0xFF);
+                    pos += 2;
+                }
+                else {
+                    pos += 1;
+                }
+                strings[i] = readString(buffer, pos, length);
+            }
+            else {
+                int length = buffer.getShort(pos) & 0xFFFF;
+                if ((length & 0x8000) != 0) {
+                    length = ((length & 0x7FFF) << 16) | (buffer.getShort(pos + 2) & 0xFFFF);
+                    pos += 4;
+                }
+                else {
+                    pos += 2;
+                }
+                char[] chars = new char[length];
+                for (int c = 0; c < length; c++) {
+                    chars[c] = buffer.getChar(pos + c * 2);
+                }
+                strings[i] = new String(chars);
+            }
+        }
+        return strings;
+    }
+
+    private static String stringAt(String[] strings, int index) {
+        return (index >= 0 && index < strings.length) ? strings[index] : "";
+    }
+
+    /**
+     * Reads the bundle identifier and version from an Info.plist in either XML or binary form.
+     *
+     * @return { CFBundleIdentifier, CFBundleShortVersionString (or CFBundleVersion) }, with empty strings for
+     *         values that are not present
+     */
+    static String[] parsePlist(byte[] plist) {
+        if (plist.length >= 8 && new String(plist, 0, 8, StandardCharsets.US_ASCII).equals("bplist00")) {
+            return parseBinaryPlist(plist);
+        }
+
+        String xml = new String(plist, StandardCharsets.UTF_8);
+        String version = xmlPlistValue(xml, "CFBundleShortVersionString");
+        return new String[] { xmlPlistValue(xml, "CFBundleIdentifier"), version.isEmpty() ? xmlPlistValue(xml, "CFBundleVersion") : version };
+    }
+
+    private static String xmlPlistValue(String xml, String key) {
+        Matcher matcher = Pattern.compile("<key>\\s*" + key + "\\s*</key>\\s*<string>([^<]*)</string>").matcher(xml);
+        return matcher.find() ? matcher.group(1).trim() : "";
+    }
+
+    private static String[] parseBinaryPlist(byte[] plist) {
+        String[] result = { "", "" };
+        ByteBuffer buffer = ByteBuffer.wrap(plist).order(ByteOrder.BIG_ENDIAN);
+        int trailer = plist.length - 32;
+        int offsetSize = buffer.get(trailer + 6) & 0xFF;
+        int referenceSize = buffer.get(trailer + 7) & 0xFF;
+        long topObject = buffer.getLong(trailer + 16);
+        int offsetTable = (int) buffer.getLong(trailer + 24);
+
+        int top = (int) readSized(buffer, offsetTable + (int) topObject * offsetSize, offsetSize);
+        int marker = buffer.get(top) & 0xFF;
+        if ((marker >> 4) != 0xD) {
+            return result;
+        }
+        int pos = top + 1;
+        long count = marker & 0x0F;
+        if (count == 0x0F) {
+            int intBytes = 1 << (buffer.get(pos) & 0x0F);
+            count = readSized(buffer, pos + 1, intBytes);
+            pos += 1 + intBytes;
+        }
+
+        String version = "";
+        String bundleVersion = "";
+        for (int i = 0; i < count; i++) {
+            int key = (int) readSized(buffer, pos + i * referenceSize, referenceSize);
+            String name = binaryPlistString(buffer, offsetTable, offsetSize, key);
+            if (name.equals("CFBundleIdentifier") || name.equals("CFBundleShortVersionString") || name.equals("CFBundleVersion")) {
+                int value = (int) readSized(buffer, pos + (int) (count + i) * referenceSize, referenceSize);
+                String text = binaryPlistString(buffer, offsetTable, offsetSize, value);
+                if (name.equals("CFBundleIdentifier")) {
+                    result[0] = text;
+                }
+                else if (name.equals("CFBundleShortVersionString")) {
+                    version = text;
+                }
+                else {
+                    bundleVersion = text;
+                }
+            }
+        }
+        result[1] = version.isEmpty() ? bundleVersion : version;
+        return result;
+    }
+
+    private static String binaryPlistString(ByteBuffer buffer, int offsetTable, int offsetSize, int object) {
+        int pos = (int) readSized(buffer, offsetTable + object * offsetSize, offsetSize);
+        int marker = buffer.get(pos) & 0xFF;
+        int type = marker >> 4;
+        int length = marker & 0x0F;
+        pos++;
+        if (length == 0x0F) {
+            int intBytes = 1 << (buffer.get(pos) & 0x0F);
+            length = (int) readSized(buffer, pos + 1, intBytes);
+            pos += 1 + intBytes;
+        }
+
+        if (type == 0x5) {
+            byte[] bytes = new byte[length];
+            buffer.get(pos, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+        else if (type == 0x6) {
+            byte[] bytes = new byte[length * 2];
+            buffer.get(pos, bytes);
+            return new String(bytes, StandardCharsets.UTF_16BE);
+        }
+        return "";
+    }
+
+    private static long readSized(ByteBuffer buffer, int position, int size) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << 8) | (buffer.get(position + i) & 0xFF);
+        }
+        return value;
+    }
+}
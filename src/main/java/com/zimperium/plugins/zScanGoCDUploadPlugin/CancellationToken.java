@@ -0,0 +1,198 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * CancellationToken lets a running task be stopped promptly.  Blocking operations (HTTP calls, waits between
+ * status checks and child processes) register themselves with the token while they run; cancelling the token
+ * runs the registered cancel actions (e.g., cancelling HTTP calls), destroys the registered {@link Process}es and
+ * wakes up waiting threads.
+ *
+ * <p>A token created with {@link #watch(Thread)} cancels itself when the watched thread is interrupted or when
+ * the JVM shuts down.  The check runs every {@link #watchInterval} milliseconds, so cancellation takes effect
+ * well within a second.  The descriptions of operations that were in progress at that moment are kept and can
+ * be reported with {@link #getInterrupted()}.</p>
+ */
+public class CancellationToken implements AutoCloseable {
+    public final static long watchInterval = 200;
+
+    private final Map<Object, String> inFlight = new ConcurrentHashMap<>();
+    private final Map<Object, Runnable> cancelActions = new ConcurrentHashMap<>();
+    // a Lock rather than a monitor, so waiting virtual threads release their carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition cancelledCondition = lock.newCondition();
+
+    private volatile boolean cancelled;
+    private volatile String reason = "";
+    private volatile List<String> interrupted = Collections.emptyList();
+
+    private Thread watchdog;
+    private Thread shutdownHook;
+
+    /**
+     * Creates a token that cancels itself when {@code owner} is interrupted or the JVM shuts down.
+     * The token must be closed once the task completes to stop watching.
+     */
+    public static CancellationToken watch(Thread owner) {
+        CancellationToken token = new CancellationToken();
+
+        token.watchdog = PluginThreads.factory("zscan-cancellation-watchdog").newThread(() -> {
+            try {
+                while (!token.isCancelled()) {
+                    if (owner.isInterrupted() || !owner.isAlive()) {
+                        token.cancel("job thread was interrupted");
+                        break;
+                    }
+                    Thread.sleep(watchInterval);
+                }
+            }
+            catch (InterruptedException e) {
+                // token closed
+            }
+        });
+        token.watchdog.start();
+
+        token.shutdownHook = new Thread(() -> token.cancel("agent is shutting down"));
+        Runtime.getRuntime().addShutdownHook(token.shutdownHook);
+
+        return token;
+    }
+
+    /**
+     * Cancels all registered operations.  Only the first call has any effect.
+     *
+     * @param reason human-readable reason used in log messages
+     */
+    public void cancel(String reason) {
+        lock.lock();
+        try {
+            if (cancelled) {
+                return;
+            }
+            this.reason = reason;
+            this.interrupted = Collections.unmodifiableList(new ArrayList<>(inFlight.values()));
+            cancelled = true;
+            cancelledCondition.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+
+        for (Runnable cancelAction : cancelActions.values()) {
+            cancelAction.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return descriptions of the operations that were in progress when the token was cancelled
+     */
+    public List<String> getInterrupted() {
+        return interrupted;
+    }
+
+    /**
+     * @throws CancellationException if the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Task cancelled: " + reason);
+        }
+    }
+
+    /**
+     * Registers an operation (e.g., an HTTP call) with the action that aborts it.  If the token is already
+     * cancelled, the action runs immediately.
+     *
+     * @param operation    key identifying the operation; pass the same object to {@link #unregister(Object)}
+     * @param cancelAction aborts the operation; must not block
+     * @param description  what the operation does; reported if the token is cancelled while it is in progress
+     */
+    public void register(Object operation, Runnable cancelAction, String description) {
+        inFlight.put(operation, description);
+        cancelActions.put(operation, cancelAction);
+        if (cancelled) {
+            cancelAction.run();
+        }
+    }
+
+    /**
+     * Registers a child process so it (and its descendants) is destroyed together with the token.  If the token
+     * is already cancelled, the process is destroyed immediately.
+     */
+    public Process register(Process process, String description) {
+        register(process, () -> {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }, description);
+        return process;
+    }
+
+    public void unregister(Object operation) {
+        inFlight.remove(operation);
+        cancelActions.remove(operation);
+    }
+
+    /**
+     * Waits for the specified time unless the token is cancelled first.
+     *
+     * @param millis      time to wait in milliseconds
+     * @param description what the task is waiting for; reported if the wait is cancelled
+     * @throws CancellationException if the token is (or becomes) cancelled
+     * @throws InterruptedException  if the current thread is interrupted while waiting
+     */
+    public void sleep(long millis, String description) throws InterruptedException {
+        Object marker = new Object();
+        inFlight.put(marker, description);
+        try {
+            long end = System.currentTimeMillis() + millis;
+            lock.lock();
+            try {
+                long remaining;
+                while (!cancelled && (remaining = end - System.currentTimeMillis()) > 0) {
+                    cancelledCondition.await(remaining, TimeUnit.MILLISECONDS);
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        finally {
+            inFlight.remove(marker);
+        }
+        throwIfCancelled();
+    }
+
+    /**
+     * Stops watching the owner thread.  Registered operations are left alone.
+     */
+    @Override
+    public void close() {
+        if (watchdog != null) {
+            watchdog.interrupt();
+        }
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }
+            catch (IllegalStateException e) {
+                // JVM is already shutting down
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A Cassette is a file of recorded HTTP exchanges with the zScan API, one JSON object per line, so runs of the plugin
+ * can be repeated offline with the timing of the original run (see {@link RecordingTransport} and
+ * {@link ReplayTransport}).
+ *
+ * <p>Exchanges are sanitized before they are written: the base URL is dropped (only the path and query are kept),
+ * request bodies are recorded by length only, only the response headers the plugin reads are kept, and tokens and
+ * secrets in response bodies are replaced by {@code "redacted"}.</p>
+ *
+ * <p>Recording and replay are turned on for all jobs on an agent with system properties (or environment variables):
+ * {@code zscan.cassette.record} ({@code ZSCAN_CASSETTE_RECORD}) appends the exchanges of every job, and of uploads
+ * from the {@link Outbox}, to the given file; {@code zscan.cassette.replay} ({@code ZSCAN_CASSETTE_REPLAY}) serves
+ * them from the given file instead of the server, with the recorded latencies (and the job's waits between status checks) multiplied by
+ * {@code zscan.cassette.timeScale} ({@code ZSCAN_CASSETTE_TIME_SCALE}, default 1; 0 replays without delays).
+ * Reports are downloaded with curl and are not part of a cassette.</p>
+ */
+public class Cassette {
+    public static final String RECORD_PROPERTY = "zscan.cassette.record";
+    public static final String RECORD_ENV = "ZSCAN_CASSETTE_RECORD";
+    public static final String REPLAY_PROPERTY = "zscan.cassette.replay";
+    public static final String REPLAY_ENV = "ZSCAN_CASSETTE_REPLAY";
+    public static final String TIME_SCALE_PROPERTY = "zscan.cassette.timeScale";
+    public static final String TIME_SCALE_ENV = "ZSCAN_CASSETTE_TIME_SCALE";
+
+    // response headers the plugin reads; everything else (cookies, tracing IDs, ...) is dropped
+    private static final String[] KEPT_HEADERS = { "Content-Type", "Content-Length", "ETag", "Last-Modified" };
+    private static final Pattern SECRETS = Pattern.compile(
+        "\"(accessToken|refreshToken|clientSecret|secret|token)\"\\s*:\\s*\"[^\"]*\"", Pattern.CASE_INSENSITIVE);
+
+    private Cassette() {
+    }
+
+    /**
+     * One recorded request and its response.
+     */
+    public static final class Exchange {
+        String method;
+        String path;
+        long requestBytes;
+        int code;
+        Map<String, String> headers;
+        String body;
+        String error;
+        boolean connectFailure;
+        long elapsedMillis;
+
+        /**
+         * @return method and path (with query) the exchange is matched by
+         */
+        String key() {
+            return key(method, path);
+        }
+
+        static String key(String method, String path) {
+            return method + " " + path;
+        }
+    }
+
+    /**
+     * Wraps the transport as configured on this agent: with a {@link ReplayTransport} if a cassette is replayed,
+     * with a {@link RecordingTransport} if exchanges are recorded, or not at all.
+     */
+    public static HttpTransport configure(HttpTransport transport) {
+        String replay = System.getProperty(REPLAY_PROPERTY, System.getenv(REPLAY_ENV));
+        if (replay != null && !replay.trim().isEmpty()) {
+            String scale = System.getProperty(TIME_SCALE_PROPERTY, System.getenv(TIME_SCALE_ENV));
+            try {
+                return new ReplayTransport(read(Paths.get(replay.trim())), (scale != null) ? Double.parseDouble(scale.trim()) : 1.0);
+            }
+            catch (IOException | NumberFormatException e) {
+                throw new IllegalStateException("Unable to replay cassette " + replay + ": " + e.getLocalizedMessage(), e);
+            }
+        }
+
+        String record = System.getProperty(RECORD_PROPERTY, System.getenv(RECORD_ENV));
+        if (record != null && !record.trim().isEmpty()) {
+            return new RecordingTransport(transport, Paths.get(record.trim()));
+        }
+        return transport;
+    }
+
+    /**
+     * @return path and query of the request URL, without the base URL
+     */
+    static String path(ApiRequest request) {
+        URI uri = URI.create(request.url());
+        return uri.getRawPath() + ((uri.getRawQuery() != null) ? "?" + uri.getRawQuery() : "");
+    }
+
+    /**
+     * @return the sanitized exchange
+     */
+    static Exchange exchange(ApiRequest request, long requestBytes, int code, Map<String, List<String>> headers,
+                             String body, long elapsedMillis) {
+        Exchange exchange = new Exchange();
+        exchange.method = request.method();
+        exchange.path = path(request);
+        exchange.requestBytes = requestBytes;
+        exchange.code = code;
+        exchange.headers = new LinkedHashMap<>();
+        for (String name : KEPT_HEADERS) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                    exchange.headers.put(name, header.getValue().get(0));
+                }
+            }
+        }
+        exchange.body = SECRETS.matcher(body).replaceAll("\"$1\":\"redacted\"");
+        exchange.elapsedMillis = elapsedMillis;
+        return exchange;
+    }
+
+    /**
+     * @return the exchange of a request that failed without a response, e.g. because the server was unreachable
+     */
+    static Exchange failure(ApiRequest request, long requestBytes, IOException error, long elapsedMillis) {
+        Exchange exchange = exchange(request, requestBytes, 0, Collections.emptyMap(), "", elapsedMillis);
+        exchange.error = error.getClass().getSimpleName() + ": " + error.getLocalizedMessage();
+        exchange.connectFailure = APITaskExecutor.isConnectFailure(error);
+        return exchange;
+    }
+
+    /**
+     * Appends an exchange to the cassette.
+     */
+    static void append(Path file, Exchange exchange) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+            writer.write(TaskPlugin.gson().toJson(exchange));
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * @return the exchanges of the cassette, in the order they were recorded
+     */
+    static List<Exchange> read(Path file) throws IOException {
+        List<Exchange> exchanges = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    exchanges.add(TaskPlugin.gson().fromJson(line, Exchange.class));
+                }
+            }
+        }
+        return exchanges;
+    }
+}
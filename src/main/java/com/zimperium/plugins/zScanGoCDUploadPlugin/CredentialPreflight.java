@@ -0,0 +1,156 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CredentialPreflight checks the endpoint and credentials of a task when its configuration is validated, so a wrong
+ * endpoint, a bad API key or an unreachable console is reported when the pipeline is saved rather than when a job
+ * has already been assigned to an agent.
+ *
+ * <p>The check is a test login: it resolves the endpoint, performs the TLS handshake and authenticates.  It gives up
+ * after {@link #timeout} seconds, so saving a pipeline is never held up for long.  Results are cached for
+ * {@link #successTtl} seconds (successful logins) or {@link #failureTtl} seconds (failures) by endpoint and a SHA-256
+ * fingerprint of the credentials; the credentials themselves are not kept.  Values that refer to environment
+ * variables ({@code ${...}}) or parameters ({@code #{...}}) are only known when the job runs and are not checked.</p>
+ */
+public class CredentialPreflight {
+    public static final CredentialPreflight INSTANCE = new CredentialPreflight();
+
+    public final static long timeout = 15;
+    public final static long successTtl = 5 * 60;
+    public final static long failureTtl = 30;
+    public final static int maxCachedResults = 100;
+
+    private static final Executor PREFLIGHTS = PluginThreads.perTask("zscan-preflight");
+
+    private final Map<String, CachedResult> results = new ConcurrentHashMap<>();
+
+    private CredentialPreflight() {
+    }
+
+    /**
+     * Problem found by the preflight, and the setting it relates to.
+     */
+    public static class Problem {
+        private final String property;
+        private final String message;
+
+        Problem(String property, String message) {
+            this.property = property;
+            this.message = message;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private static final class CachedResult {
+        final Problem problem;
+        final long expiresAt;
+
+        CachedResult(Problem problem, long expiresAt) {
+            this.problem = problem;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * @return {@code true} if the value is only known when the job runs
+     */
+    public static boolean isDeferred(String value) {
+        return value != null && (value.contains("${") || value.contains("#{"));
+    }
+
+    /**
+     * Logs in with the given endpoint and credentials, or returns the cached result of a recent check.
+     *
+     * @return the problem found, or {@code null} if the login succeeded
+     */
+    public Problem check(String endpoint, String clientId, String clientSecret, HttpTransport transport) {
+        String key = endpoint.trim() + "\n" + transport.name() + "\n" + fingerprint(clientId, clientSecret);
+        long now = System.currentTimeMillis();
+        CachedResult cached = results.get(key);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.problem;
+        }
+
+        Problem problem = login(endpoint.trim(), clientId, clientSecret, transport);
+
+        if (results.size() >= maxCachedResults) {
+            results.values().removeIf(result -> result.expiresAt <= now);
+            if (results.size() >= maxCachedResults) {
+                results.clear();
+            }
+        }
+        long ttl = (problem == null) ? successTtl : failureTtl;
+        results.put(key, new CachedResult(problem, System.currentTimeMillis() + ttl * 1000));
+        return problem;
+    }
+
+    private Problem login(String endpoint, String clientId, String clientSecret, HttpTransport transport) {
+        JobConsoleLogger console = new JobConsoleLogger() {
+            @Override
+            public void printLine(String line) {
+                TaskPlugin.LOGGER.info("Preflight: " + line);
+            }
+        };
+
+        CancellationToken cancellation = new CancellationToken();
+        APITaskExecutor apiTaskExecutor;
+        try {
+            apiTaskExecutor = new APITaskExecutor(new URLBuilder(endpoint), console, cancellation, transport);
+        }
+        catch (RuntimeException e) {
+            return new Problem(TaskPlugin.URL_PROPERTY, "Invalid endpoint: " + e.getLocalizedMessage());
+        }
+
+        CompletableFuture<Boolean> login = CompletableFuture.supplyAsync(() -> apiTaskExecutor.login(clientId, clientSecret), PREFLIGHTS);
+        try {
+            if (login.get(timeout, TimeUnit.SECONDS)) {
+                return null;
+            }
+            if (apiTaskExecutor.wasServerUnavailable()) {
+                return new Problem(TaskPlugin.URL_PROPERTY, "Unable to reach the zScan server at " + endpoint + ". Please check the endpoint.");
+            }
+            return new Problem(TaskPlugin.ID_PROPERTY, "Unable to log in to " + endpoint + ". Please check the Client ID and Client Secret.");
+        }
+        catch (TimeoutException e) {
+            cancellation.cancel("preflight timed out");
+            return new Problem(TaskPlugin.URL_PROPERTY, "No response from " + endpoint + " within " + timeout + " seconds.");
+        }
+        catch (InterruptedException e) {
+            cancellation.cancel("validation was interrupted");
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException | CancellationException e) {
+            Throwable cause = (e instanceof ExecutionException) ? e.getCause() : e;
+            return new Problem(TaskPlugin.URL_PROPERTY, "Unable to check the endpoint: " + cause.getLocalizedMessage());
+        }
+    }
+
+    private static String fingerprint(String clientId, String clientSecret) {
+        MessageDigest digest = Digests.sha256();
+        digest.update(clientId.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(clientSecret.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+}
@@ -16,17 +16,33 @@
 
 package com.zimperium.plugins.zScanGoCDUploadPlugin;
 
+import com.thoughtworks.go.plugin.api.response.DefaultGoApiResponse;
 import com.thoughtworks.go.plugin.api.task.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 public class CurlTaskExecutor {
 
-    public Result downloadReport(TaskConfig taskConfig, Context context, String assessmentId, JobConsoleLogger console) {
+    /**
+     * Downloads the report of a completed assessment (or takes it from the report cache) and processes it.
+     * Assessments that are not done yet have no final report; callers must only pass the ID of a completed one.
+     */
+    public Result downloadReport(TaskConfig taskConfig, Context context, String buildId, String assessmentId, String zdevAppId, JobConsoleLogger console, CancellationToken cancellation) {
+        if (assessmentId == null || assessmentId.isEmpty()) {
+            return new Result(false, "No assessment ID for build " + buildId + "; the report cannot be downloaded.");
+        }
         try {
-            return runDownloadCommand(taskConfig, context, assessmentId, console);
+            return runDownloadCommand(taskConfig, context, buildId, assessmentId, zdevAppId, console, cancellation);
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             return new Result(false, "Failed to download report for assessment " + assessmentId + " from URL: " + taskConfig.getServerUrl(), e);
         }
@@ -39,30 +55,42 @@ public class CurlTaskExecutor {
      * task configuration and context. It uses a {@link ProcessBuilder} to run a `curl` command 
      * to download the report. If the command succeeds, a success message is returned; otherwise, 
      * an error message is returned. The method also manages the process lifecycle and logs output 
-     * and errors via the provided console logger.</p>
+     * and errors via the provided console logger. The process is registered with the cancellation 
+     * token, so it is killed if the job is cancelled while the download is in progress.</p>
      * 
      * @param taskConfig   The {@link TaskConfig} containing the configuration for the task, including 
      *                     the report filename, format, and URL builder.
      * @param taskContext  The {@link Context} object providing environment variables and the working directory.
+     * @param buildId      The ID of the build the assessment belongs to; recorded with the download.
      * @param assessmentId The unique ID of the assessment whose report is to be downloaded.
+     * @param zdevAppId    The ID of the application, used to compare JSON reports with the previous report.
      * @param console      The {@link JobConsoleLogger} used to print logs and read process output.
+     * @param cancellation The {@link CancellationToken} of the running job.
      * 
      * @return A {@link Result} object indicating the success or failure of the download operation.
      *         If the `curl` command fails (non-zero exit code), a failure result is returned with an error message.
      * 
      * @throws IOException          If an I/O error occurs when starting or communicating with the process.
      * @throws InterruptedException If the current thread is interrupted while waiting for the process to complete.
+     * @throws CancellationException If the job is cancelled before or during the download.
      * 
      * @see java.lang.ProcessBuilder
      * @see java.io.IOException
      * @see java.lang.InterruptedException
      */
     @SuppressWarnings("unchecked")
-    private Result runDownloadCommand(TaskConfig taskConfig, Context taskContext, String assessmentId, JobConsoleLogger console) throws IOException, InterruptedException {
+    private Result runDownloadCommand(TaskConfig taskConfig, Context taskContext, String buildId, String assessmentId, String zdevAppId, JobConsoleLogger console, CancellationToken cancellation) throws IOException, InterruptedException {
         // construct report filename and the URL
-        String reportFileName = taskContext.getWorkingDir() + "/" + taskConfig.getReportFileName(assessmentId, taskConfig.getReportFormat());
-        String reportUrl = taskConfig.getURLBuilder().getDownloadReportURL(assessmentId, taskConfig.getReportFormat());
+        String reportFileName = taskContext.getWorkingDir() + "/" + taskConfig.getReportFileName(assessmentId, taskConfig.getDownloadFormat());
+        String reportUrl = taskConfig.getURLBuilder().getDownloadReportURL(assessmentId, taskConfig.getDownloadFormat());
         
+        ReportCache cache = openReportCache(console);
+        if (cache != null && fetchFromCache(cache, taskConfig, assessmentId, reportFileName, console)) {
+            taskConfig.getEventLog().record("report_download", "assessmentId", assessmentId, "source", "cache",
+                "bytes", new File(reportFileName).length());
+            return processReport(taskConfig, taskContext, assessmentId, zdevAppId, reportFileName, console);
+        }
+
         ProcessBuilder curl = createCurlCommandWithOptions(reportUrl, reportFileName, taskConfig.getAPITaskExecutor().getAuthToken());
         curl.environment().putAll(taskContext.getEnvironmentVariables());
 
@@ -71,25 +99,196 @@ public class CurlTaskExecutor {
         // console.printLine("Launching command: " + curl.command());
 
         console.printLine("Launching curl command to download " + reportFileName + " from " + reportUrl);
-        Process curlProcess = curl.start();
-        console.readErrorOf(curlProcess.getErrorStream());
-        console.readOutputOf(curlProcess.getInputStream());
+        PluginEvents.ReportDownload downloadEvent = new PluginEvents.ReportDownload();
+        downloadEvent.assessmentId = assessmentId;
+        downloadEvent.buildId = buildId;
+        downloadEvent.job = taskConfig.getJob();
+        downloadEvent.begin();
+        long downloadStart = System.currentTimeMillis();
+
+        cancellation.throwIfCancelled();
+        Process curlProcess = cancellation.register(curl.start(), "downloading " + reportFileName);
+        int exitCode;
+        try {
+            console.readErrorOf(curlProcess.getErrorStream());
+            console.readOutputOf(curlProcess.getInputStream());
+
+            exitCode = waitFor(curlProcess);
+            curlProcess.destroy();
+            downloadEvent.exitCode = exitCode;
+        }
+        catch (InterruptedException e) {
+            cancellation.cancel("job thread was interrupted");
+            throw e;
+        }
+        finally {
+            cancellation.unregister(curlProcess);
 
-        int exitCode = curlProcess.waitFor();
-        curlProcess.destroy();
+            downloadEvent.end();
+            if (downloadEvent.shouldCommit()) {
+                downloadEvent.endpoint = URI.create(reportUrl).getPath();
+                downloadEvent.bytes = new File(reportFileName).length();
+                downloadEvent.commit();
+            }
+        }
+        cancellation.throwIfCancelled();
+        taskConfig.getEventLog().record("report_download", "assessmentId", assessmentId, "source", "server",
+            "exitCode", exitCode, "bytes", new File(reportFileName).length(), "durationMs", System.currentTimeMillis() - downloadStart);
 
         if (exitCode != 0) {
+            // with --fail, HTTP errors end up here; never leave an error page behind as the report
+            Files.deleteIfExists(Paths.get(reportFileName));
             return new Result(false, "Error downloading file. Please check the output");
         }
+        TaskPlugin.metrics().reportDownloads.increment();
+
+        if (cache != null) {
+            try {
+                cache.store(taskConfig.getURLBuilder().getBaseUrl(), assessmentId, taskConfig.getDownloadFormat(), Paths.get(reportFileName));
+            }
+            catch (IOException | RuntimeException e) {
+                console.printLine("Unable to add the report to the cache " + cache.getDirectory() + ": " + e.getLocalizedMessage());
+            }
+        }
+
+        return processReport(taskConfig, taskContext, assessmentId, zdevAppId, reportFileName, console);
+    }
+
+    /**
+     * Waits for a process to exit.  Unlike {@link Process#waitFor()}, which waits on a monitor, waiting for
+     * {@link Process#onExit()} lets a virtual thread release its carrier thread (see {@link PluginThreads}).
+     */
+    private static int waitFor(Process process) throws InterruptedException {
+        try {
+            return process.onExit().get().exitValue();
+        }
+        catch (ExecutionException e) {
+            // onExit() does not complete exceptionally; fall back to waiting directly
+            return process.waitFor();
+        }
+    }
+
+    /**
+     * Compares the report with the baseline, exports its findings and converts it to SARIF, as configured.
+     */
+    private Result processReport(TaskConfig taskConfig, Context taskContext, String assessmentId, String zdevAppId, String reportFileName, JobConsoleLogger console) {
+        if ("json".equals(taskConfig.getDownloadFormat()) && !zdevAppId.isEmpty()) {
+            compareWithBaseline(taskConfig, taskContext, assessmentId, zdevAppId, reportFileName, console);
+        }
+
+        if (taskConfig.shouldExportNdjson()) {
+            if (!"json".equals(taskConfig.getDownloadFormat())) {
+                console.printLine("Findings can only be exported from a JSON report. Skipping the export.");
+            }
+            else {
+                Result exportResult = exportNdjson(taskConfig, taskContext, assessmentId, zdevAppId, reportFileName, console);
+                if (exportResult.responseCode() != DefaultGoApiResponse.SUCCESS_RESPONSE_CODE) {
+                    return exportResult;
+                }
+            }
+        }
+
+        if (taskConfig.shouldConvertToSarif()) {
+            return convertToSarif(taskConfig, taskContext, assessmentId, reportFileName, console);
+        }
 
         return new Result(true, "Downloaded file: " + reportFileName);
     }
 
+    private ReportCache openReportCache(JobConsoleLogger console) {
+        try {
+            return ReportCache.open();
+        }
+        catch (RuntimeException e) {
+            console.printLine("Report cache is not available: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Places a cached copy of the report into the working directory.  Reports are only downloaded for completed
+     * assessments, so a cached report is always current.
+     *
+     * @return {@code true} if the report was found in the cache
+     */
+    private boolean fetchFromCache(ReportCache cache, TaskConfig taskConfig, String assessmentId, String reportFileName, JobConsoleLogger console) {
+        try {
+            if (cache.fetch(taskConfig.getURLBuilder().getBaseUrl(), assessmentId, taskConfig.getDownloadFormat(), Paths.get(reportFileName))) {
+                console.printLine("Using cached report " + reportFileName + " from " + cache.getDirectory());
+                TaskPlugin.metrics().reportCacheHits.increment();
+                return true;
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            console.printLine("Unable to read the report cache " + cache.getDirectory() + ": " + e.getLocalizedMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Writes the findings of the downloaded JSON report as newline-delimited JSON next to the report.
+     */
+    private Result exportNdjson(TaskConfig taskConfig, Context taskContext, String assessmentId, String zdevAppId, String jsonFileName, JobConsoleLogger console) {
+        String exportFileName = taskContext.getWorkingDir() + "/" + taskConfig.getExportFileName(assessmentId);
+        try {
+            long start = System.currentTimeMillis();
+            long count = new NdjsonExporter().export(Paths.get(jsonFileName), Paths.get(exportFileName), assessmentId, zdevAppId);
+            console.printLine("Exported " + count + " findings to " + exportFileName + " (" + (System.currentTimeMillis() - start) + "ms)");
+        }
+        catch (IOException | RuntimeException e) {
+            return new Result(false, "Downloaded file: " + jsonFileName + ", but unable to export its findings: " + e.getLocalizedMessage(), e);
+        }
+        return new Result(true, "Exported findings to: " + exportFileName);
+    }
+
+    /**
+     * Produces the SARIF report from the downloaded JSON report, so that only one report has to be fetched 
+     * from the server when both formats are requested.
+     */
+    private Result convertToSarif(TaskConfig taskConfig, Context taskContext, String assessmentId, String jsonFileName, JobConsoleLogger console) {
+        String sarifFileName = taskContext.getWorkingDir() + "/" + taskConfig.getReportFileName(assessmentId, "sarif");
+        try {
+            long start = System.currentTimeMillis();
+            long count = new SarifConverter().convert(Paths.get(jsonFileName), Paths.get(sarifFileName));
+            console.printLine("Converted " + count + " findings to SARIF: " + sarifFileName + " (" + (System.currentTimeMillis() - start) + "ms)");
+        }
+        catch (IOException | RuntimeException e) {
+            return new Result(false, "Downloaded file: " + jsonFileName + ", but unable to convert it to SARIF: " + e.getLocalizedMessage(), e);
+        }
+        return new Result(true, "Downloaded file: " + jsonFileName + ", converted to: " + sarifFileName);
+    }
+
+    /**
+     * Writes the new, fixed and unchanged findings compared with the previous report of the same application and
+     * branch next to the report.  The comparison is informational; failures are reported but do not fail the task.
+     */
+    private void compareWithBaseline(TaskConfig taskConfig, Context taskContext, String assessmentId, String zdevAppId, String jsonFileName, JobConsoleLogger console) {
+        String deltaFileName = taskContext.getWorkingDir() + "/" + taskConfig.getReportFileName(assessmentId, "delta");
+        Object branch = taskContext.getEnvironmentVariables().get("BRANCH_NAME");
+        try {
+            long start = System.currentTimeMillis();
+            FindingsBaseline.Delta delta = FindingsBaseline.open().compare(Paths.get(jsonFileName), zdevAppId,
+                (branch != null) ? branch.toString() : "", assessmentId, Paths.get(deltaFileName));
+            if (delta.getBaselineAssessmentId().isEmpty()) {
+                console.printLine("No previous report to compare with; " + delta.getNew() + " findings recorded as baseline");
+            }
+            else {
+                console.printLine("Compared with assessment " + delta.getBaselineAssessmentId() + ": " + delta + " (" + (System.currentTimeMillis() - start) + "ms)");
+            }
+            console.printLine("Findings delta: " + deltaFileName);
+        }
+        catch (IOException | RuntimeException e) {
+            console.printLine("Unable to compare findings with the previous report: " + e.getLocalizedMessage());
+        }
+    }
+
     ProcessBuilder createCurlCommandWithOptions(String reportUrl, String reportFileName, String authToken) {
 
         List<String> command = new ArrayList<String>();
         command.add("curl");
 
+        // HTTP errors fail the command instead of saving the error response as the report
+        command.add("--fail");
         command.add("-H");
         command.add("Authorization: Bearer " + authToken);
         command.add("-o");
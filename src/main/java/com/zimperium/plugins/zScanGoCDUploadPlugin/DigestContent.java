@@ -0,0 +1,169 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.zip.CRC32C;
+
+/**
+ * DigestContent wraps another {@link RequestContent} and computes its SHA-256 and CRC32C checksums while the
+ * bytes are being sent, so checksums of large binaries cost no extra pass over the file.
+ *
+ * <p>The checksums are available once {@link #writeTo(OutputStream)} has completed.  Because the length of a SHA-256
+ * hex string is fixed, the digest can be sent in a multipart field that follows the file (see {@link #sha256Part()})
+ * without giving up a known content length.</p>
+ */
+public class DigestContent implements RequestContent {
+    public static final int SHA256_HEX_LENGTH = 64;
+
+    private final RequestContent delegate;
+
+    private volatile String sha256 = "";
+    private volatile String crc32c = "";
+
+    public DigestContent(RequestContent delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        // every attempt starts from scratch; checksums of an incomplete attempt are never exposed
+        sha256 = "";
+        crc32c = "";
+
+        DigestingStream digestingStream = new DigestingStream(out);
+        delegate.writeTo(digestingStream);
+        digestingStream.flush();
+
+        sha256 = Digests.hex(digestingStream.sha256.digest());
+        crc32c = String.format("%08x", digestingStream.crc32c.getValue());
+    }
+
+    /**
+     * @return lower-case hex SHA-256 of the content written by the last complete attempt, or an empty string
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @return lower-case hex CRC32C of the content written by the last complete attempt, or an empty string
+     */
+    public String getCrc32c() {
+        return crc32c;
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel out) throws IOException {
+        // same as writeTo(OutputStream), for transports that write to a channel
+        sha256 = "";
+        crc32c = "";
+
+        DigestingChannel digestingChannel = new DigestingChannel(out);
+        delegate.writeTo(digestingChannel);
+
+        sha256 = Digests.hex(digestingChannel.sha256.digest());
+        crc32c = String.format("%08x", digestingChannel.crc32c.getValue());
+    }
+
+    /**
+     * @return content consisting of the hex SHA-256 of this body; must be written after this body
+     */
+    public RequestContent sha256Part() {
+        return new RequestContent() {
+            @Override
+            public String contentType() {
+                return null;
+            }
+
+            @Override
+            public long contentLength() {
+                return SHA256_HEX_LENGTH;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                if (sha256.isEmpty()) {
+                    throw new IOException("SHA-256 requested before the content was written");
+                }
+                out.write(sha256.getBytes(StandardCharsets.US_ASCII));
+            }
+        };
+    }
+
+    private static final class DigestingChannel implements WritableByteChannel {
+        final MessageDigest sha256 = Digests.sha256();
+        final CRC32C crc32c = new CRC32C();
+        private final WritableByteChannel out;
+
+        DigestingChannel(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int start = src.position();
+            int written = out.write(src);
+
+            // digests the bytes the channel took, straight from the (possibly direct) buffer
+            ByteBuffer view = src.duplicate();
+            view.position(start).limit(start + written);
+            sha256.update(view.duplicate());
+            crc32c.update(view);
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return out.isOpen();
+        }
+
+        // the underlying channel belongs to the transport
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class DigestingStream extends FilterOutputStream {
+        final MessageDigest sha256 = Digests.sha256();
+        final CRC32C crc32c = new CRC32C();
+
+        DigestingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            sha256.update((byte) b);
+            crc32c.update(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            sha256.update(b, off, len);
+            crc32c.update(b, off, len);
+        }
+
+        // the underlying stream belongs to the transport
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
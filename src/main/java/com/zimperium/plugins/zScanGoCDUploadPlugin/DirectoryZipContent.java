@@ -0,0 +1,98 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * DirectoryZipContent packages a directory (e.g., an iOS .app bundle or an exploded build output) into a
+ * ZIP archive while it is being sent, so no temporary archive has to be written to disk first.
+ *
+ * <p>The archive is produced deterministically: entries are sorted by their relative path, every entry gets
+ * the same timestamp, and only regular files and directories are included (symbolic links are not followed).
+ * Writing the same directory twice therefore yields byte-identical archives and a stable content hash.
+ * The length of the archive is not known in advance, so the body is sent with chunked transfer encoding.</p>
+ */
+public class DirectoryZipContent implements RequestContent {
+    public static final String ZIP_TYPE = "application/zip";
+    public static final String extension = ".zip";
+
+    // the earliest timestamp the ZIP format can store; set as local time so the host's time zone does not matter
+    private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+    private final File directory;
+
+    public DirectoryZipContent(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String contentType() {
+        return ZIP_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Path root = directory.toPath();
+        String rootName = directory.getName();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        // the stream belongs to the transport; finish() completes the archive without closing it
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (Path path : listEntries(root)) {
+            String relative = root.relativize(path).toString().replace(File.separatorChar, '/');
+            String name = relative.isEmpty() ? rootName + "/" : rootName + "/" + relative;
+
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                ZipEntry entry = new ZipEntry(name.endsWith("/") ? name : name + "/");
+                entry.setTimeLocal(ENTRY_TIME);
+                zip.putNextEntry(entry);
+                zip.closeEntry();
+            }
+            else {
+                ZipEntry entry = new ZipEntry(name);
+                entry.setTimeLocal(ENTRY_TIME);
+                zip.putNextEntry(entry);
+                try (InputStream in = Files.newInputStream(path)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        zip.write(buffer, 0, read);
+                    }
+                }
+                zip.closeEntry();
+            }
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Returns all directories and regular files under {@code root} (including {@code root} itself) in a stable
+     * order: sorted by their path relative to {@code root}, using '/' as the separator on every platform.
+     */
+    static List<Path> listEntries(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths
+                .filter(path -> Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)
+                    || Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+                .sorted((a, b) -> root.relativize(a).toString().replace(File.separatorChar, '/')
+                    .compareTo(root.relativize(b).toString().replace(File.separatorChar, '/')))
+                .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * EndpointSelector orders the base URLs of an endpoint setting by health and latency as seen from this agent.
+ *
+ * <p>All base URLs are probed at the same time with a request to the root of the base URL; any response below HTTP
+ * 500 counts as healthy.  Healthy base URLs are ordered by round-trip time, followed by the others in their
+ * configured order, so a run starts on the fastest healthy one and fails over in that order (see
+ * {@link URLBuilder#failOver(String)}).  Probes that take longer than {@link #probeTimeout} seconds count as
+ * unhealthy.  The order is cached per agent for {@link #selectionTtl} seconds, or until {@link #invalidate(List)} is
+ * called after a failover.</p>
+ */
+public class EndpointSelector {
+    public static final EndpointSelector INSTANCE = new EndpointSelector();
+
+    public final static long probeTimeout = 5;
+    public final static long selectionTtl = 10 * 60;
+
+    // runs the probes; one short-lived thread per endpoint
+    private static final Executor PROBES = PluginThreads.perTask("zscan-endpoint-probe");
+
+    private final Map<String, Selection> selections = new ConcurrentHashMap<>();
+
+    private EndpointSelector() {
+    }
+
+    private static final class Selection {
+        final List<String> order;
+        final long expiresAt;
+
+        Selection(List<String> order, long expiresAt) {
+            this.order = order;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Probe {
+        final String baseUrl;
+        final int index;
+        final long roundTripMillis;
+        final String problem;
+
+        Probe(String baseUrl, int index, long roundTripMillis, String problem) {
+            this.baseUrl = baseUrl;
+            this.index = index;
+            this.roundTripMillis = roundTripMillis;
+            this.problem = problem;
+        }
+    }
+
+    /**
+     * @return the base URLs, fastest healthy one first; a single base URL is returned without probing
+     */
+    public List<String> select(List<String> baseUrls, HttpTransport transport, JobConsoleLogger console) {
+        if (baseUrls.size() < 2) {
+            return baseUrls;
+        }
+
+        String key = key(baseUrls) + transport.name();
+        Selection cached = selections.get(key);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            return cached.order;
+        }
+
+        CancellationToken cancellation = new CancellationToken();
+        List<CompletableFuture<Probe>> probes = new ArrayList<>();
+        for (int i = 0; i < baseUrls.size(); i++) {
+            String baseUrl = baseUrls.get(i);
+            int index = i;
+            probes.add(CompletableFuture.supplyAsync(() -> probe(baseUrl, index, transport, cancellation), PROBES));
+        }
+
+        List<Probe> results = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + probeTimeout * 1000;
+        for (int i = 0; i < probes.size(); i++) {
+            try {
+                results.add(probes.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+            }
+            catch (TimeoutException e) {
+                results.add(new Probe(baseUrls.get(i), i, Long.MAX_VALUE, "no response within " + probeTimeout + "s"));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancellation.cancel("endpoint selection was interrupted");
+                return baseUrls;
+            }
+            catch (ExecutionException e) {
+                results.add(new Probe(baseUrls.get(i), i, Long.MAX_VALUE, describe(e.getCause())));
+            }
+        }
+        // abandons probes that are still waiting for a response
+        cancellation.cancel("endpoint selection is complete");
+
+        results.sort(Comparator.comparing((Probe probe) -> probe.problem != null)
+            .thenComparingLong(probe -> (probe.problem == null) ? probe.roundTripMillis : probe.index));
+        List<String> order = new ArrayList<>();
+        for (Probe probe : results) {
+            console.printLine("Endpoint " + probe.baseUrl + ": "
+                + ((probe.problem == null) ? probe.roundTripMillis + "ms" : "unhealthy (" + probe.problem + ")"));
+            order.add(probe.baseUrl);
+        }
+
+        selections.put(key, new Selection(order, System.currentTimeMillis() + selectionTtl * 1000));
+        return order;
+    }
+
+    /**
+     * Forgets the cached order of the base URLs, e.g. after the selected one failed.
+     */
+    public void invalidate(List<String> baseUrls) {
+        String prefix = key(baseUrls);
+        selections.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static Probe probe(String baseUrl, int index, HttpTransport transport, CancellationToken cancellation) {
+        ApiRequest request = new ApiRequest.Builder()
+            .url(baseUrl + "/")
+            .get()
+            .build();
+        long start = System.nanoTime();
+        try (ApiResponse response = transport.execute(request, cancellation, "probing " + baseUrl)) {
+            long roundTripMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return new Probe(baseUrl, index, roundTripMillis, (response.code() < 500) ? null : "HTTP " + response.code());
+        }
+        catch (Exception e) {
+            return new Probe(baseUrl, index, Long.MAX_VALUE, describe(e));
+        }
+    }
+
+    // some connection failures have no message
+    private static String describe(Throwable e) {
+        return (e.getLocalizedMessage() != null) ? e.getLocalizedMessage() : e.getClass().getSimpleName();
+    }
+
+    private static String key(List<String> baseUrls) {
+        return String.join("\n", baseUrls) + "\n";
+    }
+}
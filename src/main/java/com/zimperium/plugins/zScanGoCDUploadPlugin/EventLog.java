@@ -0,0 +1,203 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.stream.JsonWriter;
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EventLog writes a machine-readable record of a job to {@link #FILE_NAME} in the working directory: one JSON object
+ * per line for every API call, state change (upload, scan status, report download, ...) and the job's result, with
+ * a timestamp, the thread and the durations involved.
+ *
+ * <p>Recording an event only adds it to a lock-free queue, so it never blocks the upload or polling threads.  A single
+ * background writer serializes the queued events and flushes them in batches, at least every {@link #flushInterval}
+ * milliseconds; {@link #close()} writes what is left.  The file is appended to, so several tasks of a job share it.
+ * The log is only written for tasks with the {@code EventLog} setting enabled; setting the {@code zscan.eventlog} system
+ * property or the {@code ZSCAN_EVENT_LOG} environment variable to {@code false} turns it off on an agent anyway.</p>
+ */
+public class EventLog {
+    public static final String FILE_NAME = "zscan-events.jsonl";
+    public static final String ENABLED_PROPERTY = "zscan.eventlog";
+    public static final String ENABLED_ENV = "ZSCAN_EVENT_LOG";
+
+    public final static long flushInterval = 200;
+    public final static long closeTimeout = 5;
+
+    /**
+     * Discards all events; used when the log is turned off or cannot be opened.
+     */
+    public static final EventLog DISABLED = new EventLog();
+
+    private final Queue<Entry> queue;
+    private final Path file;
+    private final Writer writer;
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    private static final class Entry {
+        final long time;
+        final String thread;
+        final String type;
+        final Object[] fields;
+
+        Entry(String type, Object[] fields) {
+            this.time = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+            this.type = type;
+            this.fields = fields;
+        }
+    }
+
+    private EventLog() {
+        queue = null;
+        file = null;
+        writer = null;
+        writerThread = null;
+        closed = true;
+    }
+
+    private EventLog(Path file, Writer writer) {
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.file = file;
+        this.writer = writer;
+        this.writerThread = PluginThreads.factory("zscan-event-log").newThread(this::writeLoop);
+        this.writerThread.start();
+    }
+
+    /**
+     * Opens the event log of a job in its working directory; called for tasks with the event log enabled.
+     *
+     * @return the log, or {@link #DISABLED} if it is turned off or cannot be opened
+     */
+    public static EventLog open(Context context, JobConsoleLogger console) {
+        String enabled = System.getProperty(ENABLED_PROPERTY, System.getenv(ENABLED_ENV));
+        if (enabled != null && enabled.trim().equalsIgnoreCase("false")) {
+            return DISABLED;
+        }
+
+        Path file = Path.of(context.getWorkingDir(), FILE_NAME);
+        try {
+            Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+            return new EventLog(file, writer);
+        }
+        catch (IOException e) {
+            console.printLine("Unable to open the event log " + file + ": " + e.getLocalizedMessage());
+            return DISABLED;
+        }
+    }
+
+    /**
+     * @return the file events are written to, or {@code null} if the log is disabled
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Queues an event.  Returns immediately; events recorded after the log has been closed are discarded.
+     *
+     * @param type   kind of event, e.g. {@code api_call} or {@code scan_status}
+     * @param fields alternating field names and values; values may be strings, numbers, booleans or {@code null}
+     */
+    public void record(String type, Object... fields) {
+        if (closed) {
+            return;
+        }
+        queue.add(new Entry(type, fields));
+    }
+
+    /**
+     * Writes the queued events and closes the file.  Waits at most {@link #closeTimeout} seconds for the writer.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(closeTimeout));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                // read the flag before draining, so nothing queued before close() is missed
+                boolean last = closed;
+                boolean wrote = false;
+                Entry entry;
+                while ((entry = queue.poll()) != null) {
+                    write(entry);
+                    wrote = true;
+                }
+                if (wrote) {
+                    writer.flush();
+                }
+                if (last) {
+                    break;
+                }
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushInterval));
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            closed = true;
+            TaskPlugin.LOGGER.warn("Unable to write the event log " + file + "; further events are discarded", e);
+        }
+        finally {
+            queue.clear();
+            try {
+                writer.close();
+            }
+            catch (IOException e) {
+                // nothing useful to do
+            }
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        // serialized separately, so flushing the JsonWriter does not flush the file
+        StringWriter line = new StringWriter();
+        JsonWriter json = new JsonWriter(line);
+        json.beginObject();
+        json.name("time").value(Instant.ofEpochMilli(entry.time).toString());
+        json.name("event").value(entry.type);
+        json.name("thread").value(entry.thread);
+        for (int i = 0; i + 1 < entry.fields.length; i += 2) {
+            json.name(String.valueOf(entry.fields[i]));
+            Object value = entry.fields[i + 1];
+            if (value == null) {
+                json.nullValue();
+            }
+            else if (value instanceof Number) {
+                json.value((Number) value);
+            }
+            else if (value instanceof Boolean) {
+                json.value((Boolean) value);
+            }
+            else {
+                json.value(value.toString());
+            }
+        }
+        json.endObject();
+        json.flush();
+        writer.write(line.toString());
+        writer.write('\n');
+    }
+}
@@ -16,9 +16,6 @@
 
 package com.zimperium.plugins.zScanGoCDUploadPlugin;
 
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
@@ -27,12 +24,16 @@ import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
 
-import okhttp3.Response;
-import okhttp3.ResponseBody;
-
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 
@@ -41,6 +42,16 @@ public class ExecuteRequest {
     public final static long reportTimeout = 1200;
     public final static long maxFiles = 5;
 
+    // set if the task has the outbox enabled
+    private Outbox outbox;
+    private final AtomicInteger spooledCount = new AtomicInteger();
+
+    // durations of earlier scans; used to schedule the binaries of this job
+    private ScanHistory scanHistory;
+
+    // runs the login while the job thread inspects the files to upload
+    private static final Executor BACKGROUND = PluginThreads.perTask("zscan-login");
+
     /**
      * Main method of the plugin.  It performs steps to upload specified binaries to Zimperium for analysis, assign
      * applications to teams (if necessary), wait for assessments to complete, and download reports in either 
@@ -57,15 +68,37 @@ public class ExecuteRequest {
         JobConsoleLogger console = JobConsoleLogger.getConsoleLogger();
         
         @SuppressWarnings({ "rawtypes", "unchecked" })
-        Map<String, Object> executionRequest = (Map) new GsonBuilder().create().fromJson(request.requestBody(), Object.class);
+        Map<String, Object> executionRequest = (Map) TaskPlugin.gson().fromJson(request.requestBody(), Object.class);
         @SuppressWarnings({ "rawtypes", "unchecked" })
         Map<String, Object> config = (Map) executionRequest.get("config");
         @SuppressWarnings("rawtypes")
         Context context = new Context((Map) executionRequest.get("context"));
 
+        TaskPlugin.metrics().jobs.increment();
+
+        // cancelled when the job thread is interrupted or the agent shuts down
+        CancellationToken cancellation = CancellationToken.watch(Thread.currentThread());
+        EventLog eventLog = EventLog.DISABLED;
+        long jobStart = System.currentTimeMillis();
+
         try {
-            TaskConfig taskConfig = new TaskConfig(config, context, console);
+            TaskConfig taskConfig = new TaskConfig(config, context, console, cancellation);
+            if (taskConfig.isEventLogEnabled()) {
+                eventLog = EventLog.open(context, console);
+                taskConfig.setEventLog(eventLog);
+            }
+            eventLog.record("job_started", "pipeline", context.getEnvironmentVariables().get("GO_PIPELINE_NAME"),
+                "stage", context.getEnvironmentVariables().get("GO_STAGE_NAME"), "job", context.getEnvironmentVariables().get("GO_JOB_NAME"),
+                "pattern", taskConfig.getInputFileName(), "httpClient", taskConfig.getTransport().name());
             APITaskExecutor apiTaskExecutor = taskConfig.getAPITaskExecutor();
+            if (taskConfig.isOutboxEnabled()) {
+                // also uploads what earlier jobs left in the outbox
+                outbox = Outbox.open();
+                OutboxDrainer.INSTANCE.start(outbox, taskConfig);
+            }
+            if (!TaskPlugin.DEFAULT_HTTP_CLIENT.equals(taskConfig.getTransport().name())) {
+                console.printLine("Using the '" + taskConfig.getTransport().name() + "' HTTP client.");
+            }
 
             // Upload the binaries
             File directory = new File(context.getWorkingDir());
@@ -89,174 +122,317 @@ public class ExecuteRequest {
             if(files.length < 1) {
                 result = new Result(true, "No files matched the provided pattern.");
             }
-            // We do; login and get a token
-            else if(apiTaskExecutor.login(taskConfig.getClientId(), taskConfig.getClientSecret())) {
-                // Iterate over matching files
-                int successCount = 0;
+            else {
+                // Pick the endpoint and log in (DNS lookup, TCP and TLS handshakes, authentication) while the files are being inspected
+                URLBuilder urlBuilder = taskConfig.getURLBuilder();
+                CompletableFuture<Boolean> login = CompletableFuture.supplyAsync(() -> {
+                    urlBuilder.select(EndpointSelector.INSTANCE.select(urlBuilder.getBaseUrls(), taskConfig.getTransport(), console));
+                    if (urlBuilder.getBaseUrls().size() > 1) {
+                        console.printLine("Using endpoint " + urlBuilder.getBaseUrl());
+                    }
+                    return apiTaskExecutor.login(taskConfig.getClientId(), taskConfig.getClientSecret());
+                }, BACKGROUND);
+
+                Map<File, BinaryInfo> binaries = new LinkedHashMap<>();
                 for(File binary : files) {
-                    if(!binary.exists() || binary.isDirectory()) {
-                        console.printLine(binary.getAbsolutePath() + " does not exist or a directory. Skipping.");
+                    if(!binary.exists()) {
+                        console.printLine(binary.getAbsolutePath() + " does not exist. Skipping.");
                         continue;
                     }
-                    Response uploadResponse = apiTaskExecutor.uploadBinary(binary, context);
-                    if(uploadResponse.isSuccessful()) {
-                        // Assign to a team if necessary
-                        ResponseBody uploadResponseBody = uploadResponse.body();
-                        JsonObject jsonObject = JsonParser.parseString(uploadResponseBody.string()).getAsJsonObject();
-
-                        // Extract the appId needed for team assignment, buildId to check report status, and the current team 
-                        String zdevAppId = (jsonObject.get("zdevAppId").isJsonNull()) ? "" : jsonObject.get("zdevAppId").getAsString();
-                        String teamId = (jsonObject.get("teamId").isJsonNull()) ? "" : jsonObject.get("teamId").getAsString();
-                        String buildId = (jsonObject.get("buildId").isJsonNull()) ? "" : jsonObject.get("buildId").getAsString();
-
-                        // If teamID is empty, find the correct team id by name
-                        if(teamId.isEmpty()) {
-                            console.printLine("Application " + zdevAppId + " does not belong to a team. Assigning it to the " + taskConfig.getTeamName() + " team.");
-
-                            // need to wait a bit; otherwise we can get 404
-                            synchronized(this) {
-                                wait(checkInterval * 1000);
-                            }
+                    if(binary.isDirectory()) {
+                        console.printLine(binary.getAbsolutePath() + " is a directory. It will be uploaded as a ZIP archive.");
+                    }
 
-                            try {
-                                // get list of teams from the server
-                                Response listTeamsResponse = apiTaskExecutor.listTeams();
-                                // extract list of teams from the response
-                                JsonObject teamsObject = JsonParser.parseString(listTeamsResponse.body().string()).getAsJsonObject();
-                                if(!teamsObject.isJsonNull() && !teamsObject.isEmpty() && teamsObject.get("content").isJsonArray()) {
-                                    JsonArray teamArray = teamsObject.get("content").getAsJsonArray();
-                                    console.printLine("Found " + teamArray.size() + " teams");
-                                    for (JsonElement teamElement : teamArray) {
-                                        String name = teamElement.getAsJsonObject().get("name").getAsString();
-                                        // log(console, "Team " + name);
-                                        if(name.equals(taskConfig.getTeamName())){
-                                            teamId = teamElement.getAsJsonObject().get("id").getAsString();
-                                            //log(console, "Found team with ID: " + teamId);
-                                            break;
-                                        }
-                                    }
-                                            
-                                    // if we did not find the specified team, try 'Default'
-                                    if(teamId.isEmpty() && !taskConfig.getTeamName().equals("Default")) {
-                                        console.printLine("Team " + taskConfig.getTeamName() + " not found.  Trying the 'Default' team.");
-                                        for (JsonElement teamElement : teamArray) {
-                                            String name = teamElement.getAsJsonObject().get("name").getAsString();
-                                            // log(console, "Team " + name);
-                                            if(name.equals("Default")){
-                                                teamId = teamElement.getAsJsonObject().get("id").getAsString();
-                                                console.printLine("Found team with ID: " + teamId);
-                                                break;
-                                            }
-                                        }
-                                    }
-
-                                    // Assign the app to the team
-                                    if(!teamId.isEmpty()) {
-                                        apiTaskExecutor.assignAppToTeam(zdevAppId, teamId);
-                                    }
-                                    else {
-                                        console.printLine("Unable to assign this app to a team.  Unexpected response from the server.");
-                                        if(listTeamsResponse.body() != null) {
-                                            console.printLine("HTTP " + listTeamsResponse.code() + ": " + listTeamsResponse.body().string());
-                                        }
-                                    }
-                                }
-                                else {
-                                    console.printLine("Unable to assign this app to a team.  Please review team name setting and credentials, and retry.");
-                                    if(listTeamsResponse.body() != null) {
-                                        console.printLine("HTTP " + listTeamsResponse.code() + ": " + listTeamsResponse.body().string());
-                                    }
-                                }
-                            }
-                            catch(RuntimeException e) {
-                                console.printLine("Unexpected runtime exception: " + e.getLocalizedMessage());
-                                throw e;
-                            }
-                            catch(Exception e) {
-                                console.printLine("Error processing team list: " + e.getLocalizedMessage());
-                            }
+                    // Reject truncated or mistyped files before spending time on the upload
+                    long inspectionStart = System.currentTimeMillis();
+                    BinaryInfo binaryInfo = new BinaryInspector().inspect(binary);
+                    long inspectionTime = System.currentTimeMillis() - inspectionStart;
+                    eventLog.record("binary_inspected", "file", binary.getAbsolutePath(), "valid", binaryInfo.isValid(),
+                        "problem", binaryInfo.getProblem(), "warning", binaryInfo.getWarning(), "durationMs", inspectionTime);
+                    if(!binaryInfo.isValid()) {
+                        console.printLine("Preflight check failed for " + binary.getAbsolutePath() + ": " + binaryInfo.getProblem() + ". Skipping.");
+                        continue;
+                    }
+                    if(!binaryInfo.getWarning().isEmpty()) {
+                        console.printLine("Warning: preflight check could not inspect " + binary.getAbsolutePath() + ": " + binaryInfo.getWarning() + ". Uploading it anyway.");
+                    }
+                    else {
+                        console.printLine("Preflight check passed for " + binary.getAbsolutePath() + ": " + binaryInfo + " (" + inspectionTime + "ms)");
+                    }
+                    binaries.put(binary, binaryInfo);
+                }
+
+                boolean loggedIn = awaitLogin(login);
+                eventLog.record("login", "success", loggedIn, "endpoint", urlBuilder.getBaseUrl());
+                if(loggedIn) {
+                    // Longest expected binaries first, several at a time
+                    scanHistory = ScanHistory.open();
+                    UploadScheduler scheduler = new UploadScheduler(scanHistory, console);
+                    int successCount = scheduler.run(binaries, (binary, binaryInfo, deadline, binaryConsole) -> {
+                        TaskPlugin.metrics().scansInFlight.increment();
+                        apiTaskExecutor.setBinaryConsole(binaryConsole);
+                        try {
+                            return uploadAndScan(binary, binaryInfo, deadline, taskConfig, context, binaryConsole, cancellation);
                         }
-                        else {
-                            console.printLine("Application " + zdevAppId + " already belongs to team " + teamId);
+                        finally {
+                            apiTaskExecutor.setBinaryConsole(null);
+                            TaskPlugin.metrics().scansInFlight.decrement();
                         }
+                    });
 
-                        // upload may have taken a long time; refresh the access token
-                        apiTaskExecutor.refreshToken();
-
-                        String assessmentId = "";
-                        if(taskConfig.shouldWaitForReport()) {
-                            // wait for report
-                            synchronized(this) {
-                                long start = System.currentTimeMillis();
-                                long end = start + reportTimeout * 1000;
-                                while( System.currentTimeMillis() < end ) {
-                                    Response statusResponse = apiTaskExecutor.checkStatus(buildId);
-                                    if(statusResponse.isSuccessful()) {
-                                        try(ResponseBody statusBody = statusResponse.body()) {
-                                            // we're inside the try() block; exceptions will be caught
-                                            JsonObject statusObject = JsonParser.parseString(statusBody.string()).getAsJsonObject();
-                                            String scanStatus = statusObject.getAsJsonObject("zdevMetadata").get("analysis").getAsString();
-                                            console.printLine("Scan status = " + scanStatus);
-
-                                            if(scanStatus.equals("Done")) {
-                                                assessmentId = statusObject.get("id").getAsString();
-                                                // need to pause before continuing to make sure reports are available
-                                                console.printLine("Waiting for the report to become available...");
-                                                wait(checkInterval * 1000);
-                                                break;
-                                            }
-                                        }
-                                        catch(Exception e) {
-                                            console.printLine("Unexpected exception: " + e.getLocalizedMessage());
-                                            break;
-                                        }
-                                    }
-                                    else if (statusResponse.code() != 404) {
-                                        console.printLine("Unable to get assessment report. Please check credentials and try again.");
-                                        if(statusResponse.body() != null) {
-                                            console.printLine("HTTP " + statusResponse.code() + ": " + statusResponse.body().string());
-                                        }
-                                        // move on to the next one
-                                        break;
-                                    }
-                                    
-                                    wait(checkInterval * 1000);
-                                }
-                            }
+                    String message = "Successfully uploaded " + successCount + " binaries for analysis.";
+                    if(spooledCount.get() > 0) {
+                        message += " " + spooledCount.get() + " binaries were added to the outbox and will be uploaded when the server is reachable.";
+                    }
+                    console.printLine(message);
+                    result = new Result(true, message);
+                }
+                // Server unreachable; keep the binaries for later
+                else if(outbox != null && apiTaskExecutor.wasServerUnavailable()) {
+                    for(Map.Entry<File, BinaryInfo> binary : binaries.entrySet()) {
+                        spool(binary.getKey(), binary.getValue(), taskConfig, context, console);
+                    }
+                    result = (spooledCount.get() == binaries.size())
+                        ? new Result(true, "Zimperium server is unreachable. " + spooledCount.get() + " binaries were added to the outbox and will be uploaded when it is reachable.")
+                        : new Result(false, "Zimperium server is unreachable and not all binaries could be added to the outbox.");
+                }
+                // Login unsuccessful
+                else {
+                    result = new Result(false, "Error logging in to Zimperium server.");
+                }
+            }
+        }
+        catch (CancellationException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            cancellation.cancel("job thread was interrupted");
+            result = cancelledResult(cancellation, console);
+        }
+        catch (Exception e) {
+            console.printLine("Exception: " + e.getLocalizedMessage());
+            result = new Result(false, "Exception:" + e.getLocalizedMessage());
+        }
+        finally {
+            cancellation.close();
+        }
+
+        eventLog.record("job_finished", "success", result.responseCode() == DefaultGoApiResponse.SUCCESS_RESPONSE_CODE,
+            "message", result.toMap().get("message"), "durationMs", System.currentTimeMillis() - jobStart);
+        eventLog.close();
+
+        if (result.responseCode() != DefaultGoApiResponse.SUCCESS_RESPONSE_CODE) {
+            TaskPlugin.metrics().jobFailures.increment();
+        }
+
+        // return result to the agent
+        return new DefaultGoPluginApiResponse(result.responseCode(), TaskPlugin.gson().toJson(result.toMap()));
+    }
+
+    /**
+     * @return time to wait between status checks; when a cassette is replayed, scaled like the recorded latencies
+     */
+    private static long checkIntervalMillis(TaskConfig taskConfig) {
+        HttpTransport transport = taskConfig.getTransport();
+        return (transport instanceof ReplayTransport) ? ((ReplayTransport) transport).scale(checkInterval * 1000) : checkInterval * 1000;
+    }
+
+    /**
+     * Waits for the login started in the background.
+     *
+     * @return result of {@link APITaskExecutor#login(String, String)}
+     * @throws InterruptedException if the job thread is interrupted while waiting
+     */
+    private boolean awaitLogin(CompletableFuture<Boolean> login) throws InterruptedException {
+        try {
+            return login.get();
+        }
+        catch (ExecutionException e) {
+            // e.g., CancellationException if the job was cancelled during the login
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Uploads a single binary, assigns the application to a team if necessary, waits for the assessment to complete
+     * and downloads the report.  Called by the {@link UploadScheduler}, possibly for several binaries at the same time;
+     * waiting for the assessment ends at {@code deadline} at the latest.
+     *
+     * @return {@code true} if the report was downloaded
+     */
+    private boolean uploadAndScan(File binary, BinaryInfo binaryInfo, long deadline, TaskConfig taskConfig, Context context, JobConsoleLogger console, CancellationToken cancellation) throws Exception {
+        APITaskExecutor apiTaskExecutor = taskConfig.getAPITaskExecutor();
+        EventLog eventLog = taskConfig.getEventLog();
+
+        long uploadStart = System.currentTimeMillis();
+        eventLog.record("upload_started", "file", binary.getAbsolutePath());
+        ApiResponse uploadResponse = apiTaskExecutor.uploadBinary(binary, context, binaryInfo);
+        long uploadEnd = System.currentTimeMillis();
+        if((uploadResponse == null || !uploadResponse.isSuccessful()) && outbox != null && APITaskExecutor.isServerUnavailable(uploadResponse)) {
+            if(uploadResponse != null) {
+                uploadResponse.close();
+            }
+            spool(binary, binaryInfo, taskConfig, context, console);
+        }
+        else if(uploadResponse == null) {
+            eventLog.record("upload_failed", "file", binary.getAbsolutePath(), "durationMs", uploadEnd - uploadStart);
+            console.printLine("Error uploading " + binary.getAbsolutePath() + ". Skipping.");
+        }
+        else if(uploadResponse.isSuccessful()) {
+            if(!binary.isDirectory()) {
+                scanHistory.recordUpload(binary.length(), uploadEnd - uploadStart);
+            }
+
+            // Assign to a team if necessary
+            JsonObject jsonObject;
+            try (ApiResponse.Body uploadResponseBody = uploadResponse.body()) {
+                jsonObject = JsonParser.parseString(uploadResponseBody.string()).getAsJsonObject();
+            }
 
-                            // report may have taken a long time; refresh the access token
-                            apiTaskExecutor.refreshToken();
+            // Extract the appId needed for team assignment, buildId to check report status, and the current team 
+            String zdevAppId = (jsonObject.get("zdevAppId").isJsonNull()) ? "" : jsonObject.get("zdevAppId").getAsString();
+            String teamId = (jsonObject.get("teamId").isJsonNull()) ? "" : jsonObject.get("teamId").getAsString();
+            String buildId = (jsonObject.get("buildId").isJsonNull()) ? "" : jsonObject.get("buildId").getAsString();
 
-                            // Download report;
-                            console.printLine("Downloading report...");
+            eventLog.record("upload_completed", "file", binary.getAbsolutePath(), "buildId", buildId, "zdevAppId", zdevAppId,
+                "teamId", teamId, "durationMs", uploadEnd - uploadStart);
 
-                            CurlTaskExecutor executor = new CurlTaskExecutor();
-                            result = executor.downloadReport(taskConfig, context, assessmentId, console);
-                            if(result.responseCode() == DefaultGoApiResponse.SUCCESS_RESPONSE_CODE) {
-                                successCount++;
+            // the build exists on this endpoint only; stay on it for the rest of the run
+            taskConfig.getURLBuilder().pin();
+
+            // If teamID is empty, find the correct team id by name
+            if(teamId.isEmpty()) {
+                console.printLine("Application " + zdevAppId + " does not belong to a team. Assigning it to the " + taskConfig.getTeamName() + " team.");
+
+                // need to wait a bit; otherwise we can get 404
+                cancellation.sleep(checkIntervalMillis(taskConfig), "waiting before assigning application " + zdevAppId + " to a team");
+
+                apiTaskExecutor.assignAppToTeamByName(zdevAppId, taskConfig.getTeamName(), buildId);
+            }
+            else {
+                console.printLine("Application " + zdevAppId + " already belongs to team " + teamId);
+            }
+
+            // upload may have taken a long time; refresh the access token
+            apiTaskExecutor.refreshToken();
+
+            String assessmentId = "";
+            if(taskConfig.shouldWaitForReport()) {
+                // wait for report
+                long start = System.currentTimeMillis();
+                long end = Math.min(start + reportTimeout * 1000, deadline);
+                // only the scan status and the validators of the last poll are kept
+                StatusSnapshot snapshot = new StatusSnapshot(buildId);
+                String lastStatus = null;
+                while( System.currentTimeMillis() < end ) {
+                    ApiResponse statusResponse = apiTaskExecutor.checkStatus(buildId, snapshot);
+                    if(statusResponse == null) {
+                        // the problem has been printed already; try again after the interval
+                    }
+                    else if(statusResponse.isSuccessful() || statusResponse.code() == 304) {
+                        try {
+                            // a 304 response has no body; the status is the same as in the last poll
+                            boolean changed = snapshot.update(statusResponse);
+                            String scanStatus = snapshot.getAnalysis();
+                            console.printLine("Scan status = " + scanStatus + (changed ? "" : " (not modified)"));
+                            if(!scanStatus.equals(lastStatus)) {
+                                eventLog.record("scan_status", "buildId", buildId, "status", scanStatus, "elapsedMs", System.currentTimeMillis() - uploadEnd);
+                                lastStatus = scanStatus;
                             }
+
+                            if(scanStatus.equals("Done")) {
+                                assessmentId = (snapshot.getAssessmentId() != null) ? snapshot.getAssessmentId() : "";
+                                scanHistory.recordScan(ScanHistory.applicationKey(binary, binaryInfo), System.currentTimeMillis() - uploadEnd);
+                                // need to pause before continuing to make sure reports are available
+                                console.printLine("Waiting for the report to become available...");
+                                cancellation.sleep(checkIntervalMillis(taskConfig), "waiting for report of build " + buildId + " to become available");
+                                break;
+                            }
+                        }
+                        catch(CancellationException | InterruptedException e) {
+                            throw e;
                         }
+                        catch(Exception e) {
+                            console.printLine("Unexpected exception: " + e.getLocalizedMessage());
+                            break;
+                        }
+                    }
+                    else if (statusResponse.code() != 404) {
+                        console.printLine("Unable to get assessment report. Please check credentials and try again.");
+                        console.printLine("HTTP " + statusResponse.code() + ": " + statusResponse.body().errorString());
+                        // move on to the next one
+                        break;
                     }
                     else {
-                        console.printLine("Error uploading " + binary.getAbsolutePath() + ": ");
-                        console.printLine("HTTP" + uploadResponse.code() + ": " + uploadResponse.body().string());
+                        // the assessment does not exist yet
+                        statusResponse.close();
                     }
-                }   
 
-                console.printLine("Successfully uploaded " + successCount + " binaries for analysis.");
-                result = new Result(true, "Successfully uploaded " + successCount + " binaries for analysis.");
-            }
-            // Login unsuccessful
-            else {
-                result = new Result(false, "Error logging in to Zimperium server.");
+                    cancellation.sleep(checkIntervalMillis(taskConfig), "waiting for assessment of build " + buildId + " to complete");
+                }
+                console.printLine("Status polling: " + snapshot);
+                eventLog.record("status_polling", "buildId", buildId, "polls", snapshot.getPolls(),
+                    "notModified", snapshot.getNotModified(), "bytes", snapshot.getBytes());
+
+                // only completed assessments have a report
+                if(assessmentId.isEmpty()) {
+                    console.printLine("Assessment of build " + buildId + " did not complete"
+                        + ((lastStatus != null) ? " (last status: " + lastStatus + ")" : "") + ". No report downloaded.");
+                    return false;
+                }
+
+                // report may have taken a long time; refresh the access token
+                apiTaskExecutor.refreshToken();
+
+                // Download report;
+                console.printLine("Downloading report...");
+
+                CurlTaskExecutor executor = new CurlTaskExecutor();
+                Result result = executor.downloadReport(taskConfig, context, buildId, assessmentId, zdevAppId, console, cancellation);
+                cancellation.throwIfCancelled();
+                return result.responseCode() == DefaultGoApiResponse.SUCCESS_RESPONSE_CODE;
             }
         }
-        catch (Exception e) {
-            console.printLine("Exception: " + e.getLocalizedMessage());
-            result = new Result(false, "Exception:" + e.getLocalizedMessage());
+        else {
+            eventLog.record("upload_failed", "file", binary.getAbsolutePath(), "httpCode", uploadResponse.code(),
+                "durationMs", uploadEnd - uploadStart);
+            console.printLine("Error uploading " + binary.getAbsolutePath() + ": ");
+            console.printLine("HTTP" + uploadResponse.code() + ": " + uploadResponse.body().errorString());
         }
-        
-        // return result to the agent
-        return new DefaultGoPluginApiResponse(result.responseCode(), TaskPlugin.GSON.toJson(result.toMap()));
+        return false;
+    }
+
+    /**
+     * Adds a binary that could not be uploaded because the server is unreachable to the outbox.
+     *
+     * @return {@code true} if the binary was added
+     */
+    private boolean spool(File binary, BinaryInfo binaryInfo, TaskConfig taskConfig, Context context, JobConsoleLogger console) {
+        try {
+            Outbox.Entry entry = outbox.spool(binary, binaryInfo, taskConfig, context);
+            console.printLine("Zimperium server is unreachable. " + binary.getAbsolutePath() + " was added to the outbox (" + entry.getDirectory() + ").");
+            spooledCount.incrementAndGet();
+            taskConfig.getEventLog().record("spooled", "file", binary.getAbsolutePath(), "outboxEntry", entry.getDirectory().toString());
+            return true;
+        }
+        catch(IOException e) {
+            console.printLine("Unable to add " + binary.getAbsolutePath() + " to the outbox: " + e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Builds the result of a cancelled job and lists the operations that were cut short.
+     */
+    private Result cancelledResult(CancellationToken cancellation, JobConsoleLogger console) {
+        String message = "Task cancelled (" + cancellation.getReason() + ").";
+        if (!cancellation.getInterrupted().isEmpty()) {
+            message += " In progress: " + String.join(", ", cancellation.getInterrupted()) + ".";
+        }
+        console.printLine(message);
+        return new Result(false, message);
     }
 }
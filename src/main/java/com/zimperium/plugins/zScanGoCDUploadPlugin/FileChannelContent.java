@@ -0,0 +1,105 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * FileChannelContent is the content of a file upload.  Written to a channel (see
+ * {@link RequestContent#writeTo(WritableByteChannel)}), it reads the file through a {@link FileChannel}: files of at
+ * least {@link #mapThreshold} bytes are memory-mapped in regions of {@link #mapRegionSize} bytes and handed to the
+ * channel as they are, smaller files are read into direct buffers that are pooled and reused across uploads.  Either
+ * way, no read buffer is allocated on the heap for an upload and the file is not copied into one; the HTTP client still
+ * copies the bytes into its own buffers (for OkHttp, okio's segments, which are byte arrays on the heap).  See
+ * {@code UploadBenchmark} for the allocation and CPU time of both paths.
+ *
+ * <p>Memory mapping can be turned off with the {@code zscan.upload.mmap} system property or the
+ * {@code ZSCAN_UPLOAD_MMAP} environment variable set to {@code false}, e.g. for files on network file systems.
+ * Written to a stream, the file is read with a heap buffer as before.</p>
+ */
+public class FileChannelContent implements RequestContent {
+    public static final String MMAP_PROPERTY = "zscan.upload.mmap";
+    public static final String MMAP_ENV = "ZSCAN_UPLOAD_MMAP";
+
+    public final static long mapThreshold = 4 * 1024 * 1024;
+    public final static long mapRegionSize = 64 * 1024 * 1024;
+    public final static int maxPooledBuffers = 16;
+
+    private static final boolean MMAP = !"false".equalsIgnoreCase(System.getProperty(MMAP_PROPERTY, System.getenv(MMAP_ENV)));
+    private static final BlockingQueue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(maxPooledBuffers);
+
+    private final File file;
+    private final String contentType;
+
+    public FileChannelContent(File file, String contentType) {
+        this.file = file;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public String contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return file.length();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (MMAP && size >= mapThreshold) {
+                for (long position = 0; position < size; position += mapRegionSize) {
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(mapRegionSize, size - position));
+                    RequestContent.writeFully(out, region);
+                }
+            }
+            else {
+                ByteBuffer buffer = acquireBuffer();
+                try {
+                    while (channel.read(buffer) != -1) {
+                        buffer.flip();
+                        RequestContent.writeFully(out, buffer);
+                        buffer.clear();
+                    }
+                }
+                finally {
+                    releaseBuffer(buffer);
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = BUFFERS.poll();
+        return (buffer != null) ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        // a full pool drops the buffer; its memory is freed when it is garbage collected
+        BUFFERS.offer(buffer);
+    }
+}
@@ -0,0 +1,84 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Finding is a single entry of a JSON assessment report with the fields the plugin cares about normalized.
+ * Report versions name some fields differently; every normalized field is taken from the first of its
+ * candidate names that is present.  The original JSON object stays available through {@link #getRaw()}.
+ */
+public class Finding {
+    private static final String[] ID_FIELDS = { "id", "findingId", "uuid" };
+    private static final String[] RULE_FIELDS = { "ruleId", "checkId", "kind", "testId", "id" };
+    private static final String[] TITLE_FIELDS = { "title", "name", "shortDescription" };
+    private static final String[] SEVERITY_FIELDS = { "severity", "riskType", "risk", "level" };
+    private static final String[] DESCRIPTION_FIELDS = { "description", "details", "longDescription" };
+    private static final String[] CATEGORY_FIELDS = { "category", "categoryName", "type" };
+    private static final String[] LOCATION_FIELDS = { "location", "file", "path", "component" };
+
+    private final JsonObject raw;
+    private final String id;
+    private final String ruleId;
+    private final String title;
+    private final String severity;
+    private final String description;
+    private final String category;
+    private final String location;
+
+    public Finding(JsonObject raw) {
+        this.raw = raw;
+        id = getString(raw, ID_FIELDS);
+        ruleId = getString(raw, RULE_FIELDS);
+        title = getString(raw, TITLE_FIELDS);
+        severity = getString(raw, SEVERITY_FIELDS).toLowerCase();
+        description = getString(raw, DESCRIPTION_FIELDS);
+        category = getString(raw, CATEGORY_FIELDS);
+        location = getString(raw, LOCATION_FIELDS);
+    }
+
+    private static String getString(JsonObject object, String[] names) {
+        for (String name : names) {
+            JsonElement value = object.get(name);
+            if (value != null && value.isJsonPrimitive()) {
+                return value.getAsString();
+            }
+        }
+        return "";
+    }
+
+    public JsonObject getRaw() {
+        return raw;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRuleId() {
+        return ruleId.isEmpty() ? title : ruleId;
+    }
+
+    public String getTitle() {
+        return title.isEmpty() ? getRuleId() : title;
+    }
+
+    /**
+     * @return lower-case severity as reported (e.g., "critical", "high", "medium", "low", "info"), or an empty string
+     */
+    public String getSeverity() {
+        return severity;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+}
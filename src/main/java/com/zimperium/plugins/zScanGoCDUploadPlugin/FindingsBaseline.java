@@ -0,0 +1,393 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * FindingsBaseline compares the findings of a JSON assessment report with the previous report of the same application
+ * and branch, and writes what changed (new, fixed and unchanged findings) to a small delta file.
+ *
+ * <p>For every application and branch, a fingerprint index of the last report is kept in the baseline directory
+ * ({@code zscan.baseline.dir} system property, {@code ZSCAN_BASELINE_DIR} environment variable, or
+ * {@code ~/.zscan/baselines}).  A fingerprint identifies a finding by its rule and location, so it does not change
+ * between assessments; the index holds one line per fingerprint, sorted, with just enough detail (severity, rule,
+ * title, location) to describe fixed findings.</p>
+ *
+ * <p>The new report is streamed with {@link FindingsReader}; its fingerprints are sorted in chunks of at most
+ * {@link #chunkSize} lines that are spilled to disk and merged, so memory use does not grow with the size of the
+ * report.  The sorted index is then merge-joined with the previous one in a single linear pass that writes the delta
+ * file as it goes.  Finally the new index replaces the previous one atomically; the index it replaces is kept, so a
+ * re-run for the same assessment is compared with the same baseline again (and does not become its own baseline).
+ * Reports without a findings array leave the baseline alone.</p>
+ *
+ * <p>The first report of an application and branch has nothing to compare with: its delta file has a
+ * {@code null} {@code baselineAssessmentId} and lists every finding as a {@code new} change, so the changes always
+ * add up to the summary.</p>
+ *
+ * <p>Several agent processes may share the baseline directory.  Reading, comparing and replacing an index holds an
+ * exclusive lock on {@value #LOCK} in the baseline directory.</p>
+ */
+public class FindingsBaseline {
+    public static final String DIRECTORY_PROPERTY = "zscan.baseline.dir";
+    public static final String DIRECTORY_ENV = "ZSCAN_BASELINE_DIR";
+    public final static int chunkSize = 50_000;
+
+    static final String LOCK = ".lock";
+    private static final String HEADER = "#zscan-baseline 1 ";
+    private static final String INDEX_EXTENSION = ".idx";
+    private static final String PREVIOUS_EXTENSION = ".prev";
+    private static final int FINGERPRINT_LENGTH = 32;
+    private static final int MAX_FIELD_LENGTH = 200;
+
+    private final Path directory;
+
+    public FindingsBaseline(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the baseline store in the configured directory
+     */
+    public static FindingsBaseline open() {
+        String configured = System.getProperty(DIRECTORY_PROPERTY, System.getenv(DIRECTORY_ENV));
+        if (configured == null || configured.trim().isEmpty()) {
+            return new FindingsBaseline(Paths.get(System.getProperty("user.home"), ".zscan", "baselines"));
+        }
+        return new FindingsBaseline(Paths.get(configured.trim()));
+    }
+
+    /**
+     * Compares a report with the baseline of the application and branch, writes the delta file and makes the report
+     * the new baseline.
+     *
+     * @param jsonReport   the downloaded JSON report
+     * @param zdevAppId    ID of the application the report belongs to
+     * @param branch       branch the binary was built from; may be empty
+     * @param assessmentId ID of the assessment of the report
+     * @param deltaFile    where to write the delta
+     * @return summary of the delta
+     * @throws IOException if the report cannot be read or has no findings array, or the index or delta file cannot
+     *                     be written
+     */
+    public Delta compare(Path jsonReport, String zdevAppId, String branch, String assessmentId, Path deltaFile) throws IOException {
+        Path index = indexPath(zdevAppId, branch);
+        Path previousIndex = index.resolveSibling(index.getFileName() + PREVIOUS_EXTENSION);
+        Files.createDirectories(index.getParent());
+
+        Path newIndex = Files.createTempFile(index.getParent(), "." + index.getFileName(), ".tmp");
+        try {
+            if (!buildIndex(jsonReport, assessmentId, newIndex)) {
+                throw new IOException("the report has no findings array; the baseline was left unchanged");
+            }
+
+            try (SharedFileLock lock = SharedFileLock.acquire(directory.resolve(LOCK))) {
+                if (!assessmentId.isEmpty() && assessmentId.equals(assessmentIdOf(index))) {
+                    // the same assessment again (e.g., a re-run): compare with what the first run compared with
+                    return writeDelta(Files.exists(previousIndex) ? previousIndex : null, newIndex, zdevAppId, branch, assessmentId, deltaFile);
+                }
+
+                Delta delta = writeDelta(Files.exists(index) ? index : null, newIndex, zdevAppId, branch, assessmentId, deltaFile);
+                if (Files.exists(index)) {
+                    Files.move(index, previousIndex, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                else {
+                    Files.deleteIfExists(previousIndex);
+                }
+                Files.move(newIndex, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return delta;
+            }
+        }
+        finally {
+            Files.deleteIfExists(newIndex);
+        }
+    }
+
+    /**
+     * @return assessment ID in the header of the index, or {@code null} if there is no index
+     */
+    private static String assessmentIdOf(Path index) throws IOException {
+        if (!Files.exists(index)) {
+            return null;
+        }
+        try (BufferedReader in = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            return (header != null && header.startsWith(HEADER)) ? header.substring(HEADER.length()) : null;
+        }
+    }
+
+    Path indexPath(String zdevAppId, String branch) {
+        String branchName = (branch == null || branch.isEmpty()) ? "default" : branch;
+        return directory.resolve(safeName(zdevAppId))
+            .resolve(safeName(branchName) + "-" + Digests.sha256Hex(branchName).substring(0, 8) + INDEX_EXTENSION);
+    }
+
+    /**
+     * Writes the sorted, de-duplicated index lines of the report to {@code target}.
+     *
+     * @return {@code false} if the report has no findings array
+     */
+    private boolean buildIndex(Path jsonReport, String assessmentId, Path target) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        try {
+            try (Reader in = Files.newBufferedReader(jsonReport, StandardCharsets.UTF_8);
+                 FindingsReader findings = new FindingsReader(in)) {
+                Finding finding;
+                while ((finding = findings.next()) != null) {
+                    chunk.add(indexLine(finding));
+                    if (chunk.size() >= chunkSize) {
+                        runs.add(spill(chunk, target.getParent()));
+                        chunk.clear();
+                    }
+                }
+                if (!findings.hasFindingsArray()) {
+                    return false;
+                }
+            }
+
+            try (BufferedWriter out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                out.write(HEADER + assessmentId);
+                out.newLine();
+                if (runs.isEmpty()) {
+                    Collections.sort(chunk);
+                    writeUnique(chunk, out);
+                }
+                else {
+                    if (!chunk.isEmpty()) {
+                        runs.add(spill(chunk, target.getParent()));
+                        chunk.clear();
+                    }
+                    merge(runs, out);
+                }
+            }
+            return true;
+        }
+        finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private static Path spill(List<String> chunk, Path directory) throws IOException {
+        Collections.sort(chunk);
+        Path run = Files.createTempFile(directory, ".run", ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            writeUnique(chunk, out);
+        }
+        return run;
+    }
+
+    private static void writeUnique(List<String> sortedLines, BufferedWriter out) throws IOException {
+        String previous = null;
+        for (String line : sortedLines) {
+            if (previous == null || !fingerprint(line).equals(fingerprint(previous))) {
+                out.write(line);
+                out.newLine();
+            }
+            previous = line;
+        }
+    }
+
+    // k-way merge of sorted runs; holds one line per run in memory
+    private static void merge(List<Path> runs, BufferedWriter out) throws IOException {
+        List<BufferedReader> readers = new ArrayList<>();
+        try {
+            PriorityQueue<Cursor> queue = new PriorityQueue<>();
+            for (Path run : runs) {
+                BufferedReader reader = Files.newBufferedReader(run, StandardCharsets.UTF_8);
+                readers.add(reader);
+                String line = reader.readLine();
+                if (line != null) {
+                    queue.add(new Cursor(line, reader));
+                }
+            }
+
+            String previous = null;
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                if (previous == null || !fingerprint(cursor.line).equals(fingerprint(previous))) {
+                    out.write(cursor.line);
+                    out.newLine();
+                    previous = cursor.line;
+                }
+                String next = cursor.reader.readLine();
+                if (next != null) {
+                    queue.add(new Cursor(next, cursor.reader));
+                }
+            }
+        }
+        finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Merge-joins the previous and the new index and writes the delta file.
+     */
+    private Delta writeDelta(Path previousIndex, Path newIndex, String zdevAppId, String branch, String assessmentId, Path deltaFile) throws IOException {
+        Delta delta = new Delta();
+        try (BufferedReader current = Files.newBufferedReader(newIndex, StandardCharsets.UTF_8);
+             BufferedReader previous = (previousIndex != null) ? Files.newBufferedReader(previousIndex, StandardCharsets.UTF_8) : null;
+             Writer out = Files.newBufferedWriter(deltaFile, StandardCharsets.UTF_8)) {
+            current.readLine();
+            String header = (previous != null) ? previous.readLine() : null;
+            delta.baselineAssessmentId = (header != null && header.startsWith(HEADER)) ? header.substring(HEADER.length()) : "";
+
+            JsonWriter writer = new JsonWriter(out);
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("zdevAppId").value(zdevAppId);
+            writer.name("branch").value(branch);
+            writer.name("assessmentId").value(assessmentId);
+            if (previous == null) {
+                // first report of this application and branch; nothing to compare with, so every finding is new
+                writer.name("baselineAssessmentId").nullValue();
+                writer.name("changes").beginArray();
+                String after;
+                while ((after = current.readLine()) != null) {
+                    writeChange(writer, "new", after);
+                    delta.added++;
+                }
+            }
+            else {
+                writer.name("baselineAssessmentId").value(delta.baselineAssessmentId);
+                writer.name("changes").beginArray();
+                String before = previous.readLine();
+                String after = current.readLine();
+                while (before != null || after != null) {
+                    int order = (before == null) ? 1 : (after == null) ? -1 : fingerprint(before).compareTo(fingerprint(after));
+                    if (order == 0) {
+                        delta.unchanged++;
+                        before = previous.readLine();
+                        after = current.readLine();
+                    }
+                    else if (order < 0) {
+                        writeChange(writer, "fixed", before);
+                        delta.fixed++;
+                        before = previous.readLine();
+                    }
+                    else {
+                        writeChange(writer, "new", after);
+                        delta.added++;
+                        after = current.readLine();
+                    }
+                }
+            }
+            writer.endArray();
+
+            writer.name("summary").beginObject();
+            writer.name("new").value(delta.added);
+            writer.name("fixed").value(delta.fixed);
+            writer.name("unchanged").value(delta.unchanged);
+            writer.endObject();
+            writer.endObject();
+            writer.flush();
+        }
+        return delta;
+    }
+
+    private static void writeChange(JsonWriter writer, String status, String indexLine) throws IOException {
+        String[] fields = indexLine.split("\t", -1);
+        writer.beginObject();
+        writer.name("status").value(status);
+        writer.name("fingerprint").value(fields[0]);
+        writer.name("severity").value(field(fields, 1));
+        writer.name("ruleId").value(field(fields, 2));
+        writer.name("title").value(field(fields, 3));
+        writer.name("location").value(field(fields, 4));
+        writer.endObject();
+    }
+
+    private static String field(String[] fields, int index) {
+        return (index < fields.length) ? fields[index] : "";
+    }
+
+    /**
+     * @return index line of a finding: fingerprint, severity, rule ID, title and location, separated by tabs
+     */
+    static String indexLine(Finding finding) {
+        String fingerprint = Digests.sha256Hex(finding.getRuleId() + "\u0000" + finding.getLocation()).substring(0, FINGERPRINT_LENGTH);
+        return fingerprint + "\t" + clean(finding.getSeverity()) + "\t" + clean(finding.getRuleId()) + "\t"
+            + clean(finding.getTitle()) + "\t" + clean(finding.getLocation());
+    }
+
+    private static String fingerprint(String indexLine) {
+        return indexLine.substring(0, FINGERPRINT_LENGTH);
+    }
+
+    private static String clean(String value) {
+        String cleaned = value.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+        return (cleaned.length() > MAX_FIELD_LENGTH) ? cleaned.substring(0, MAX_FIELD_LENGTH) : cleaned;
+    }
+
+    private static String safeName(String value) {
+        String safe = value.replaceAll("[^A-Za-z0-9._-]", "_");
+        return safe.isEmpty() ? "_" : safe;
+    }
+
+    private static final class Cursor implements Comparable<Cursor> {
+        final String line;
+        final BufferedReader reader;
+
+        Cursor(String line, BufferedReader reader) {
+            this.line = line;
+            this.reader = reader;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return line.compareTo(other.line);
+        }
+    }
+
+    /**
+     * Summary of the differences between a report and its baseline.
+     */
+    public static class Delta {
+        private long added;
+        private long fixed;
+        private long unchanged;
+        private String baselineAssessmentId = "";
+
+        public long getNew() {
+            return added;
+        }
+
+        public long getFixed() {
+            return fixed;
+        }
+
+        public long getUnchanged() {
+            return unchanged;
+        }
+
+        /**
+         * @return assessment ID of the baseline report, or an empty string if there was no baseline
+         */
+        public String getBaselineAssessmentId() {
+            return baselineAssessmentId;
+        }
+
+        @Override
+        public String toString() {
+            return added + " new, " + fixed + " fixed, " + unchanged + " unchanged";
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * FindingsReader streams the findings of a JSON assessment report one at a time.
+ *
+ * <p>The reader walks the document until it reaches the first array stored under one of the
+ * {@link #FINDINGS_ARRAYS} names (or the document itself if it is an array) and then parses one element at a time.
+ * Only the current finding is held in memory, so arbitrarily large reports can be processed in constant memory.
+ * Everything outside the findings array is skipped without being materialized.</p>
+ */
+public class FindingsReader implements Closeable {
+    public static final List<String> FINDINGS_ARRAYS = Arrays.asList("findings", "scanDetails", "issues", "vulnerabilities");
+
+    private final JsonReader reader;
+    private boolean started;
+    private boolean finished;
+    private boolean hasFindings;
+
+    public FindingsReader(Reader in) {
+        reader = new JsonReader(in);
+    }
+
+    /**
+     * @return the next finding, or {@code null} once all findings have been read
+     * @throws IOException if the report cannot be read or is not valid JSON
+     */
+    public Finding next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            hasFindings = seekFindings();
+            if (!hasFindings) {
+                finished = true;
+                return null;
+            }
+        }
+
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            JsonElement element = JsonParser.parseReader(reader);
+            return new Finding(element.getAsJsonObject());
+        }
+
+        reader.endArray();
+        finished = true;
+        return null;
+    }
+
+    /**
+     * @return {@code true} if the document has a findings array (which may be empty); known once {@link #next()}
+     *         has been called
+     */
+    public boolean hasFindingsArray() {
+        return hasFindings;
+    }
+
+    /**
+     * Positions the reader inside the findings array.
+     *
+     * @return {@code false} if the document has no findings array
+     */
+    private boolean seekFindings() throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            return true;
+        }
+        return token == JsonToken.BEGIN_OBJECT && seekInObject();
+    }
+
+    private boolean seekInObject() throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_ARRAY && FINDINGS_ARRAYS.contains(name)) {
+                reader.beginArray();
+                return true;
+            }
+            else if (token == JsonToken.BEGIN_OBJECT) {
+                if (seekInObject()) {
+                    return true;
+                }
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
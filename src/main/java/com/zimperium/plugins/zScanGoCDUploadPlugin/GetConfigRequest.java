@@ -23,7 +23,18 @@ import java.util.HashMap;
 
 public class GetConfigRequest {
 
+    /**
+     * The configuration never changes, so its JSON is built once, on the first request.
+     */
+    private static final class ConfigJson {
+        static final String VALUE = buildConfigJson();
+    }
+
     public GoPluginApiResponse execute() {
+        return DefaultGoPluginApiResponse.success(ConfigJson.VALUE);
+    }
+
+    private static String buildConfigJson() {
         HashMap<String, Object> config = new HashMap<>();
 
         HashMap<String, Object> url = new HashMap<>();
@@ -68,6 +79,41 @@ public class GetConfigRequest {
         reportFormat.put("required", true);
         config.put(TaskPlugin.REPORT_FORMAT_PROPERTY, reportFormat);
 
-        return DefaultGoPluginApiResponse.success(TaskPlugin.GSON.toJson(config));
+        HashMap<String, Object> httpClient = new HashMap<>();
+        httpClient.put("default-value", TaskPlugin.DEFAULT_HTTP_CLIENT);
+        httpClient.put("display-order", "6");
+        httpClient.put("display-name", "HttpClient");
+        httpClient.put("required", false);
+        config.put(TaskPlugin.HTTP_CLIENT_PROPERTY, httpClient);
+
+        HashMap<String, Object> outbox = new HashMap<>();
+        outbox.put("default-value", TaskPlugin.OUTBOX_DISABLED);
+        outbox.put("display-order", "7");
+        outbox.put("display-name", "Outbox");
+        outbox.put("required", false);
+        config.put(TaskPlugin.OUTBOX_PROPERTY, outbox);
+
+        HashMap<String, Object> preflight = new HashMap<>();
+        preflight.put("default-value", TaskPlugin.PREFLIGHT_DISABLED);
+        preflight.put("display-order", "8");
+        preflight.put("display-name", "Preflight");
+        preflight.put("required", false);
+        config.put(TaskPlugin.PREFLIGHT_PROPERTY, preflight);
+
+        HashMap<String, Object> findingsExport = new HashMap<>();
+        findingsExport.put("default-value", TaskPlugin.EXPORT_DISABLED);
+        findingsExport.put("display-order", "9");
+        findingsExport.put("display-name", "FindingsExport");
+        findingsExport.put("required", false);
+        config.put(TaskPlugin.EXPORT_PROPERTY, findingsExport);
+
+        HashMap<String, Object> eventLog = new HashMap<>();
+        eventLog.put("default-value", TaskPlugin.EVENT_LOG_DISABLED);
+        eventLog.put("display-order", "10");
+        eventLog.put("display-name", "EventLog");
+        eventLog.put("required", false);
+        config.put(TaskPlugin.EVENT_LOG_PROPERTY, eventLog);
+
+        return TaskPlugin.gson().toJson(config);
     }
 }
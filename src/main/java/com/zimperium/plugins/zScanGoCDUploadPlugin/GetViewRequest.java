@@ -23,7 +23,15 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import java.util.HashMap;
 
 public class GetViewRequest {
+    // JSON of the view; kept once the template has been read successfully
+    private static volatile String viewJson;
+
     public GoPluginApiResponse execute() {
+        String cachedViewJson = viewJson;
+        if (cachedViewJson != null) {
+            return new DefaultGoPluginApiResponse(DefaultGoApiResponse.SUCCESS_RESPONSE_CODE, cachedViewJson);
+        }
+
         int responseCode = DefaultGoApiResponse.SUCCESS_RESPONSE_CODE;
         HashMap<String, String> view = new HashMap<>();
         view.put("displayValue", "Curl");
@@ -35,6 +43,10 @@ public class GetViewRequest {
             view.put("exception", errorMessage);
             TaskPlugin.LOGGER.error(errorMessage, e);
         }
-        return new DefaultGoPluginApiResponse(responseCode, TaskPlugin.GSON.toJson(view));
+        String json = TaskPlugin.gson().toJson(view);
+        if (responseCode == DefaultGoApiResponse.SUCCESS_RESPONSE_CODE) {
+            viewJson = json;
+        }
+        return new DefaultGoPluginApiResponse(responseCode, json);
     }
 }
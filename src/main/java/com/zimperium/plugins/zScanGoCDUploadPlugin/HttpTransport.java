@@ -0,0 +1,55 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.IOException;
+
+/**
+ * HttpTransport sends {@link ApiRequest}s to the Zimperium server.  {@link APITaskExecutor} talks to the server only
+ * through this interface, so the HTTP client can be chosen per task (the {@code HttpClient} task setting):
+ * <ul>
+ *   <li>{@code okhttp} (default) &mdash; {@link OkHttpTransport}</li>
+ *   <li>{@code jdk} &mdash; {@link JdkHttpTransport}, based on {@code java.net.http.HttpClient}</li>
+ * </ul>
+ *
+ * <p>Implementations share one client (and connection pool) between all jobs on the agent and must be safe to use
+ * from several threads.</p>
+ */
+public interface HttpTransport {
+    String OKHTTP = "okhttp";
+    String JDK = "jdk";
+
+    /**
+     * Sends the request and waits for the response headers.  The call is registered with {@code cancellation} while
+     * it is in progress, so cancelling the token aborts it.
+     *
+     * @param request      the request to send
+     * @param cancellation token of the job sending the request
+     * @param description  what the call does; reported if the job is cancelled while it is in progress
+     * @return the response; the caller must close it
+     * @throws IOException if the request could not be sent or no response was received
+     */
+    ApiResponse execute(ApiRequest request, CancellationToken cancellation, String description) throws IOException;
+
+    /**
+     * @return name of the transport as used in the task configuration
+     */
+    String name();
+
+    /**
+     * Returns the transport with the given name.
+     *
+     * @param name value of the {@code HttpClient} task setting; empty selects the default
+     * @throws IllegalArgumentException if there is no transport with that name
+     */
+    static HttpTransport forName(String name) {
+        String key = (name == null) ? "" : name.trim().toLowerCase();
+        switch (key) {
+            case "":
+            case OKHTTP:
+                return OkHttpTransport.INSTANCE;
+            case JDK:
+                return JdkHttpTransport.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown HTTP client '" + name + "'. Supported values are '" + OKHTTP + "' and '" + JDK + "'.");
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JdkHttpTransport sends requests with {@code java.net.http.HttpClient}, which negotiates HTTP/2 where the server
+ * supports it and needs no third-party libraries.
+ *
+ * <p>The JDK client subscribes to request bodies as a {@link Flow.Publisher}, while {@link RequestContent} pushes
+ * bytes into a channel; bodies are therefore written on a {@link PluginThreads} thread that hands each buffer to the
+ * client only when the client has asked for more, so they are still streamed and never held in memory.  A failure
+ * on the writing side is reported to the client instead of ending the body early, so a partial upload is never
+ * mistaken for a complete one.</p>
+ *
+ * <p>Requests without a body or with a small body must receive response headers within {@link #responseTimeout}
+ * seconds.  The JDK counts the time spent sending the body against the same timeout, so large and streamed bodies
+ * (uploads) are sent without a limit, but must then receive response headers within {@link #responseTimeout}
+ * seconds of their last byte.</p>
+ */
+public class JdkHttpTransport implements HttpTransport {
+    public static final JdkHttpTransport INSTANCE = new JdkHttpTransport();
+
+    public final static long connectTimeout = 10;
+    public final static long responseTimeout = 30;
+
+    private static final long SMALL_BODY = 1024 * 1024;
+
+    private static final Executor BODY_WRITERS = PluginThreads.perTask("zscan-request-body");
+
+    /**
+     * Created by the first request; see {@link OkHttpTransport}.
+     */
+    private static final class SharedClient {
+        static final HttpClient INSTANCE = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(connectTimeout))
+            .build();
+    }
+
+    private JdkHttpTransport() {
+    }
+
+    @Override
+    public String name() {
+        return JDK;
+    }
+
+    @Override
+    public ApiResponse execute(ApiRequest request, CancellationToken cancellation, String description) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.url()));
+        for (Map.Entry<String, String> header : request.headers().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+
+        RequestContent content = request.content();
+        ContentPublisher publisher = null;
+        if (content == null) {
+            builder.method(request.method(), HttpRequest.BodyPublishers.noBody());
+            builder.timeout(Duration.ofSeconds(responseTimeout));
+        }
+        else {
+            long length = content.contentLength();
+            if (content.contentType() != null) {
+                builder.header("Content-Type", content.contentType());
+            }
+            publisher = new ContentPublisher(content);
+            builder.method(request.method(), (length >= 0)
+                ? HttpRequest.BodyPublishers.fromPublisher(publisher, length) : HttpRequest.BodyPublishers.fromPublisher(publisher));
+            if (length >= 0 && length <= SMALL_BODY) {
+                builder.timeout(Duration.ofSeconds(responseTimeout));
+            }
+        }
+
+        CompletableFuture<HttpResponse<InputStream>> future =
+            SharedClient.INSTANCE.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        cancellation.register(future, () -> future.cancel(true), description);
+        boolean received = false;
+        try {
+            HttpResponse<InputStream> response = (publisher != null) ? awaitResponse(future, publisher) : future.get();
+            InputStream stream = response.body();
+            // cancelling the completed future would not stop reading the body, so until the response is closed,
+            // cancelling the token closes the body instead
+            cancellation.register(future, () -> closeQuietly(stream), description);
+            received = true;
+            return new ApiResponse(response.statusCode(), response.headers().map(), stream, () -> cancellation.unregister(future));
+        }
+        catch (InterruptedException e) {
+            future.cancel(true);
+            throw new InterruptedIOException("Interrupted while " + description);
+        }
+        catch (CancellationException e) {
+            throw new IOException("Canceled");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // the client wraps errors reading the request body; report the original one
+            for (Throwable t = cause; t != null; t = t.getCause()) {
+                if (t instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) t).getCause();
+                }
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+        finally {
+            if (!received) {
+                cancellation.unregister(future);
+            }
+            if (publisher != null) {
+                // stops writers whose body was not (completely) sent, e.g. after an error response
+                publisher.cancel();
+            }
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        }
+        catch (IOException e) {
+            // the reader fails with the next read either way
+        }
+    }
+
+    /**
+     * Waits for the response to a request with a body: without a limit while the body is being sent, and for at
+     * most {@link #responseTimeout} seconds after its last byte.
+     *
+     * @throws HttpTimeoutException if the server does not respond in time
+     */
+    private static HttpResponse<InputStream> awaitResponse(CompletableFuture<HttpResponse<InputStream>> future, ContentPublisher body)
+            throws InterruptedException, ExecutionException, HttpTimeoutException {
+        while (true) {
+            CompletableFuture<Void> sent = body.sent();
+            // failures of the request are reported by future.get() below
+            CompletableFuture.anyOf(future, sent).handle((result, failure) -> null).get();
+            try {
+                return future.get(responseTimeout, TimeUnit.SECONDS);
+            }
+            catch (TimeoutException e) {
+                if (body.sent() == sent) {
+                    future.cancel(true);
+                    throw new HttpTimeoutException("No response within " + responseTimeout + "s of sending the request body");
+                }
+                // the client is sending the body again (e.g., after a redirect); wait for that attempt
+            }
+        }
+    }
+
+    /**
+     * Publishes {@link RequestContent} to the JDK client.  Every subscription (the client subscribes again when it
+     * resends the body) writes the content on its own thread.
+     */
+    private static final class ContentPublisher implements Flow.Publisher<ByteBuffer> {
+        private final RequestContent content;
+        private final List<ContentSubscription> subscriptions = new CopyOnWriteArrayList<>();
+        private volatile CompletableFuture<Void> sent = new CompletableFuture<>();
+
+        ContentPublisher(RequestContent content) {
+            this.content = content;
+        }
+
+        /**
+         * @return future completed when the latest attempt to send the body has ended
+         */
+        CompletableFuture<Void> sent() {
+            return sent;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            CompletableFuture<Void> attempt = sent;
+            if (attempt.isDone()) {
+                attempt = new CompletableFuture<>();
+                sent = attempt;
+            }
+            ContentSubscription subscription = new ContentSubscription(content, subscriber, attempt);
+            subscriptions.add(subscription);
+            subscriber.onSubscribe(subscription);
+            try {
+                BODY_WRITERS.execute(subscription::write);
+            }
+            catch (RejectedExecutionException e) {
+                subscription.fail(new IOException("Unable to start writing the request body", e));
+            }
+        }
+
+        void cancel() {
+            for (ContentSubscription subscription : subscriptions) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    /**
+     * Writes the content and passes each buffer on to the subscriber once it has been requested, so the writing
+     * thread blocks while the client is busy sending earlier buffers.
+     */
+    private static final class ContentSubscription implements Flow.Subscription, WritableByteChannel {
+        private final RequestContent content;
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final CompletableFuture<Void> sent;
+        // a Lock rather than a monitor, so waiting virtual threads release their carrier thread
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demanded = lock.newCondition();
+        private long demand;
+        private boolean cancelled;
+        private IllegalArgumentException invalidRequest;
+
+        ContentSubscription(RequestContent content, Flow.Subscriber<? super ByteBuffer> subscriber, CompletableFuture<Void> sent) {
+            this.content = content;
+            this.subscriber = subscriber;
+            this.sent = sent;
+        }
+
+        void write() {
+            try {
+                content.writeTo(this);
+                if (!isCancelled()) {
+                    subscriber.onComplete();
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                fail((e instanceof IOException) ? (IOException) e : new IOException(e));
+            }
+            finally {
+                sent.complete(null);
+            }
+        }
+
+        void fail(IOException e) {
+            if (!isCancelled()) {
+                // unwrapped again by execute(), which reports the original exception
+                subscriber.onError(new UncheckedIOException(e));
+            }
+            sent.complete(null);
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int written = source.remaining();
+            while (source.hasRemaining()) {
+                awaitDemand();
+                // the client may hold on to the buffer after onNext() returns, and the content may reuse its own
+                ByteBuffer chunk = ByteBuffer.allocate(Math.min(source.remaining(), RequestContent.BUFFER_SIZE));
+                int limit = source.limit();
+                source.limit(source.position() + chunk.remaining());
+                chunk.put(source);
+                source.limit(limit);
+                chunk.flip();
+                subscriber.onNext(chunk);
+            }
+            return written;
+        }
+
+        private void awaitDemand() throws IOException {
+            lock.lock();
+            try {
+                while (demand == 0 && !cancelled && invalidRequest == null) {
+                    demanded.await();
+                }
+                if (cancelled) {
+                    throw new IOException("Request body is no longer read");
+                }
+                if (invalidRequest != null) {
+                    throw new IOException(invalidRequest);
+                }
+                demand--;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing the request body");
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isCancelled() {
+            lock.lock();
+            try {
+                return cancelled;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (n <= 0) {
+                    // rule 3.9 of the Reactive Streams specification; signalled by the writing thread, as onNext() is
+                    invalidRequest = new IllegalArgumentException("non-positive request: " + n);
+                }
+                else {
+                    demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+                }
+                demanded.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                demanded.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !isCancelled();
+        }
+
+        @Override
+        public void close() {
+            // the subscription ends when the content has been written
+        }
+    }
+}
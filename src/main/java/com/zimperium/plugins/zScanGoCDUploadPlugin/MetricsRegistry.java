@@ -0,0 +1,250 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MetricsRegistry collects agent-wide statistics about the plugin: scans in flight, logins, status polls, uploads
+ * and upload throughput.  One registry exists per plugin class loader ({@link TaskPlugin#metrics()}); it is shared by
+ * every job the agent runs.
+ *
+ * <p>Updates are lock-free ({@link LongAdder}, {@link DoubleAdder} and {@link AtomicLong}), so recording a metric
+ * never blocks an upload or polling thread.  If a textfile path is configured with the {@code zscan.metrics.textfile}
+ * system property or the {@code ZSCAN_METRICS_TEXTFILE} environment variable, the registry is written to that file
+ * in the Prometheus text format every {@link #flushInterval} seconds, where node_exporter's textfile collector can
+ * pick it up.  The file is replaced atomically, so a scrape never sees a partial file, and no network listener is
+ * opened.</p>
+ */
+public class MetricsRegistry {
+    public final static long flushInterval = 15;
+    public static final String TEXTFILE_PROPERTY = "zscan.metrics.textfile";
+    public static final String TEXTFILE_ENV = "ZSCAN_METRICS_TEXTFILE";
+
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private final List<Metric> metrics = new ArrayList<>();
+    private ScheduledExecutorService flusher;
+
+    public final Gauge scansInFlight = register(new Gauge("zscan_scans_in_flight", "Binaries currently being uploaded or waited on"));
+    public final Gauge openResponses = register(new Gauge("zscan_open_responses", "zScan API responses that have not been closed yet"));
+    public final Counter jobs = register(new Counter("zscan_jobs_total", "Executed plugin tasks"));
+    public final Counter jobFailures = register(new Counter("zscan_job_failures_total", "Plugin tasks that did not succeed"));
+    public final Counter logins = register(new Counter("zscan_logins_total", "Login requests sent"));
+    public final Counter loginFailures = register(new Counter("zscan_login_failures_total", "Login requests that did not succeed"));
+    public final Counter tokenRefreshes = register(new Counter("zscan_token_refreshes_total", "Access token refresh requests sent"));
+    public final Counter statusPolls = register(new Counter("zscan_status_polls_total", "Assessment status requests sent"));
+    public final Counter statusNotModified = register(new Counter("zscan_status_not_modified_total", "Assessment status requests answered with 304 Not Modified"));
+    public final Counter statusBytes = register(new Counter("zscan_status_bytes_total", "Bytes of assessment status received and parsed"));
+    public final Counter uploads = register(new Counter("zscan_uploads_total", "Binary upload requests sent"));
+    public final Counter uploadFailures = register(new Counter("zscan_upload_failures_total", "Binary uploads that did not succeed"));
+    public final Counter uploadBytes = register(new Counter("zscan_upload_bytes_total", "Bytes of binaries sent"));
+    public final Histogram uploadThroughput = register(new Histogram("zscan_upload_throughput_megabytes_per_second",
+        "Average throughput of completed uploads", new double[] { 0.25, 0.5, 1, 2, 5, 10, 25, 50, 100 }));
+    public final Histogram uploadDuration = register(new Histogram("zscan_upload_duration_seconds",
+        "Duration of completed uploads", new double[] { 1, 5, 15, 30, 60, 120, 300, 600, 1800 }));
+    public final Counter reportDownloads = register(new Counter("zscan_report_downloads_total", "Assessment reports downloaded"));
+    public final Counter reportCacheHits = register(new Counter("zscan_report_cache_hits_total", "Assessment reports served from the report cache"));
+
+    private <T extends Metric> T register(T metric) {
+        metrics.add(metric);
+        return metric;
+    }
+
+    /**
+     * Records a completed upload in the byte counter and the throughput and duration histograms.
+     */
+    public void recordUpload(long bytes, long elapsedMillis) {
+        uploadBytes.add(bytes);
+        if (elapsedMillis > 0) {
+            uploadDuration.observe(elapsedMillis / 1000.0);
+            uploadThroughput.observe(bytes / MEGABYTE / (elapsedMillis / 1000.0));
+        }
+    }
+
+    /**
+     * Starts writing the registry to the configured textfile, if any.  Calling this more than once has no effect.
+     *
+     * @return path of the textfile, or {@code null} if no textfile is configured
+     */
+    public synchronized Path startTextfileExport() {
+        String configured = System.getProperty(TEXTFILE_PROPERTY, System.getenv(TEXTFILE_ENV));
+        if (configured == null || configured.trim().isEmpty()) {
+            return null;
+        }
+        Path textfile = Paths.get(configured.trim());
+
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zscan-metrics-textfile");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleAtFixedRate(() -> {
+                try {
+                    writeTextfile(textfile);
+                }
+                catch (IOException | RuntimeException e) {
+                    TaskPlugin.LOGGER.warn("Unable to write metrics to " + textfile + ": " + e.getLocalizedMessage());
+                }
+            }, 0, flushInterval, TimeUnit.SECONDS);
+        }
+        return textfile;
+    }
+
+    /**
+     * Writes the registry to a temporary file next to {@code textfile} and moves it into place.
+     */
+    public void writeTextfile(Path textfile) throws IOException {
+        Path directory = textfile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "." + textfile.getFileName(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writePrometheusText(writer);
+            }
+            Files.move(temporary, textfile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     */
+    public void writePrometheusText(Appendable out) throws IOException {
+        for (Metric metric : metrics) {
+            out.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+            out.append("# TYPE ").append(metric.name).append(' ').append(metric.type()).append('\n');
+            metric.writeSamples(out);
+        }
+    }
+
+    public abstract static class Metric {
+        final String name;
+        final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract String type();
+
+        abstract void writeSamples(Appendable out) throws IOException;
+    }
+
+    public static final class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        String type() {
+            return "counter";
+        }
+
+        void writeSamples(Appendable out) throws IOException {
+            out.append(name).append(' ').append(Long.toString(value.sum())).append('\n');
+        }
+    }
+
+    public static final class Gauge extends Metric {
+        private final AtomicLong value = new AtomicLong();
+
+        Gauge(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void decrement() {
+            value.decrementAndGet();
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        String type() {
+            return "gauge";
+        }
+
+        void writeSamples(Appendable out) throws IOException {
+            out.append(name).append(' ').append(Long.toString(value.get())).append('\n');
+        }
+    }
+
+    public static final class Histogram extends Metric {
+        private final double[] bounds;
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(String name, String help, double[] bounds) {
+            super(name, help);
+            this.bounds = bounds;
+            buckets = new LongAdder[bounds.length];
+            for (int i = 0; i < bounds.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observe(double value) {
+            for (int i = 0; i < bounds.length; i++) {
+                if (value <= bounds[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+
+        String type() {
+            return "histogram";
+        }
+
+        void writeSamples(Appendable out) throws IOException {
+            // the exposition format expects cumulative buckets
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += buckets[i].sum();
+                out.append(name).append("_bucket{le=\"").append(Double.toString(bounds[i])).append("\"} ")
+                    .append(Long.toString(cumulative)).append('\n');
+            }
+            long total = Math.max(count.sum(), cumulative);
+            out.append(name).append("_bucket{le=\"+Inf\"} ").append(Long.toString(total)).append('\n');
+            out.append(name).append("_sum ").append(Double.toString(sum.sum())).append('\n');
+            out.append(name).append("_count ").append(Long.toString(total)).append('\n');
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * MultipartContent encodes form fields and files as {@code multipart/form-data} (RFC 7578).  The encoding is done
+ * here rather than by the HTTP client, so every {@link HttpTransport} sends byte-identical upload bodies.
+ *
+ * <p>File parts are streamed from their {@link RequestContent}; the total length is known only if the length of
+ * every part is known, otherwise the body is sent with chunked transfer encoding.</p>
+ */
+public class MultipartContent implements RequestContent {
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] DASHDASH = { '-', '-' };
+
+    private final String boundary;
+    private final List<Part> parts;
+
+    private MultipartContent(String boundary, List<Part> parts) {
+        this.boundary = boundary;
+        this.parts = parts;
+    }
+
+    @Override
+    public String contentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        long length = 0;
+        byte[] boundaryBytes = boundary.getBytes(StandardCharsets.UTF_8);
+        for (Part part : parts) {
+            long partLength = part.content.contentLength();
+            if (partLength < 0) {
+                return -1;
+            }
+            length += DASHDASH.length + boundaryBytes.length + CRLF.length + part.headers.length + partLength + CRLF.length;
+        }
+        return length + DASHDASH.length + boundaryBytes.length + DASHDASH.length + CRLF.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] boundaryBytes = boundary.getBytes(StandardCharsets.UTF_8);
+        for (Part part : parts) {
+            out.write(DASHDASH);
+            out.write(boundaryBytes);
+            out.write(CRLF);
+            out.write(part.headers);
+            part.content.writeTo(out);
+            out.write(CRLF);
+        }
+        out.write(DASHDASH);
+        out.write(boundaryBytes);
+        out.write(DASHDASH);
+        out.write(CRLF);
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel out) throws IOException {
+        byte[] boundaryBytes = boundary.getBytes(StandardCharsets.UTF_8);
+        for (Part part : parts) {
+            RequestContent.writeFully(out, ByteBuffer.wrap(DASHDASH));
+            RequestContent.writeFully(out, ByteBuffer.wrap(boundaryBytes));
+            RequestContent.writeFully(out, ByteBuffer.wrap(CRLF));
+            RequestContent.writeFully(out, ByteBuffer.wrap(part.headers));
+            part.content.writeTo(out);
+            RequestContent.writeFully(out, ByteBuffer.wrap(CRLF));
+        }
+        RequestContent.writeFully(out, ByteBuffer.wrap(DASHDASH));
+        RequestContent.writeFully(out, ByteBuffer.wrap(boundaryBytes));
+        RequestContent.writeFully(out, ByteBuffer.wrap(DASHDASH));
+        RequestContent.writeFully(out, ByteBuffer.wrap(CRLF));
+    }
+
+    private static final class Part {
+        final byte[] headers;
+        final RequestContent content;
+
+        Part(byte[] headers, RequestContent content) {
+            this.headers = headers;
+            this.content = content;
+        }
+    }
+
+    public static class Builder {
+        private final String boundary = UUID.randomUUID().toString();
+        private final List<Part> parts = new ArrayList<>();
+
+        public Builder addFormDataPart(String name, String value) {
+            return addPart(name, null, RequestContent.of(value, null));
+        }
+
+        /**
+         * Adds a part whose content is streamed when the body is written.  {@code fileName} may be {@code null}
+         * for parts that are not files.
+         */
+        public Builder addFormDataPart(String name, String fileName, RequestContent content) {
+            return addPart(name, fileName, content);
+        }
+
+        private Builder addPart(String name, String fileName, RequestContent content) {
+            StringBuilder headers = new StringBuilder("Content-Disposition: form-data; name=");
+            appendQuoted(headers, name);
+            if (fileName != null) {
+                headers.append("; filename=");
+                appendQuoted(headers, fileName);
+            }
+            headers.append("\r\n");
+            if (content.contentType() != null) {
+                headers.append("Content-Type: ").append(content.contentType()).append("\r\n");
+            }
+            headers.append("\r\n");
+            parts.add(new Part(headers.toString().getBytes(StandardCharsets.UTF_8), content));
+            return this;
+        }
+
+        public MultipartContent build() {
+            if (parts.isEmpty()) {
+                throw new IllegalStateException("Multipart body must have at least one part.");
+            }
+            return new MultipartContent(boundary, new ArrayList<>(parts));
+        }
+
+        // quotes and line breaks are percent-encoded, as browsers do
+        private static void appendQuoted(StringBuilder target, String value) {
+            target.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\n':
+                        target.append("%0A");
+                        break;
+                    case '\r':
+                        target.append("%0D");
+                        break;
+                    case '"':
+                        target.append("%22");
+                        break;
+                    default:
+                        target.append(c);
+                        break;
+                }
+            }
+            target.append('"');
+        }
+    }
+}
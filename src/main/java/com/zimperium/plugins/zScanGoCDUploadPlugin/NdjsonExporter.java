@@ -0,0 +1,82 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * NdjsonExporter writes the findings of a JSON assessment report as newline-delimited JSON: one finding per line,
+ * with the fields normalized by {@link Finding}.  Log shippers and databases can ingest such a file line by line,
+ * and split it between several consumers, without parsing the whole report first.
+ *
+ * <p>Findings are streamed from the report with {@link FindingsReader} and written as soon as they are read, so
+ * memory use does not grow with the number of findings.  Every line carries the assessment and application IDs, so
+ * lines from several reports can be mixed.  Empty fields are omitted.</p>
+ */
+public class NdjsonExporter {
+    public static final String EXTENSION = ".ndjson";
+
+    /**
+     * Exports the findings of the JSON report in {@code jsonReport} to {@code ndjsonFile}.
+     *
+     * A partially written export is removed if the export fails.
+     *
+     * @return number of findings exported
+     * @throws IOException if the report cannot be read or has no findings array, or the export cannot be written
+     */
+    public long export(Path jsonReport, Path ndjsonFile, String assessmentId, String zdevAppId) throws IOException {
+        try (Reader in = Files.newBufferedReader(jsonReport, StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(ndjsonFile, StandardCharsets.UTF_8)) {
+            return export(in, out, assessmentId, zdevAppId);
+        }
+        catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(ndjsonFile);
+            throw e;
+        }
+    }
+
+    /**
+     * @throws IOException if the report has no findings array, so that consumers can tell a report without findings
+     *                     from one whose findings could not be found
+     */
+    public long export(Reader in, Writer out, String assessmentId, String zdevAppId) throws IOException {
+        long count = 0;
+        try (FindingsReader findings = new FindingsReader(in)) {
+            Finding finding;
+            while ((finding = findings.next()) != null) {
+                // a writer per line: JsonWriter accepts a single top-level value and never writes line breaks
+                JsonWriter writer = new JsonWriter(out);
+                writer.beginObject();
+                writeField(writer, "assessmentId", assessmentId);
+                writeField(writer, "zdevAppId", zdevAppId);
+                writeField(writer, "findingId", finding.getId());
+                writeField(writer, "ruleId", finding.getRuleId());
+                writeField(writer, "severity", finding.getSeverity());
+                writeField(writer, "title", finding.getTitle());
+                writeField(writer, "category", finding.getCategory());
+                writeField(writer, "location", finding.getLocation());
+                writeField(writer, "description", finding.getDescription());
+                writer.endObject();
+                writer.flush();
+                out.write('\n');
+                count++;
+            }
+            if (!findings.hasFindingsArray()) {
+                throw new IOException("the report has no findings array");
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    private static void writeField(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            writer.name(name).value(value);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OkHttpTransport sends requests with OkHttp.  This is the default transport.
+ */
+public class OkHttpTransport implements HttpTransport {
+    public static final OkHttpTransport INSTANCE = new OkHttpTransport();
+
+    /**
+     * One client (and with it one connection pool and dispatcher) is shared by all jobs.  It is created by the
+     * first request, so the plugin does not initialize OkHttp until it is needed.
+     */
+    private static final class SharedClient {
+        static final OkHttpClient INSTANCE = new OkHttpClient.Builder()
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .writeTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+    }
+
+    private OkHttpTransport() {
+    }
+
+    @Override
+    public String name() {
+        return OKHTTP;
+    }
+
+    @Override
+    public ApiResponse execute(ApiRequest request, CancellationToken cancellation, String description) throws IOException {
+        Request.Builder builder = new Request.Builder().url(request.url());
+        for (Map.Entry<String, String> header : request.headers().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        RequestContent content = request.content();
+        builder.method(request.method(), (content != null) ? new ContentRequestBody(content) : null);
+
+        Call call = SharedClient.INSTANCE.newCall(builder.build());
+        cancellation.register(call, call::cancel, description);
+        Response response;
+        try {
+            response = call.execute();
+        }
+        catch (IOException | RuntimeException e) {
+            cancellation.unregister(call);
+            throw e;
+        }
+        InputStream stream = (response.body() != null) ? response.body().byteStream() : null;
+        // the call stays registered until the response is closed, so cancelling the token also aborts reading the body
+        return new ApiResponse(response.code(), response.headers().toMultimap(), stream, () -> {
+            try {
+                response.close();
+            }
+            finally {
+                cancellation.unregister(call);
+            }
+        });
+    }
+
+    /**
+     * Lets OkHttp write a {@link RequestContent} directly to its sink.
+     */
+    private static final class ContentRequestBody extends RequestBody {
+        private final RequestContent content;
+
+        ContentRequestBody(RequestContent content) {
+            this.content = content;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return (content.contentType() != null) ? MediaType.parse(content.contentType()) : null;
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return content.contentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // the sink is also a channel, so file content is copied from direct or mapped buffers into okio's (heap) segments;
+            // flushing hands the bytes to the connection without closing it
+            content.writeTo(sink);
+            sink.flush();
+        }
+    }
+}
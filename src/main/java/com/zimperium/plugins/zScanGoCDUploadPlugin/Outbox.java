@@ -0,0 +1,388 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Outbox is a durable local spool for uploads that could not be sent because the zScan server was unreachable.
+ * Spooled uploads are sent later by the {@link OutboxDrainer}.
+ *
+ * <p>Every upload is kept in its own directory under the outbox directory ({@code zscan.outbox.dir} system property,
+ * {@code ZSCAN_OUTBOX_DIR} environment variable, or {@code ~/.zscan/outbox}).  The directory holds the artifact (a
+ * hard link to the original file where possible, a copy otherwise; directories are stored as a ZIP archive) and a
+ * manifest with the upload metadata: endpoint, client ID, branch, build number, team and report format.  The client
+ * secret is never written to disk.</p>
+ *
+ * <p>An entry is written to a {@code .pending} directory; the artifact and the manifest are fsync'd before the
+ * directory is renamed into place, so after a crash an entry is either complete or not listed at all.  The state of
+ * an entry is given by its manifest: {@value #MANIFEST} (queued), {@value #FAILED_MANIFEST} (rejected by the server;
+ * kept for inspection) or none (uploaded; the directory is about to be deleted).</p>
+ */
+public class Outbox {
+    public static final String DIRECTORY_PROPERTY = "zscan.outbox.dir";
+    public static final String DIRECTORY_ENV = "ZSCAN_OUTBOX_DIR";
+
+    static final String MANIFEST = "manifest.json";
+    static final String FAILED_MANIFEST = "manifest.failed.json";
+    static final String PENDING_SUFFIX = ".pending";
+    private static final String LOCK = ".lock";
+
+    private final Path directory;
+
+    public Outbox(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the outbox in the configured directory
+     */
+    public static Outbox open() {
+        String configured = System.getProperty(DIRECTORY_PROPERTY, System.getenv(DIRECTORY_ENV));
+        if (configured == null || configured.trim().isEmpty()) {
+            return new Outbox(Paths.get(System.getProperty("user.home"), ".zscan", "outbox"));
+        }
+        return new Outbox(Paths.get(configured.trim()));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Adds a binary to the outbox.  When this method returns, the entry is on stable storage.
+     *
+     * @param binary     the file (or directory) that could not be uploaded
+     * @param info       result of the preflight inspection of the binary
+     * @param taskConfig configuration of the task; the client secret is not stored
+     * @param context    environment of the job (branch name and build number)
+     * @return the new entry
+     * @throws IOException if the entry could not be written; nothing is left behind in that case
+     */
+    public Entry spool(File binary, BinaryInfo info, TaskConfig taskConfig, Context context) throws IOException {
+        Files.createDirectories(directory);
+
+        String id = System.currentTimeMillis() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        Path pending = Files.createDirectory(directory.resolve(id + PENDING_SUFFIX));
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, String> envVars = context.getEnvironmentVariables();
+
+            Entry entry = new Entry();
+            entry.id = id;
+            entry.endpoint = taskConfig.getServerUrl();
+            entry.clientId = taskConfig.getClientId();
+            entry.teamName = taskConfig.getTeamName();
+            entry.reportFormat = taskConfig.getReportFormat();
+            entry.httpClient = taskConfig.getTransport().name();
+            entry.branchName = (envVars.get("BRANCH_NAME") != null) ? envVars.get("BRANCH_NAME") : "";
+            entry.buildNumber = (envVars.get("BUILD_NUMBER") != null) ? envVars.get("BUILD_NUMBER") : "";
+            entry.sourcePath = binary.getAbsolutePath();
+            entry.type = info.getType().name();
+            entry.packageId = info.getPackageId();
+            entry.version = info.getVersion();
+            entry.entryCount = info.getEntryCount();
+            entry.createdAt = System.currentTimeMillis();
+
+            if (binary.isDirectory()) {
+                entry.uploadName = binary.getAbsolutePath() + DirectoryZipContent.extension;
+                entry.artifact = binary.getName() + DirectoryZipContent.extension;
+                try (FileOutputStream out = new FileOutputStream(pending.resolve(entry.artifact).toFile())) {
+                    new DirectoryZipContent(binary).writeTo(out);
+                    out.getChannel().force(true);
+                }
+            }
+            else {
+                entry.uploadName = binary.getAbsolutePath();
+                entry.artifact = binary.getName();
+                Path artifact = pending.resolve(entry.artifact);
+                try {
+                    Files.createLink(artifact, binary.toPath());
+                }
+                catch (IOException | UnsupportedOperationException e) {
+                    // e.g., the outbox is on a different file system
+                    Files.copy(binary.toPath(), artifact);
+                }
+                sync(artifact);
+            }
+
+            entry.directory = pending;
+            writeManifest(entry, MANIFEST);
+
+            Path committed = directory.resolve(id);
+            Files.move(pending, committed, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(directory);
+            entry.directory = committed;
+            return entry;
+        }
+        catch (IOException | RuntimeException e) {
+            delete(pending);
+            throw e;
+        }
+    }
+
+    /**
+     * @return queued entries, oldest first
+     */
+    public List<Entry> list() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return entries;
+        }
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (Path path : paths) {
+                Path manifest = path.resolve(MANIFEST);
+                if (path.getFileName().toString().endsWith(PENDING_SUFFIX) || !Files.isRegularFile(manifest)) {
+                    continue;
+                }
+                try {
+                    entries.add(readManifest(path));
+                }
+                catch (IOException | RuntimeException e) {
+                    TaskPlugin.LOGGER.warn("Skipping unreadable outbox entry " + path + ": " + e.getLocalizedMessage());
+                }
+            }
+        }
+        entries.sort(Comparator.comparingLong((Entry entry) -> entry.createdAt).thenComparing(entry -> entry.id));
+        return entries;
+    }
+
+    /**
+     * Re-reads the manifest of an entry, e.g. after it has been locked.
+     *
+     * @return the entry, or {@code null} if it is no longer queued
+     */
+    public Entry refresh(Entry entry) throws IOException {
+        return Files.isRegularFile(entry.directory.resolve(MANIFEST)) ? readManifest(entry.directory) : null;
+    }
+
+    /**
+     * Locks an entry, so it is not uploaded by two agents sharing the outbox directory at the same time.
+     *
+     * @return the locked channel, which must be closed to release the lock, or {@code null} if the entry is locked
+     */
+    public FileChannel tryLock(Entry entry) throws IOException {
+        FileChannel channel = FileChannel.open(entry.directory.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return channel;
+            }
+        }
+        catch (OverlappingFileLockException e) {
+            // locked by this JVM
+        }
+        channel.close();
+        return null;
+    }
+
+    /**
+     * Records a failed attempt; the entry stays queued.
+     */
+    public void recordAttempt(Entry entry, String error) throws IOException {
+        entry.attempts++;
+        entry.lastError = error;
+        entry.lastAttemptAt = System.currentTimeMillis();
+        writeManifest(entry, MANIFEST);
+    }
+
+    /**
+     * Marks an entry as rejected by the server.  It is no longer listed, but kept on disk for inspection.
+     */
+    public void reject(Entry entry, String error) throws IOException {
+        entry.attempts++;
+        entry.lastError = error;
+        entry.lastAttemptAt = System.currentTimeMillis();
+        writeManifest(entry, FAILED_MANIFEST);
+        Files.delete(entry.directory.resolve(MANIFEST));
+        syncDirectory(entry.directory);
+    }
+
+    /**
+     * Marks an entry as uploaded.  Once its lock is released, the entry should be removed with
+     * {@link #removeObsolete(long)}.
+     */
+    public void markUploaded(Entry entry) throws IOException {
+        Files.delete(entry.directory.resolve(MANIFEST));
+        syncDirectory(entry.directory);
+    }
+
+    /**
+     * Deletes uploaded entries and {@code .pending} directories older than {@code maxPendingAgeMillis}, which
+     * were left behind by a crash while spooling.
+     */
+    public void removeObsolete(long maxPendingAgeMillis) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> obsolete = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (Path path : paths) {
+                if (!Files.isDirectory(path)) {
+                    continue;
+                }
+                if (path.getFileName().toString().endsWith(PENDING_SUFFIX)) {
+                    if (System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis() > maxPendingAgeMillis) {
+                        obsolete.add(path);
+                    }
+                }
+                else if (!Files.exists(path.resolve(MANIFEST)) && !Files.exists(path.resolve(FAILED_MANIFEST))) {
+                    obsolete.add(path);
+                }
+            }
+        }
+        for (Path path : obsolete) {
+            delete(path);
+        }
+    }
+
+    private static Entry readManifest(Path entryDirectory) throws IOException {
+        String json = new String(Files.readAllBytes(entryDirectory.resolve(MANIFEST)), StandardCharsets.UTF_8);
+        Entry entry = TaskPlugin.gson().fromJson(json, Entry.class);
+        entry.directory = entryDirectory;
+        return entry;
+    }
+
+    // writes to a temporary file that is fsync'd and then renamed, so the manifest is never seen half-written
+    private static void writeManifest(Entry entry, String name) throws IOException {
+        Path temporary = entry.directory.resolve(name + ".tmp");
+        ByteBuffer bytes = ByteBuffer.wrap(TaskPlugin.gson().toJson(entry).getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, entry.directory.resolve(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(entry.directory);
+    }
+
+    private static void sync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        try {
+            sync(directory);
+        }
+        catch (IOException e) {
+            // directories cannot be opened on every platform (e.g., Windows); renames are durable there anyway
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Manifest of a spooled upload.  Fields are serialized as JSON.
+     */
+    public static class Entry {
+        String id;
+        String endpoint;
+        String clientId;
+        String teamName;
+        String reportFormat;
+        String httpClient;
+        String branchName;
+        String buildNumber;
+        String sourcePath;
+        String uploadName;
+        String artifact;
+        String type;
+        String packageId;
+        String version;
+        int entryCount;
+        long createdAt;
+        int attempts;
+        long lastAttemptAt;
+        String lastError;
+
+        transient Path directory;
+
+        public String getId() {
+            return id;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public String getTeamName() {
+            return teamName;
+        }
+
+        public String getSourcePath() {
+            return sourcePath;
+        }
+
+        public String getUploadName() {
+            return uploadName;
+        }
+
+        public String getHttpClient() {
+            return httpClient;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public File getArtifact() {
+            return directory.resolve(artifact).toFile();
+        }
+
+        public BinaryInfo getBinaryInfo() {
+            return BinaryInfo.valid(BinaryInfo.Type.valueOf(type), packageId, version, entryCount);
+        }
+
+        /**
+         * @return job context with the environment variables the upload request is built from
+         */
+        public Context getContext() {
+            Map<String, Object> environmentVariables = new HashMap<>();
+            environmentVariables.put("BRANCH_NAME", branchName);
+            environmentVariables.put("BUILD_NUMBER", buildNumber);
+            Map<String, Object> context = new HashMap<>();
+            context.put("environmentVariables", environmentVariables);
+            context.put("workingDirectory", directory.toString());
+            return new Context(context);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OutboxDrainer uploads the entries of an {@link Outbox} in the background once the zScan server is reachable again.
+ * It runs in the agent JVM, is started by the first job with the outbox enabled, and checks the outbox every
+ * {@link #drainInterval} seconds.  At most {@link #maxConcurrentUploads} entries are uploaded at the same time.
+ *
+ * <p>Client secrets are not stored in the outbox; the drainer keeps the secret of every endpoint and client ID it
+ * has seen in memory.  Entries spooled before an agent restart are therefore uploaded once a job with the same
+ * endpoint and client ID has run on the agent.</p>
+ *
+ * <p>Each entry is uploaded and, if necessary, assigned to its team.  The job that spooled the entry has finished,
+ * so the drainer does not wait for the assessment or download its report; the results are available in the zScan
+ * console.  If the server is unreachable, the remaining entries for that endpoint are left for the next round; if
+ * the server rejects an upload, the entry is set aside (see {@link Outbox#reject(Outbox.Entry, String)}).</p>
+ */
+public class OutboxDrainer {
+    public static final OutboxDrainer INSTANCE = new OutboxDrainer();
+
+    public final static long drainInterval = 60;
+    public final static int maxConcurrentUploads = 2;
+    public final static long pendingTimeout = 24 * 60 * 60;
+
+    private final Map<String, String> secrets = new ConcurrentHashMap<>();
+    private final Set<Path> inProgress = ConcurrentHashMap.newKeySet();
+    private final CancellationToken cancellation = new CancellationToken();
+
+    private Outbox outbox;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService uploaders;
+
+    private OutboxDrainer() {
+    }
+
+    /**
+     * Remembers the credentials of a task and starts draining {@code outbox}, unless the drainer is already running.
+     */
+    public synchronized void start(Outbox outbox, TaskConfig taskConfig) {
+        secrets.put(key(taskConfig.getServerUrl(), taskConfig.getClientId()), taskConfig.getClientSecret());
+        if (scheduler != null) {
+            return;
+        }
+
+        this.outbox = outbox;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "zscan-outbox-drainer"));
+        uploaders = Executors.newFixedThreadPool(maxConcurrentUploads, PluginThreads.factory("zscan-outbox-upload"));
+        scheduler.scheduleWithFixedDelay(this::drain, drainInterval, drainInterval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> cancellation.cancel("agent is shutting down")));
+        TaskPlugin.LOGGER.info("Draining zScan outbox " + outbox.getDirectory() + " every " + drainInterval + "s");
+    }
+
+    /**
+     * Uploads the queued entries whose credentials are known.  Returns once all uploads of this round are done,
+     * so rounds never overlap.
+     */
+    void drain() {
+        try {
+            outbox.removeObsolete(pendingTimeout * 1000);
+
+            Set<String> unreachable = ConcurrentHashMap.newKeySet();
+            List<Future<?>> uploads = new ArrayList<>();
+            for (Outbox.Entry entry : outbox.list()) {
+                String secret = secrets.get(key(entry.getEndpoint(), entry.getClientId()));
+                if (secret == null || !inProgress.add(entry.getDirectory())) {
+                    continue;
+                }
+                uploads.add(uploaders.submit(() -> {
+                    try {
+                        drain(entry, secret, unreachable);
+                    }
+                    finally {
+                        inProgress.remove(entry.getDirectory());
+                    }
+                }));
+            }
+            for (Future<?> upload : uploads) {
+                upload.get();
+            }
+
+            outbox.removeObsolete(pendingTimeout * 1000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException | ExecutionException | RuntimeException e) {
+            TaskPlugin.LOGGER.warn("Unable to drain zScan outbox " + outbox.getDirectory() + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    private void drain(Outbox.Entry queued, String secret, Set<String> unreachable) {
+        if (cancellation.isCancelled() || unreachable.contains(queued.getEndpoint())) {
+            return;
+        }
+
+        try (FileChannel lock = outbox.tryLock(queued)) {
+            // another agent sharing the outbox may have uploaded the entry in the meantime
+            Outbox.Entry entry = (lock != null) ? outbox.refresh(queued) : null;
+            if (entry == null) {
+                return;
+            }
+
+            JobConsoleLogger console = new JobConsoleLogger() {
+                @Override
+                public void printLine(String line) {
+                    TaskPlugin.LOGGER.info("Outbox " + entry.getId() + ": " + line);
+                }
+            };
+            URLBuilder urlBuilder = new URLBuilder(entry.getEndpoint());
+            // recorded or replayed like the jobs' own calls (see Cassette)
+            HttpTransport transport = Cassette.configure(HttpTransport.forName(entry.getHttpClient()));
+            urlBuilder.select(EndpointSelector.INSTANCE.select(urlBuilder.getBaseUrls(), transport, console));
+            APITaskExecutor apiTaskExecutor = new APITaskExecutor(urlBuilder, console, cancellation, transport);
+
+            if (!apiTaskExecutor.login(entry.getClientId(), secret)) {
+                if (apiTaskExecutor.wasServerUnavailable()) {
+                    unreachable.add(entry.getEndpoint());
+                }
+                outbox.recordAttempt(entry, "login failed");
+                return;
+            }
+
+            String zdevAppId = "";
+            String teamId = "";
+            String buildId = "";
+            try (ApiResponse uploadResponse = apiTaskExecutor.uploadBinary(entry.getArtifact(), entry.getUploadName(),
+                    entry.getContext(), entry.getBinaryInfo())) {
+                if (uploadResponse == null || !uploadResponse.isSuccessful()) {
+                    if (uploadResponse == null || apiTaskExecutor.wasServerUnavailable()) {
+                        unreachable.add(entry.getEndpoint());
+                        outbox.recordAttempt(entry, (uploadResponse == null) ? "upload failed" : "HTTP " + uploadResponse.code());
+                    }
+                    else {
+                        String error = "HTTP " + uploadResponse.code() + ": " + uploadResponse.body().errorString();
+                        outbox.reject(entry, error);
+                        TaskPlugin.LOGGER.warn("zScan rejected spooled upload of " + entry.getSourcePath() + " (" + error
+                            + "); it was left in " + entry.getDirectory());
+                    }
+                    return;
+                }
+
+                // the upload must not be repeated, even if the team assignment below fails
+                outbox.markUploaded(entry);
+                urlBuilder.pin();
+
+                JsonObject jsonObject = JsonParser.parseString(uploadResponse.body().string()).getAsJsonObject();
+                zdevAppId = getString(jsonObject, "zdevAppId");
+                teamId = getString(jsonObject, "teamId");
+                buildId = getString(jsonObject, "buildId");
+            }
+            TaskPlugin.LOGGER.info("Uploaded spooled " + entry.getSourcePath() + " after " + (entry.getAttempts() + 1) + " attempt(s)");
+
+            if (teamId.isEmpty() && !zdevAppId.isEmpty()) {
+                // need to wait a bit; otherwise we can get 404
+                cancellation.sleep(ExecuteRequest.checkInterval * 1000, "waiting before assigning application " + zdevAppId + " to a team");
+                apiTaskExecutor.assignAppToTeamByName(zdevAppId, entry.getTeamName(), buildId);
+            }
+        }
+        catch (CancellationException e) {
+            // agent is shutting down; entries that were not marked as uploaded stay queued
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException | RuntimeException e) {
+            TaskPlugin.LOGGER.warn("Unable to upload spooled " + queued.getSourcePath() + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    private static String getString(JsonObject object, String name) {
+        JsonElement element = object.get(name);
+        return (element == null || element.isJsonNull()) ? "" : element.getAsString();
+    }
+
+    private static String key(String endpoint, String clientId) {
+        return endpoint + "\n" + clientId;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
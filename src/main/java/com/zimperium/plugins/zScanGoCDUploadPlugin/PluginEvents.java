@@ -0,0 +1,117 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.Map;
+
+/**
+ * Java Flight Recorder events for the plugin's phases and HTTP calls, so plugin latency can be correlated with GC,
+ * thread and I/O activity of the agent JVM in JDK Mission Control.
+ *
+ * <p>Events are created and committed unconditionally; when no recording is running (or the events are disabled),
+ * {@code begin()}, {@code end()} and {@code commit()} return immediately and field values are not recorded.</p>
+ */
+public final class PluginEvents {
+    public static final String CATEGORY = "zScan Plugin";
+
+    private PluginEvents() {
+    }
+
+    /**
+     * Common fields of all plugin events.
+     */
+    @Category(CATEGORY)
+    public abstract static class ApiCallEvent extends Event {
+        @Label("Endpoint")
+        @Description("Path of the API endpoint or report URL")
+        public String endpoint;
+
+        @Label("Bytes")
+        @Description("Bytes sent and received, where known")
+        @DataAmount
+        public long bytes;
+
+        @Label("HTTP Status")
+        @Description("HTTP status code, or 0 if no response was received")
+        public int httpCode;
+
+        @Label("Build ID")
+        @Description("zScan build the call belongs to, once the upload has returned it")
+        public String buildId;
+
+        @Label("Job")
+        @Description("GoCD job that made the call, as pipeline/counter/stage/counter/job")
+        public String job;
+    }
+
+    /**
+     * @return the GoCD job the context belongs to, as {@code pipeline/counter/stage/counter/job}; the events of a
+     *         job can be told apart by this, including calls made before a build ID is known
+     */
+    @SuppressWarnings("unchecked")
+    public static String job(Context context) {
+        Map<String, String> environment = context.getEnvironmentVariables();
+        StringBuilder job = new StringBuilder();
+        for (String variable : new String[] { "GO_PIPELINE_NAME", "GO_PIPELINE_COUNTER", "GO_STAGE_NAME", "GO_STAGE_COUNTER", "GO_JOB_NAME" }) {
+            String value = (environment != null) ? environment.get(variable) : null;
+            if (value != null && !value.isEmpty()) {
+                job.append((job.length() > 0) ? "/" : "").append(value);
+            }
+        }
+        return job.toString();
+    }
+
+    @Name("com.zimperium.zscan.Login")
+    @Label("zScan Login")
+    public static final class Login extends ApiCallEvent {
+    }
+
+    @Name("com.zimperium.zscan.TokenRefresh")
+    @Label("zScan Token Refresh")
+    public static final class TokenRefresh extends ApiCallEvent {
+    }
+
+    @Name("com.zimperium.zscan.Upload")
+    @Label("zScan Upload")
+    public static final class Upload extends ApiCallEvent {
+        @Label("File")
+        public String file;
+
+        @Label("SHA-256")
+        @Description("Checksum of the file as sent; empty if the upload did not complete")
+        public String sha256;
+    }
+
+    @Name("com.zimperium.zscan.StatusPoll")
+    @Label("zScan Status Poll")
+    public static final class StatusPoll extends ApiCallEvent {
+    }
+
+    @Name("com.zimperium.zscan.TeamLookup")
+    @Label("zScan Team Lookup")
+    public static final class TeamLookup extends ApiCallEvent {
+    }
+
+    @Name("com.zimperium.zscan.Assignment")
+    @Label("zScan Team Assignment")
+    public static final class Assignment extends ApiCallEvent {
+        @Label("Application ID")
+        public String appId;
+    }
+
+    @Name("com.zimperium.zscan.ReportDownload")
+    @Label("zScan Report Download")
+    public static final class ReportDownload extends ApiCallEvent {
+        @Label("Assessment ID")
+        public String assessmentId;
+
+        @Label("Exit Code")
+        @Description("Exit code of the download command")
+        public int exitCode;
+    }
+}
@@ -0,0 +1,121 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PluginThreads creates the threads the plugin runs blocking work on: the background login, endpoint probes, the
+ * per-binary upload and scan pipeline (including the waits between status checks) and the outbox uploads.
+ *
+ * <p>When the agent runs on Java 21 or newer, these are virtual threads, so many concurrent scan waits cost little
+ * more than their stacks on the heap.  The plugin is built for Java 17, so virtual threads are looked up by
+ * reflection, and tried once, at run time; on older JVMs (including Java 19 and 20 without preview features), or if
+ * the {@code zscan.threads.virtual} system property or the {@code ZSCAN_VIRTUAL_THREADS} environment variable is
+ * {@code false}, daemon platform threads are used instead, and short tasks share small pools of them.
+ * Waiting code in the plugin, including waits for file locks that other agents may hold, uses
+ * {@link java.util.concurrent.locks.Lock}s rather than monitors, so virtual threads do not pin their carrier threads
+ * while they wait; the remaining monitors only guard short, non-blocking updates.</p>
+ */
+public final class PluginThreads {
+    public static final String VIRTUAL_PROPERTY = "zscan.threads.virtual";
+    public static final String VIRTUAL_ENV = "ZSCAN_VIRTUAL_THREADS";
+    public final static int maxPlatformThreads = 8;
+    public final static long platformKeepAlive = 60;
+
+    private PluginThreads() {
+    }
+
+    /**
+     * Looked up and tried once, on first use; {@code null} if virtual threads are not available or disabled.
+     */
+    private static final class Virtual {
+        static final Method OF_VIRTUAL;
+        static final Method NAME;
+        static final Method FACTORY;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method factory = null;
+            String configured = System.getProperty(VIRTUAL_PROPERTY, System.getenv(VIRTUAL_ENV));
+            if (configured == null || !configured.trim().equalsIgnoreCase("false")) {
+                try {
+                    Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                    ofVirtual = Thread.class.getMethod("ofVirtual");
+                    name = builder.getMethod("name", String.class, long.class);
+                    factory = builder.getMethod("factory");
+                    // on Java 19 and 20, virtual threads are a preview feature and ofVirtual() throws unless it is enabled
+                    factory.invoke(ofVirtual.invoke(null));
+                }
+                catch (ClassNotFoundException | NoSuchMethodException e) {
+                    // Java 18 or older
+                    ofVirtual = null;
+                }
+                catch (ReflectiveOperationException | RuntimeException e) {
+                    Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+                    TaskPlugin.LOGGER.warn("Virtual threads are not available; using platform threads: " + cause);
+                    ofVirtual = null;
+                }
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            FACTORY = factory;
+        }
+    }
+
+    /**
+     * @return {@code true} if blocking work runs on virtual threads
+     */
+    public static boolean isVirtual() {
+        return Virtual.OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return a factory of threads named {@code name-1}, {@code name-2}, ...; virtual threads where available,
+     *         daemon platform threads otherwise
+     */
+    public static ThreadFactory factory(String name) {
+        if (isVirtual()) {
+            try {
+                Object builder = Virtual.OF_VIRTUAL.invoke(null);
+                builder = Virtual.NAME.invoke(builder, name + "-", 1L);
+                return (ThreadFactory) Virtual.FACTORY.invoke(builder);
+            }
+            catch (ReflectiveOperationException e) {
+                // worked when it was tried on first use
+                throw new IllegalStateException(e);
+            }
+        }
+        return platformFactory(name);
+    }
+
+    private static ThreadFactory platformFactory(String name) {
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return an executor that runs every task on a new virtual thread where available; otherwise one that runs
+     *         tasks on up to {@link #maxPlatformThreads} daemon platform threads, which end when they have been idle
+     *         for {@link #platformKeepAlive} seconds, and queues further tasks
+     */
+    public static Executor perTask(String name) {
+        if (isVirtual()) {
+            ThreadFactory factory = factory(name);
+            return runnable -> factory.newThread(runnable).start();
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxPlatformThreads, maxPlatformThreads,
+            platformKeepAlive, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), platformFactory(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
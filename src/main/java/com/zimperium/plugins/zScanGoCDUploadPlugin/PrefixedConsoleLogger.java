@@ -0,0 +1,67 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * PrefixedConsoleLogger starts every line it prints to the job console with a fixed prefix, so the output of binaries
+ * the {@link UploadScheduler} processes at the same time can be told apart, e.g. {@code "[app.apk] Scan status = ..."}.
+ * Output and error streams of child processes are read line by line in the background and prefixed too.
+ */
+public class PrefixedConsoleLogger extends JobConsoleLogger {
+    private final JobConsoleLogger delegate;
+    private final String prefix;
+
+    public PrefixedConsoleLogger(JobConsoleLogger delegate, String prefix) {
+        this.delegate = delegate;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return a console that prefixes every line with {@code fileName} in brackets
+     */
+    public static PrefixedConsoleLogger forFile(JobConsoleLogger console, String fileName) {
+        return new PrefixedConsoleLogger(console, "[" + fileName + "] ");
+    }
+
+    @Override
+    public void printLine(String line) {
+        delegate.printLine(prefix + line);
+    }
+
+    @Override
+    public void readErrorOf(InputStream in) {
+        pump(in, "zscan-console-err");
+    }
+
+    @Override
+    public void readOutputOf(InputStream in) {
+        pump(in, "zscan-console-out");
+    }
+
+    @Override
+    public void printEnvironment(Map<String, String> environment) {
+        delegate.printEnvironment(environment);
+    }
+
+    private void pump(InputStream in, String name) {
+        Thread reader = PluginThreads.factory(name).newThread(() -> {
+            try (BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    printLine(line);
+                }
+            }
+            catch (IOException e) {
+                // the process was destroyed
+            }
+        });
+        reader.start();
+    }
+}
@@ -0,0 +1,208 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ProgressContent wraps another {@link RequestContent} and counts the bytes handed to the network as they are
+ * written.  Progress lines (percent, throughput and ETA) are printed to the job console at most once every
+ * {@link #reportInterval} seconds, so a slow upload can be told apart from a hung one.
+ *
+ * <p>A {@link Meter} is created once per write attempt and shared by the stream and channel wrappers; the per-chunk
+ * path only updates primitive counters and compares timestamps, so it does not allocate.  Counters are exposed
+ * through getters so they can be picked up by metrics collection.</p>
+ */
+public class ProgressContent implements RequestContent {
+    public final static long reportInterval = 5;
+
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private final RequestContent delegate;
+    private final String name;
+    private final JobConsoleLogger console;
+
+    private volatile long contentLength = -1;
+    private volatile long bytesWritten;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    public ProgressContent(RequestContent delegate, String name, JobConsoleLogger console) {
+        this.delegate = delegate;
+        this.name = name;
+        this.console = console;
+    }
+
+    @Override
+    public String contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        CountingStream countingStream = new CountingStream(out, start());
+        delegate.writeTo(countingStream);
+        countingStream.flush();
+        finish();
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel out) throws IOException {
+        // same as writeTo(OutputStream), for transports that write to a channel
+        CountingChannel countingChannel = new CountingChannel(out, start());
+        delegate.writeTo(countingChannel);
+        finish();
+    }
+
+    /**
+     * @return number of bytes written to the network so far by the current (or last) attempt
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return total number of bytes to be written, or -1 if unknown
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return time spent writing the body in milliseconds; keeps growing while the upload is in progress
+     */
+    public long getElapsedMillis() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long end = (endNanos != 0) ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+
+    /**
+     * @return average throughput in bytes per second, or 0 if nothing has been written yet
+     */
+    public long getBytesPerSecond() {
+        long elapsedMillis = getElapsedMillis();
+        return (elapsedMillis > 0) ? bytesWritten * 1000 / elapsedMillis : 0;
+    }
+
+    /**
+     * Resets the counters for a new attempt; the transport may write the body more than once (e.g., when retrying).
+     */
+    private Meter start() throws IOException {
+        contentLength = delegate.contentLength();
+        bytesWritten = 0;
+        endNanos = 0;
+        startNanos = System.nanoTime();
+        return new Meter(startNanos);
+    }
+
+    private void finish() {
+        endNanos = System.nanoTime();
+        report();
+    }
+
+    private void report() {
+        long written = bytesWritten;
+        long total = contentLength;
+        long rate = getBytesPerSecond();
+
+        StringBuilder line = new StringBuilder("Uploading ").append(name).append(": ")
+            .append(String.format("%.1f", written / MEGABYTE)).append(" MB");
+        if (total > 0) {
+            line.append(" of ").append(String.format("%.1f", total / MEGABYTE)).append(" MB (")
+                .append(written * 100 / total).append("%)");
+        }
+        line.append(" at ").append(String.format("%.2f", rate / MEGABYTE)).append(" MB/s");
+        if (total > 0 && rate > 0 && written < total) {
+            line.append(", ETA ").append((total - written) / rate).append("s");
+        }
+        console.printLine(line.toString());
+    }
+
+    /**
+     * Counts the bytes of one attempt and prints a progress line whenever {@link #reportInterval} has passed.
+     */
+    private final class Meter {
+        private final long intervalNanos = reportInterval * 1_000_000_000L;
+        private long nextReportNanos;
+
+        Meter(long startNanos) {
+            nextReportNanos = startNanos + intervalNanos;
+        }
+
+        void count(long byteCount) {
+            bytesWritten += byteCount;
+
+            long now = System.nanoTime();
+            if (now >= nextReportNanos) {
+                nextReportNanos = now + intervalNanos;
+                report();
+            }
+        }
+    }
+
+    private static final class CountingChannel implements WritableByteChannel {
+        private final WritableByteChannel out;
+        private final Meter meter;
+
+        CountingChannel(WritableByteChannel out, Meter meter) {
+            this.out = out;
+            this.meter = meter;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = out.write(src);
+            meter.count(written);
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return out.isOpen();
+        }
+
+        // the underlying channel belongs to the transport
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class CountingStream extends FilterOutputStream {
+        private final Meter meter;
+
+        CountingStream(OutputStream out, Meter meter) {
+            super(out);
+            this.meter = meter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            meter.count(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            meter.count(len);
+        }
+
+        // the underlying stream belongs to the transport
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RecordingTransport sends requests through another transport and appends every exchange to a {@link Cassette}.
+ * Response bodies are read completely (up to {@link ApiResponse#maxBodyBytes}) before the response is returned, so
+ * the recorded latency is the time until the whole response was received.  Calls that fail without a response are
+ * recorded as failures.  Problems writing the cassette are logged and do not affect the job.
+ */
+public class RecordingTransport implements HttpTransport {
+    private static final ReentrantLock WRITE_LOCK = new ReentrantLock();
+
+    private final HttpTransport delegate;
+    private final Path file;
+
+    public RecordingTransport(HttpTransport delegate, Path file) {
+        this.delegate = delegate;
+        this.file = file;
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public ApiResponse execute(ApiRequest request, CancellationToken cancellation, String description) throws IOException {
+        long requestBytes = (request.content() != null) ? request.content().contentLength() : 0;
+        long start = System.nanoTime();
+        String body;
+        ApiResponse recorded;
+        try (ApiResponse response = delegate.execute(request, cancellation, description)) {
+            body = response.body().string();
+            recorded = new ApiResponse(response.code(), response.headers(),
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), null);
+        }
+        catch (IOException e) {
+            record(Cassette.failure(request, requestBytes, e, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)), description);
+            throw e;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        record(Cassette.exchange(request, requestBytes, recorded.code(), recorded.headers(), body, elapsedMillis), description);
+        return recorded;
+    }
+
+    private void record(Cassette.Exchange exchange, String description) {
+        WRITE_LOCK.lock();
+        try {
+            Cassette.append(file, exchange);
+        }
+        catch (IOException e) {
+            TaskPlugin.LOGGER.warn("Unable to record " + description + " in cassette " + file + ": " + e.getLocalizedMessage());
+        }
+        finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReplayTransport answers requests from a {@link Cassette} instead of the server.  Requests are matched by method,
+ * path and query; exchanges with the same key are served in the order they were recorded, and once they are used up
+ * the last one is served again (e.g., to a status poll that runs longer than in the recorded run).  Each response is
+ * delayed by its recorded latency multiplied by the time scale; calls that failed without a response fail again, so
+ * retries and failover are replayed too.  Request bodies are written to nowhere, so uploads still read their files,
+ * compute checksums and report progress.  The waits of a job between status checks are scaled the same way (see
+ * {@link #scale(long)}).
+ */
+public class ReplayTransport implements HttpTransport {
+    public static final String REPLAY = "replay";
+
+    private final Map<String, Deque<Cassette.Exchange>> exchanges = new HashMap<>();
+    private final Map<String, Cassette.Exchange> lastServed = new HashMap<>();
+    private final double timeScale;
+    private final AtomicLong served = new AtomicLong();
+
+    // requests answered by all replays in this JVM, for runners that do not see the transport of a job
+    private static final AtomicLong TOTAL_SERVED = new AtomicLong();
+
+    public ReplayTransport(List<Cassette.Exchange> recorded, double timeScale) {
+        for (Cassette.Exchange exchange : recorded) {
+            exchanges.computeIfAbsent(exchange.key(), key -> new ArrayDeque<>()).add(exchange);
+        }
+        this.timeScale = Math.max(0, timeScale);
+    }
+
+    @Override
+    public String name() {
+        return REPLAY;
+    }
+
+    /**
+     * @return number of requests answered so far
+     */
+    public long getServed() {
+        return served.get();
+    }
+
+    /**
+     * @return number of requests answered so far by all replay transports
+     */
+    public static long getTotalServed() {
+        return TOTAL_SERVED.get();
+    }
+
+    /**
+     * @return {@code millis} multiplied by the time scale of the replay
+     */
+    public long scale(long millis) {
+        return Math.round(millis * timeScale);
+    }
+
+    @Override
+    public ApiResponse execute(ApiRequest request, CancellationToken cancellation, String description) throws IOException {
+        cancellation.throwIfCancelled();
+        if (request.content() != null) {
+            request.content().writeTo(OutputStream.nullOutputStream());
+        }
+
+        Cassette.Exchange exchange = next(Cassette.Exchange.key(request.method(), Cassette.path(request)));
+        if (exchange == null) {
+            throw new IOException("No recorded exchange for " + request.method() + " " + request.path());
+        }
+        try {
+            cancellation.sleep(scale(exchange.elapsedMillis), description);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while " + description);
+        }
+        cancellation.throwIfCancelled();
+        served.incrementAndGet();
+        TOTAL_SERVED.incrementAndGet();
+        if (exchange.error != null) {
+            String message = "Replayed failure: " + exchange.error;
+            throw exchange.connectFailure ? new ConnectException(message) : new IOException(message);
+        }
+
+        Map<String, List<String>> headers = new HashMap<>();
+        if (exchange.headers != null) {
+            for (Map.Entry<String, String> header : exchange.headers.entrySet()) {
+                headers.put(header.getKey(), Collections.singletonList(header.getValue()));
+            }
+        }
+        byte[] body = (exchange.body != null) ? exchange.body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        return new ApiResponse(exchange.code, headers, new ByteArrayInputStream(body), null);
+    }
+
+    private synchronized Cassette.Exchange next(String key) {
+        Deque<Cassette.Exchange> queue = exchanges.get(key);
+        Cassette.Exchange exchange = (queue != null) ? queue.poll() : null;
+        if (exchange != null) {
+            lastServed.put(key, exchange);
+            return exchange;
+        }
+        return lastServed.get(key);
+    }
+}
@@ -0,0 +1,168 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ReportCache keeps downloaded assessment reports on the agent host, so re-runs of a job or stage that end up with the
+ * same assessment do not download its report again.  Reports are only downloaded once the assessment is done, and a
+ * completed assessment's report does not change, so a cached report never needs revalidation.
+ *
+ * <p>Reports are keyed by server (the base URL the report is downloaded from), assessment ID and format and kept in the cache directory ({@code zscan.reportcache.dir}
+ * system property, {@code ZSCAN_REPORT_CACHE_DIR} environment variable, or {@code ~/.zscan/reports}).  The total size
+ * is bounded by {@code zscan.reportcache.maxSize} / {@code ZSCAN_REPORT_CACHE_MAX_SIZE} (megabytes, default
+ * {@link #defaultMaxSize}; 0 disables the cache); least recently used reports are evicted first, using the
+ * modification time of the cached file as the time of last use.</p>
+ *
+ * <p>Several agent processes may share the cache directory.  Every operation holds an exclusive lock on
+ * {@value #LOCK} in the cache directory, and reports are written to a temporary file that is renamed into place, so
+ * a report is never seen half-written.  Reports are copied into the working directory rather than linked, so neither
+ * the cache's bookkeeping nor later steps of a job that modify the report can affect the other copy.</p>
+ */
+public class ReportCache {
+    public static final String DIRECTORY_PROPERTY = "zscan.reportcache.dir";
+    public static final String DIRECTORY_ENV = "ZSCAN_REPORT_CACHE_DIR";
+    public static final String MAX_SIZE_PROPERTY = "zscan.reportcache.maxSize";
+    public static final String MAX_SIZE_ENV = "ZSCAN_REPORT_CACHE_MAX_SIZE";
+    public final static long defaultMaxSize = 256;
+
+    static final String LOCK = ".lock";
+    private static final String REPORT_EXTENSION = ".report";
+
+    private final Path directory;
+    private final long maxSize;
+
+    public ReportCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cache in the configured directory, or {@code null} if the cache is disabled
+     */
+    public static ReportCache open() {
+        String configuredSize = System.getProperty(MAX_SIZE_PROPERTY, System.getenv(MAX_SIZE_ENV));
+        long maxSize = defaultMaxSize;
+        if (configuredSize != null && !configuredSize.trim().isEmpty()) {
+            try {
+                maxSize = Long.parseLong(configuredSize.trim());
+            }
+            catch (NumberFormatException e) {
+                TaskPlugin.LOGGER.warn("Invalid report cache size " + configuredSize + "; using " + defaultMaxSize + "MB");
+            }
+        }
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        String configured = System.getProperty(DIRECTORY_PROPERTY, System.getenv(DIRECTORY_ENV));
+        Path directory = (configured == null || configured.trim().isEmpty())
+            ? Paths.get(System.getProperty("user.home"), ".zscan", "reports")
+            : Paths.get(configured.trim());
+        return new ReportCache(directory, maxSize * 1024 * 1024);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Places the cached report into {@code target}, replacing it.
+     *
+     * @return {@code true} if the report was cached, {@code false} if it has to be downloaded
+     */
+    public boolean fetch(String baseUrl, String assessmentId, String format, Path target) throws IOException {
+        Path cached = reportPath(baseUrl, assessmentId, format);
+        if (!Files.exists(cached)) {
+            return false;
+        }
+
+        try (SharedFileLock lock = lock()) {
+            if (!Files.exists(cached)) {
+                // evicted by another agent in the meantime
+                return false;
+            }
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+            place(cached, target);
+            return true;
+        }
+    }
+
+    /**
+     * Adds a downloaded report to the cache and evicts the least recently used reports if the cache is full.
+     * Reports larger than the cache are not stored.
+     */
+    public void store(String baseUrl, String assessmentId, String format, Path report) throws IOException {
+        if (Files.size(report) > maxSize) {
+            return;
+        }
+
+        Path cached = reportPath(baseUrl, assessmentId, format);
+        try (SharedFileLock lock = lock()) {
+            Path temporary = Files.createTempFile(directory, ".store", ".tmp");
+            try {
+                Files.copy(report, temporary, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporary, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                Files.deleteIfExists(temporary);
+            }
+            evict();
+        }
+    }
+
+    // caller holds the lock
+    private void evict() throws IOException {
+        List<Path> reports = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + REPORT_EXTENSION)) {
+            for (Path report : stream) {
+                reports.add(report);
+                total += Files.size(report);
+            }
+        }
+        if (total <= maxSize) {
+            return;
+        }
+
+        reports.sort(Comparator.comparingLong(ReportCache::lastUsed));
+        for (Path report : reports) {
+            if (total <= maxSize) {
+                break;
+            }
+            long size = Files.size(report);
+            Files.deleteIfExists(report);
+            total -= size;
+        }
+    }
+
+    private static long lastUsed(Path report) {
+        try {
+            return Files.getLastModifiedTime(report).toMillis();
+        }
+        catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void place(Path cached, Path target) throws IOException {
+        Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private SharedFileLock lock() throws IOException {
+        Files.createDirectories(directory);
+        return SharedFileLock.acquire(directory.resolve(LOCK));
+    }
+
+    Path reportPath(String baseUrl, String assessmentId, String format) {
+        return directory.resolve(Digests.sha256Hex(baseUrl + "\n" + assessmentId + "\n" + format).substring(0, 40) + REPORT_EXTENSION);
+    }
+}
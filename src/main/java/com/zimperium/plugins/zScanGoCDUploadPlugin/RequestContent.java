@@ -0,0 +1,93 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RequestContent is the body of an {@link ApiRequest}.  It is independent of the HTTP client in use: each
+ * {@link HttpTransport} adapts it to its own body type and lets it write straight to the connection, so large
+ * bodies are streamed rather than held in memory.
+ *
+ * <p>{@link #writeTo(OutputStream)} may be called more than once (e.g., when the client retries a request) and
+ * must produce the same bytes every time.  Transports that can accept {@link ByteBuffer}s call
+ * {@link #writeTo(WritableByteChannel)} instead, which lets file content be sent from direct or memory-mapped
+ * buffers (see {@link FileChannelContent}).</p>
+ */
+public interface RequestContent {
+    int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @return value of the Content-Type header
+     */
+    String contentType();
+
+    /**
+     * @return number of bytes {@link #writeTo(OutputStream)} writes, or -1 if it is not known in advance
+     */
+    long contentLength() throws IOException;
+
+    /**
+     * Writes the content to {@code out}.  Implementations must not close {@code out}.
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Writes the content to {@code out}; the same bytes as {@link #writeTo(OutputStream)}.  The default adapts the
+     * channel to a stream; content that holds its bytes in buffers (or wraps such content) overrides this to pass
+     * the buffers on without copying them into byte arrays.  Implementations must not close {@code out}.
+     */
+    default void writeTo(WritableByteChannel out) throws IOException {
+        OutputStream stream = Channels.newOutputStream(out);
+        writeTo(stream);
+        stream.flush();
+    }
+
+    /**
+     * Writes all remaining bytes of {@code buffer} to {@code out}.
+     */
+    static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * @return content consisting of the UTF-8 encoding of {@code text}
+     */
+    static RequestContent of(String text, String contentType) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return new RequestContent() {
+            @Override
+            public String contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(bytes);
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel out) throws IOException {
+                writeFully(out, ByteBuffer.wrap(bytes));
+            }
+        };
+    }
+
+    /**
+     * @return content read from {@code file} each time it is written
+     */
+    static RequestContent of(File file, String contentType) {
+        return new FileChannelContent(file, contentType);
+    }
+}
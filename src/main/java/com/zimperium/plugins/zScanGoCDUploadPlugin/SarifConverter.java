@@ -0,0 +1,157 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SarifConverter turns a JSON assessment report into a SARIF 2.1.0 log, so a single downloaded report can serve
+ * both formats.
+ *
+ * <p>Findings are streamed from the JSON report with {@link FindingsReader} and written out as SARIF results
+ * immediately; memory use does not grow with the number of findings.  Only one entry per distinct rule is kept
+ * to produce the rule index, which is written after the results (SARIF does not prescribe property order).</p>
+ */
+public class SarifConverter {
+    public static final String SARIF_VERSION = "2.1.0";
+    public static final String SARIF_SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+    public static final String toolName = "zScan";
+    public static final String toolUri = "https://www.zimperium.com/zscan/";
+
+    /**
+     * Converts the JSON report in {@code jsonReport} and writes the SARIF log to {@code sarifReport}.
+     *
+     * A partially written log is removed if the conversion fails.
+     *
+     * @return number of findings converted
+     * @throws IOException if the report cannot be read or has no findings array, or the SARIF log cannot be written
+     */
+    public long convert(Path jsonReport, Path sarifReport) throws IOException {
+        try (Reader in = Files.newBufferedReader(jsonReport, StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(sarifReport, StandardCharsets.UTF_8)) {
+            return convert(in, out);
+        }
+        catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(sarifReport);
+            throw e;
+        }
+    }
+
+    /**
+     * @throws IOException if the report has no findings array: an unrecognized report layout must not turn into an
+     *                     empty log
+     */
+    public long convert(Reader in, Writer out) throws IOException {
+        // rule id -> { title, description, category }
+        Map<String, String[]> rules = new LinkedHashMap<>();
+        long count = 0;
+
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("$schema").value(SARIF_SCHEMA);
+        writer.name("version").value(SARIF_VERSION);
+        writer.name("runs").beginArray();
+        writer.beginObject();
+
+        writer.name("results").beginArray();
+        try (FindingsReader findings = new FindingsReader(in)) {
+            Finding finding;
+            while ((finding = findings.next()) != null) {
+                String ruleId = finding.getRuleId();
+                rules.putIfAbsent(ruleId, new String[] { finding.getTitle(), finding.getDescription(), finding.getCategory() });
+                writeResult(writer, finding, ruleId);
+                count++;
+            }
+            if (!findings.hasFindingsArray()) {
+                throw new IOException("the report has no findings array");
+            }
+        }
+        writer.endArray();
+
+        writer.name("tool").beginObject();
+        writer.name("driver").beginObject();
+        writer.name("name").value(toolName);
+        writer.name("informationUri").value(toolUri);
+        writer.name("rules").beginArray();
+        for (Map.Entry<String, String[]> rule : rules.entrySet()) {
+            writeRule(writer, rule.getKey(), rule.getValue());
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.endObject();
+
+        writer.endObject();
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+
+        return count;
+    }
+
+    private void writeResult(JsonWriter writer, Finding finding, String ruleId) throws IOException {
+        writer.beginObject();
+        writer.name("ruleId").value(ruleId);
+        writer.name("level").value(toLevel(finding.getSeverity()));
+        writer.name("message").beginObject().name("text").value(finding.getTitle()).endObject();
+
+        if (!finding.getLocation().isEmpty()) {
+            writer.name("locations").beginArray().beginObject()
+                .name("physicalLocation").beginObject()
+                .name("artifactLocation").beginObject().name("uri").value(finding.getLocation()).endObject()
+                .endObject()
+                .endObject().endArray();
+        }
+
+        writer.name("properties").beginObject();
+        if (!finding.getId().isEmpty()) {
+            writer.name("findingId").value(finding.getId());
+        }
+        if (!finding.getSeverity().isEmpty()) {
+            writer.name("severity").value(finding.getSeverity());
+        }
+        if (!finding.getCategory().isEmpty()) {
+            writer.name("category").value(finding.getCategory());
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    private void writeRule(JsonWriter writer, String ruleId, String[] rule) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(ruleId);
+        writer.name("shortDescription").beginObject().name("text").value(rule[0]).endObject();
+        if (!rule[1].isEmpty()) {
+            writer.name("fullDescription").beginObject().name("text").value(rule[1]).endObject();
+        }
+        if (!rule[2].isEmpty()) {
+            writer.name("properties").beginObject().name("category").value(rule[2]).endObject();
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Maps a zScan severity to a SARIF result level.
+     */
+    static String toLevel(String severity) {
+        switch (severity) {
+            case "critical":
+            case "high":
+                return "error";
+            case "medium":
+                return "warning";
+            case "low":
+            case "info":
+            case "informational":
+                return "note";
+            default:
+                return "warning";
+        }
+    }
+}
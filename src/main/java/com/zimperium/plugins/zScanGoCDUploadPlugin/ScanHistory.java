@@ -0,0 +1,153 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * ScanHistory remembers how long zScan took to assess each application and how fast binaries were uploaded from this
+ * host, so the {@link UploadScheduler} can estimate how long the binaries of a job will take.
+ *
+ * <p>Durations are kept as exponentially weighted moving averages in a properties file shared by all agents on the
+ * host ({@code zscan.history.file} system property, {@code ZSCAN_HISTORY_FILE} environment variable, or
+ * {@code ~/.zscan/scan-history.properties}).  Observations are collected in memory and merged into the file by
+ * {@link #save()} under an exclusive lock, so concurrent agents do not overwrite each other's updates.</p>
+ */
+public class ScanHistory {
+    public static final String FILE_PROPERTY = "zscan.history.file";
+    public static final String FILE_ENV = "ZSCAN_HISTORY_FILE";
+
+    public final static long defaultScanMillis = 5 * 60 * 1000;
+    public final static long defaultUploadBytesPerSecond = 2 * 1024 * 1024;
+
+    private static final double WEIGHT = 0.3;
+    private static final String SCAN_PREFIX = "scan.";
+    private static final String UPLOAD_RATE = "upload.bytesPerSecond";
+
+    private final Path file;
+    private final Properties history = new Properties();
+    private final Map<String, Long> observations = new HashMap<>();
+
+    public ScanHistory(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the history in the configured file; observations of earlier jobs are loaded if the file exists
+     */
+    public static ScanHistory open() {
+        String configured = System.getProperty(FILE_PROPERTY, System.getenv(FILE_ENV));
+        Path file = (configured == null || configured.trim().isEmpty())
+            ? Paths.get(System.getProperty("user.home"), ".zscan", "scan-history.properties")
+            : Paths.get(configured.trim());
+
+        ScanHistory scanHistory = new ScanHistory(file);
+        try {
+            scanHistory.load(scanHistory.history);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            TaskPlugin.LOGGER.warn("Unable to read scan history " + file + ": " + e.getLocalizedMessage());
+        }
+        return scanHistory;
+    }
+
+    /**
+     * @return key identifying the application of a binary across builds
+     */
+    public static String applicationKey(File binary, BinaryInfo info) {
+        return info.getType() + ":" + (info.getPackageId().isEmpty() ? binary.getName() : info.getPackageId());
+    }
+
+    /**
+     * @return expected time from the end of the upload until the assessment is done, in milliseconds
+     */
+    public synchronized long getExpectedScanMillis(String applicationKey) {
+        return getLong(history, SCAN_PREFIX + applicationKey, defaultScanMillis);
+    }
+
+    public synchronized long getUploadBytesPerSecond() {
+        return Math.max(1, getLong(history, UPLOAD_RATE, defaultUploadBytesPerSecond));
+    }
+
+    public synchronized void recordScan(String applicationKey, long millis) {
+        observations.put(SCAN_PREFIX + applicationKey, millis);
+        history.setProperty(SCAN_PREFIX + applicationKey, Long.toString(average(history, SCAN_PREFIX + applicationKey, millis)));
+    }
+
+    public synchronized void recordUpload(long bytes, long millis) {
+        if (bytes <= 0 || millis <= 0) {
+            return;
+        }
+        long bytesPerSecond = bytes * 1000 / millis;
+        observations.put(UPLOAD_RATE, bytesPerSecond);
+        history.setProperty(UPLOAD_RATE, Long.toString(average(history, UPLOAD_RATE, bytesPerSecond)));
+    }
+
+    /**
+     * Merges the observations of this job into the history file.
+     */
+    public void save() throws IOException {
+        Map<String, Long> pending;
+        synchronized (this) {
+            if (observations.isEmpty()) {
+                return;
+            }
+            pending = new HashMap<>(observations);
+            observations.clear();
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (SharedFileLock lock = SharedFileLock.acquire(file.resolveSibling(file.getFileName() + ".lock"))) {
+            // the file may have been updated by another agent since it was loaded
+            Properties merged = new Properties();
+            load(merged);
+            for (Map.Entry<String, Long> observation : pending.entrySet()) {
+                merged.setProperty(observation.getKey(), Long.toString(average(merged, observation.getKey(), observation.getValue())));
+            }
+
+            Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temporary)) {
+                    merged.store(out, "zScan plugin scan history");
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    private void load(Properties target) throws IOException {
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                target.load(in);
+            }
+        }
+    }
+
+    private static long average(Properties properties, String key, long observation) {
+        String previous = properties.getProperty(key);
+        if (previous == null) {
+            return observation;
+        }
+        return Math.round(WEIGHT * observation + (1 - WEIGHT) * getLong(properties, key, observation));
+    }
+
+    private static long getLong(Properties properties, String key, long defaultValue) {
+        try {
+            return Long.parseLong(properties.getProperty(key, Long.toString(defaultValue)));
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
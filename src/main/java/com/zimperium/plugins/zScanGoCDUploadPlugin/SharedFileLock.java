@@ -0,0 +1,63 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SharedFileLock guards files that several agent processes on a host may share (the findings baselines, the report
+ * cache and the scan history): it holds an exclusive {@link FileChannel} lock on a lock file, together with a lock
+ * that serializes the threads of this JVM.
+ *
+ * <p>FileChannel locks are held per JVM, so threads of this JVM are serialized per lock file first.  That is a
+ * {@link ReentrantLock} rather than a monitor, so virtual threads waiting for another agent's file lock do not pin
+ * their carrier thread.  The lock must be closed by the thread that acquired it.</p>
+ */
+final class SharedFileLock implements AutoCloseable {
+    private static final ConcurrentMap<Path, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final ReentrantLock jvmLock;
+    private final FileChannel channel;
+
+    private SharedFileLock(ReentrantLock jvmLock, FileChannel channel) {
+        this.jvmLock = jvmLock;
+        this.channel = channel;
+    }
+
+    /**
+     * Waits until this thread holds the lock on {@code lockFile}, which is created if it does not exist.
+     */
+    static SharedFileLock acquire(Path lockFile) throws IOException {
+        ReentrantLock jvmLock = JVM_LOCKS.computeIfAbsent(lockFile.toAbsolutePath().normalize(), path -> new ReentrantLock());
+        jvmLock.lock();
+        try {
+            FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                channel.lock();
+                return new SharedFileLock(jvmLock, channel);
+            }
+            catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            jvmLock.unlock();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        }
+        finally {
+            jvmLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * StatusSnapshot is what the plugin keeps of the assessment status of a build between polls: the scan status, the
+ * assessment ID, and the validators ({@code ETag}, {@code Last-Modified}) the server sent with the last status.
+ *
+ * <p>The next poll sends the validators as {@code If-None-Match} and {@code If-Modified-Since}.  If the server answers
+ * 304 Not Modified, the snapshot stands and no body is transferred or parsed; servers that do not send validators
+ * are polled unconditionally, as before.  The snapshot also counts the polls of the build and the bytes of status
+ * received (and parsed), so the savings are visible.</p>
+ */
+public class StatusSnapshot {
+    private final String buildId;
+
+    private String etag;
+    private String lastModified;
+    private String analysis;
+    private String assessmentId;
+
+    private int polls;
+    private int notModified;
+    private long bytes;
+
+    public StatusSnapshot(String buildId) {
+        this.buildId = buildId;
+    }
+
+    /**
+     * Makes the request conditional on the status having changed since this snapshot was taken.
+     */
+    public ApiRequest.Builder addConditions(ApiRequest.Builder builder) {
+        if (analysis != null) {
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Updates the snapshot from a successful (2xx) or Not Modified (304) status response, and closes the response.
+     *
+     * @return {@code true} if the response had a body; {@code false} if the status has not changed
+     * @throws IOException if the body cannot be read
+     * @throws RuntimeException if the body is not a status
+     */
+    public boolean update(ApiResponse response) throws IOException {
+        polls++;
+        if (response.code() == 304 && analysis != null) {
+            response.close();
+            notModified++;
+            TaskPlugin.metrics().statusNotModified.increment();
+            return false;
+        }
+
+        String json;
+        try (ApiResponse.Body body = response.body()) {
+            json = body.string();
+            bytes += body.bytesRead();
+            TaskPlugin.metrics().statusBytes.add(body.bytesRead());
+        }
+
+        JsonObject statusObject = JsonParser.parseString(json).getAsJsonObject();
+        analysis = statusObject.getAsJsonObject("zdevMetadata").get("analysis").getAsString();
+        JsonElement id = statusObject.get("id");
+        assessmentId = (id != null && !id.isJsonNull()) ? id.getAsString() : null;
+        etag = response.header("ETag");
+        lastModified = response.header("Last-Modified");
+        return true;
+    }
+
+    public String getBuildId() {
+        return buildId;
+    }
+
+    /**
+     * @return status of the analysis (e.g., {@code Done}), or {@code null} if no status has been received yet
+     */
+    public String getAnalysis() {
+        return analysis;
+    }
+
+    public String getAssessmentId() {
+        return assessmentId;
+    }
+
+    public int getPolls() {
+        return polls;
+    }
+
+    public int getNotModified() {
+        return notModified;
+    }
+
+    /**
+     * @return bytes of status received and parsed
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return polls + " status polls of build " + buildId + ", " + notModified + " not modified; "
+            + bytes + " bytes of status received and parsed";
+    }
+}
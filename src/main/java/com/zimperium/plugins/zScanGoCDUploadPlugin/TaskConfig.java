@@ -30,6 +30,11 @@ public class TaskConfig {
     private final String teamName;
     private final String inputFileName;
     private final String reportFormat;
+    private final HttpTransport transport;
+    private final boolean outboxEnabled;
+    private final boolean ndjsonExport;
+    private final boolean eventLogEnabled;
+    private final String job;
 
     // managed internally for now
     private final boolean waitForReport = true;
@@ -37,8 +42,9 @@ public class TaskConfig {
 
     private URLBuilder urlBuilder;
     private APITaskExecutor apiTaskExecutor;
+    private EventLog eventLog = EventLog.DISABLED;
 
-    public TaskConfig(Map<String, Object> config, Context context, JobConsoleLogger console) {
+    public TaskConfig(Map<String, Object> config, Context context, JobConsoleLogger console, CancellationToken cancellation) {
         @SuppressWarnings("unchecked")
         StringSubstitutor sub = new StringSubstitutor(context.getEnvironmentVariables());
 
@@ -48,9 +54,17 @@ public class TaskConfig {
         teamName = getValue(config, sub, TaskPlugin.TEAM_PROPERTY);
         inputFileName = getValue(config, sub, TaskPlugin.INPUT_PROPERTY);
         reportFormat = getValue(config, sub, TaskPlugin.REPORT_FORMAT_PROPERTY);
+        // recorded or replayed if the agent is set up to (see Cassette)
+        transport = Cassette.configure(HttpTransport.forName(getValue(config, sub, TaskPlugin.HTTP_CLIENT_PROPERTY, TaskPlugin.DEFAULT_HTTP_CLIENT)));
+        outboxEnabled = TaskPlugin.OUTBOX_ENABLED.equals(getValue(config, sub, TaskPlugin.OUTBOX_PROPERTY, TaskPlugin.OUTBOX_DISABLED));
+        ndjsonExport = TaskPlugin.EXPORT_NDJSON.equals(getValue(config, sub, TaskPlugin.EXPORT_PROPERTY, TaskPlugin.EXPORT_DISABLED));
+        eventLogEnabled = TaskPlugin.EVENT_LOG_ENABLED.equals(getValue(config, sub, TaskPlugin.EVENT_LOG_PROPERTY, TaskPlugin.EVENT_LOG_DISABLED));
+
+        job = PluginEvents.job(context);
 
         urlBuilder = new URLBuilder(serverUrl);
-        apiTaskExecutor = new APITaskExecutor(urlBuilder, console);
+        apiTaskExecutor = new APITaskExecutor(urlBuilder, console, cancellation, transport);
+        apiTaskExecutor.setJob(job);
     }
 
     private String getValue(Map<String, Object> config, StringSubstitutor sub, String property) {
@@ -59,6 +73,40 @@ public class TaskConfig {
         return sub.replace(value);
     }
 
+    /**
+     * Same as {@link #getValue(Map, StringSubstitutor, String)}, but for settings added after tasks may already
+     * have been configured: returns {@code defaultValue} if the task configuration does not have the property or
+     * its value is empty.
+     */
+    private String getValue(Map<String, Object> config, StringSubstitutor sub, String property, String defaultValue) {
+        @SuppressWarnings("rawtypes")
+        Map setting = (Map) config.get(property);
+        Object value = (setting != null) ? setting.get("value") : null;
+        if (value == null || value.toString().trim().isEmpty()) {
+            return defaultValue;
+        }
+        return sub.replace(value.toString());
+    }
+
+    /**
+     * @return the GoCD job this task runs in (see {@link PluginEvents#job(Context)})
+     */
+    public String getJob() {
+        return job;
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * Sets the event log the job records its API calls and state changes in.
+     */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+        apiTaskExecutor.setEventLog(eventLog);
+    }
+
     public String getServerUrl() {
         return serverUrl;
     }
@@ -83,10 +131,54 @@ public class TaskConfig {
         return reportFormat;
     }
 
+    /**
+     * @return format of the report to download from the server; when both formats are requested, only the JSON
+     *         report is downloaded and the SARIF report is produced locally
+     */
+    public String getDownloadFormat() {
+        return shouldConvertToSarif() ? "json" : reportFormat;
+    }
+
+    public boolean shouldConvertToSarif() {
+        return TaskPlugin.BOTH_REPORT_FORMATS.equals(reportFormat);
+    }
+
     public String getReportFileName(String assessmentId, String reportFormat) {
         return reportFileName + "-" + assessmentId + "-" + reportFormat + ".json";
     }
 
+    /**
+     * @return name of the newline-delimited JSON export of the findings of an assessment
+     */
+    public String getExportFileName(String assessmentId) {
+        return reportFileName + "-" + assessmentId + "-findings" + NdjsonExporter.EXTENSION;
+    }
+
+    /**
+     * @return {@code true} if the findings should be exported as newline-delimited JSON (see {@link NdjsonExporter})
+     */
+    public boolean shouldExportNdjson() {
+        return ndjsonExport;
+    }
+
+    /**
+     * @return {@code true} if the job should write an {@link EventLog} to its working directory
+     */
+    public boolean isEventLogEnabled() {
+        return eventLogEnabled;
+    }
+
+    /**
+     * @return {@code true} if binaries should be added to the {@link Outbox} when the server is unreachable
+     */
+    public boolean isOutboxEnabled() {
+        return outboxEnabled;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
     public URLBuilder getURLBuilder() {
         return urlBuilder;
     }
@@ -27,7 +27,10 @@ import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Extension
 public class TaskPlugin implements GoPlugin {
@@ -40,28 +43,96 @@ public class TaskPlugin implements GoPlugin {
     public static final String INPUT_PROPERTY = "InputFile";
     public static final String REPORT_FORMAT_PROPERTY = "ReportFormat";
     public static final String DEFAULT_REPORT_FORMAT = "json";
+    public static final String BOTH_REPORT_FORMATS = "both";
+    public static final String HTTP_CLIENT_PROPERTY = "HttpClient";
+    public static final String DEFAULT_HTTP_CLIENT = HttpTransport.OKHTTP;
+    public static final String OUTBOX_PROPERTY = "Outbox";
+    public static final String OUTBOX_DISABLED = "disabled";
+    public static final String OUTBOX_ENABLED = "enabled";
+    public static final String PREFLIGHT_PROPERTY = "Preflight";
+    public static final String PREFLIGHT_DISABLED = "disabled";
+    public static final String PREFLIGHT_ENABLED = "enabled";
+    public static final String EXPORT_PROPERTY = "FindingsExport";
+    public static final String EXPORT_DISABLED = "disabled";
+    public static final String EXPORT_NDJSON = "ndjson";
+    public static final String EVENT_LOG_PROPERTY = "EventLog";
+    public static final String EVENT_LOG_DISABLED = "disabled";
+    public static final String EVENT_LOG_ENABLED = "enabled";
 
-    
-    public static final Gson GSON = new GsonBuilder().serializeNulls().create();
+    // when the plugin classes were loaded; used to report start-up latency
+    private static final long LOAD_TIME = System.nanoTime();
+    // request types that have been answered at least once
+    private static final Set<String> ANSWERED_REQUESTS = ConcurrentHashMap.newKeySet();
 
     public static Logger LOGGER = Logger.getLoggerFor(TaskPlugin.class);
 
+    // the request handlers are stateless and shared by all requests
+    private final GetConfigRequest configRequest = new GetConfigRequest();
+    private final ValidateRequest validateRequest = new ValidateRequest();
+    private final GetViewRequest viewRequest = new GetViewRequest();
+
+    /**
+     * Gson is created on first use, so loading the plugin does not pay for it.
+     */
+    private static final class GsonHolder {
+        static final Gson GSON = new GsonBuilder().serializeNulls().create();
+    }
+
+    public static Gson gson() {
+        return GsonHolder.GSON;
+    }
+
+    /**
+     * The metrics registry (and its textfile export) is created on first use, i.e., by the first job, so loading
+     * the plugin and answering configuration requests does not pay for it.
+     */
+    private static final class MetricsHolder {
+        static final MetricsRegistry METRICS = create();
+
+        private static MetricsRegistry create() {
+            MetricsRegistry metrics = new MetricsRegistry();
+            Path textfile = metrics.startTextfileExport();
+            if (textfile != null) {
+                LOGGER.info("Writing plugin metrics to " + textfile);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * @return agent-wide statistics; there is one registry per plugin class loader, shared by every job the agent runs
+     */
+    public static MetricsRegistry metrics() {
+        return MetricsHolder.METRICS;
+    }
+
     @Override
     public void initializeGoApplicationAccessor(GoApplicationAccessor goApplicationAccessor) {
     }
 
     @Override
     public GoPluginApiResponse handle(GoPluginApiRequest request) throws UnhandledRequestTypeException {
+        long start = System.nanoTime();
+        GoPluginApiResponse response;
         if ("configuration".equals(request.requestName())) {
-            return new GetConfigRequest().execute();
+            response = configRequest.execute();
         } else if ("validate".equals(request.requestName())) {
-            return new ValidateRequest().execute(request);
+            response = validateRequest.execute(request);
         } else if ("execute".equals(request.requestName())) {
-            return new ExecuteRequest().execute(request);
+            // HTTP client, report handling etc. are only loaded by the first execute request
+            response = new ExecuteRequest().execute(request);
         } else if ("view".equals(request.requestName())) {
-            return new GetViewRequest().execute();
+            response = viewRequest.execute();
+        } else {
+            throw new UnhandledRequestTypeException(request.requestName());
+        }
+
+        if (ANSWERED_REQUESTS.add(request.requestName())) {
+            long end = System.nanoTime();
+            LOGGER.info("First '" + request.requestName() + "' request answered in " + (end - start) / 1_000_000 + "ms, "
+                + (end - LOAD_TIME) / 1_000_000 + "ms after the plugin was loaded");
         }
-        throw new UnhandledRequestTypeException(request.requestName());
+        return response;
     }
 
     @Override
@@ -1,8 +1,19 @@
 package com.zimperium.plugins.zScanGoCDUploadPlugin;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * URLBuilder builds the URLs of the zScan API calls.  The endpoint setting may list several base URLs of the same
+ * console (e.g., regional gateways), separated by commas or white space and in order of preference; all URLs are
+ * built from the currently selected one.  The {@link EndpointSelector} may reorder the base URLs by latency before a
+ * run starts, and {@link #failOver(String)} moves to the next one when the current one cannot be reached, until the
+ * run is {@link #pin() pinned} to its endpoint.
+ */
 public class URLBuilder {
 
-    // API endpoints 
+    // API endpoints
     private final String login_url = "/api/auth/v1/api_keys/login";
     private final String refresh_url = "/api/auth/v1/api_keys/access";
     private final String upload_url = "/api/zdev-upload/public/v1/uploads/build";
@@ -11,15 +22,98 @@ public class URLBuilder {
     private final String complete_upload_url = "/api/zdev-app/public/v1/apps";
     private final String download_assessment_url = "/api/zdev-app/public/v1/assessments";
 
-    private String baseUrl;
+    private final List<String> baseUrls;
+    private List<String> candidates;
+    private int current;
+    private boolean pinned;
+    private volatile String baseUrl;
 
     public URLBuilder(String inBaseUrl) {
-        // make sure the last character is not a /
-        baseUrl = inBaseUrl.trim().replaceAll("/$", "");
+        baseUrls = parse(inBaseUrl);
+        candidates = baseUrls;
+        baseUrl = baseUrls.get(0);
+    }
+
+    /**
+     * @return the base URLs of an endpoint setting, in order; never empty
+     */
+    public static List<String> parse(String endpoints) {
+        List<String> result = new ArrayList<>();
+        for (String endpoint : endpoints.trim().split("[,\\s]+")) {
+            // make sure the last character is not a /
+            String trimmed = endpoint.trim().replaceAll("/$", "");
+            if (!trimmed.isEmpty() && !result.contains(trimmed)) {
+                result.add(trimmed);
+            }
+        }
+        if (result.isEmpty()) {
+            result.add("");
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return the configured base URLs, in the configured order
+     */
+    public List<String> getBaseUrls() {
+        return baseUrls;
+    }
+
+    /**
+     * @return the base URL all URLs are currently built from
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Sets the order in which the base URLs are tried and selects the first one.  Has no effect once the run is
+     * pinned.
+     */
+    public synchronized void select(List<String> ordered) {
+        if (pinned || ordered.isEmpty()) {
+            return;
+        }
+        candidates = new ArrayList<>(ordered);
+        current = 0;
+        baseUrl = candidates.get(0);
+    }
+
+    /**
+     * Keeps all further calls on the current base URL, e.g. once the server has assigned a build ID.
+     */
+    public synchronized void pin() {
+        pinned = true;
+    }
+
+    public synchronized boolean isPinned() {
+        return pinned;
+    }
+
+    /**
+     * Moves on to the next base URL after {@code failedBaseUrl} could not be reached.
+     *
+     * @return {@code true} if the call should be retried with {@link #getBaseUrl()}; {@code false} if the run is
+     *         pinned or all base URLs have been tried
+     */
+    public synchronized boolean failOver(String failedBaseUrl) {
+        if (pinned) {
+            return false;
+        }
+        if (!failedBaseUrl.equals(baseUrl)) {
+            // another call has failed over already
+            return true;
+        }
+        if (current + 1 >= candidates.size()) {
+            return false;
+        }
+        current++;
+        baseUrl = candidates.get(current);
+        return true;
     }
 
     public String getLoginURL() {
-        return baseUrl.concat(login_url); 
+        return baseUrl.concat(login_url);
     }
 
     public String getRefreshURL() {
@@ -0,0 +1,192 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * UploadScheduler runs the upload and scan of the binaries of a job so that the job finishes as early as possible.
+ *
+ * <p>Most of the time spent on a binary is waiting for its assessment, so up to {@link #maxConcurrentScans} binaries
+ * are processed at the same time.  They are started longest expected first: the expected time of a binary is its
+ * size divided by the upload rate observed on this host, plus the time the last assessments of the same application
+ * took (see {@link ScanHistory}).  Starting the longest binaries first keeps a large IPA from being started last
+ * and extending the job by its whole upload and scan time.  When several binaries are processed, every line printed
+ * for a binary starts with its file name (see {@link PrefixedConsoleLogger}), so their output can be told apart.</p>
+ *
+ * <p>An optional time budget for the whole job can be set with the {@code zscan.job.timeBudget} system property or
+ * the {@code ZSCAN_JOB_TIME_BUDGET} environment variable (seconds).  Binaries are not started once the budget is used
+ * up, and the deadline is passed on, so waiting for an assessment ends with the budget.</p>
+ */
+public class UploadScheduler {
+    public final static int maxConcurrentScans = 3;
+    public static final String TIME_BUDGET_PROPERTY = "zscan.job.timeBudget";
+    public static final String TIME_BUDGET_ENV = "ZSCAN_JOB_TIME_BUDGET";
+
+    /**
+     * Uploads and scans one binary.
+     */
+    public interface Job {
+        /**
+         * @param deadline time (as in {@link System#currentTimeMillis()}) by which the job's time budget is used up,
+         *                 or {@link Long#MAX_VALUE}
+         * @param console  console to print the progress of this binary to; its lines are prefixed with the file name
+         *                 if several binaries are processed
+         * @return {@code true} if the binary was processed successfully
+         */
+        boolean run(File binary, BinaryInfo info, long deadline, JobConsoleLogger console) throws Exception;
+    }
+
+    private final ScanHistory history;
+    private final JobConsoleLogger console;
+
+    public UploadScheduler(ScanHistory history, JobConsoleLogger console) {
+        this.history = history;
+        this.console = console;
+    }
+
+    /**
+     * @return expected time to upload and scan a binary, in milliseconds
+     */
+    public long getExpectedMillis(File binary, BinaryInfo info) {
+        return size(binary) * 1000 / history.getUploadBytesPerSecond()
+            + history.getExpectedScanMillis(ScanHistory.applicationKey(binary, info));
+    }
+
+    /**
+     * @return the binaries, longest expected first
+     */
+    public List<Map.Entry<File, BinaryInfo>> order(Map<File, BinaryInfo> binaries) {
+        List<Map.Entry<File, BinaryInfo>> ordered = new ArrayList<>(binaries.entrySet());
+        ordered.sort(Comparator.comparingLong((Map.Entry<File, BinaryInfo> binary) -> getExpectedMillis(binary.getKey(), binary.getValue())).reversed());
+        return ordered;
+    }
+
+    /**
+     * Runs {@code job} for every binary and waits until all of them are done.  If a job throws, binaries that have
+     * not been started yet are skipped and the exception is rethrown once the running jobs are done.
+     *
+     * @return number of binaries processed successfully
+     * @throws InterruptedException if the job thread is interrupted while waiting
+     * @throws CancellationException if the job is cancelled
+     */
+    public int run(Map<File, BinaryInfo> binaries, Job job) throws Exception {
+        List<Map.Entry<File, BinaryInfo>> ordered = order(binaries);
+        long deadline = getDeadline();
+        if (ordered.size() > 1) {
+            List<String> plan = new ArrayList<>();
+            for (Map.Entry<File, BinaryInfo> binary : ordered) {
+                plan.add(binary.getKey().getName() + " (~" + (getExpectedMillis(binary.getKey(), binary.getValue()) / 1000) + "s)");
+            }
+            console.printLine("Processing up to " + maxConcurrentScans + " binaries at a time, in this order: " + String.join(", ", plan));
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger successCount = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            int index;
+            while (failure.get() == null && (index = next.getAndIncrement()) < ordered.size()) {
+                Map.Entry<File, BinaryInfo> binary = ordered.get(index);
+                if (System.currentTimeMillis() >= deadline) {
+                    console.printLine("Job time budget is used up. Skipping " + binary.getKey().getAbsolutePath() + ".");
+                    continue;
+                }
+                JobConsoleLogger binaryConsole = (ordered.size() > 1)
+                    ? PrefixedConsoleLogger.forFile(console, binary.getKey().getName())
+                    : console;
+                try {
+                    if (job.run(binary.getKey(), binary.getValue(), deadline, binaryConsole)) {
+                        successCount.incrementAndGet();
+                    }
+                }
+                catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+
+        int threads = Math.min(maxConcurrentScans, ordered.size());
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads), PluginThreads.factory("zscan-scan"));
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                running.add(workers.submit(worker));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        }
+        catch (ExecutionException e) {
+            // workers catch everything but errors
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            workers.shutdownNow();
+            try {
+                history.save();
+            }
+            catch (IOException | RuntimeException e) {
+                TaskPlugin.LOGGER.warn("Unable to save scan history: " + e.getLocalizedMessage());
+            }
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return successCount.get();
+    }
+
+    private static long getDeadline() {
+        String configured = System.getProperty(TIME_BUDGET_PROPERTY, System.getenv(TIME_BUDGET_ENV));
+        if (configured == null || configured.trim().isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            long budget = Long.parseLong(configured.trim());
+            return (budget > 0) ? System.currentTimeMillis() + budget * 1000 : Long.MAX_VALUE;
+        }
+        catch (NumberFormatException e) {
+            TaskPlugin.LOGGER.warn("Invalid job time budget " + configured + "; ignoring it");
+            return Long.MAX_VALUE;
+        }
+    }
+
+    static long size(File binary) {
+        if (!binary.isDirectory()) {
+            return binary.length();
+        }
+        try (Stream<Path> files = Files.walk(binary.toPath())) {
+            return files.filter(Files::isRegularFile).mapToLong(path -> {
+                try {
+                    return Files.size(path);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        }
+        catch (IOException | UncheckedIOException e) {
+            return 0;
+        }
+    }
+}
@@ -16,7 +16,6 @@
 
 package com.zimperium.plugins.zScanGoCDUploadPlugin;
 
-import com.google.gson.GsonBuilder;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
@@ -29,14 +28,63 @@ public class ValidateRequest {
     public GoPluginApiResponse execute(GoPluginApiRequest request) {
         HashMap<String, Object> validationResult = new HashMap<>();
         int responseCode = DefaultGoPluginApiResponse.SUCCESS_RESPONSE_CODE;
-        Map<String, Object> configMap = (Map<String, Object>) new GsonBuilder().create().fromJson(request.requestBody(), Object.class);
+        Map<String, Object> configMap = (Map<String, Object>) TaskPlugin.gson().fromJson(request.requestBody(), Object.class);
         HashMap<String, String> errorMap = new HashMap<>();
         if (!configMap.containsKey(TaskPlugin.URL_PROPERTY) 
             || ((Map<String, String>) configMap.get(TaskPlugin.URL_PROPERTY)).get("value") == null 
             || ((String) ((Map<String, String>) configMap.get(TaskPlugin.URL_PROPERTY)).get("value")).trim().isEmpty()) {
             errorMap.put(TaskPlugin.URL_PROPERTY, "URL cannot be empty");
         }
+        else if (!CredentialPreflight.isDeferred(getValue(configMap, TaskPlugin.URL_PROPERTY))) {
+            // several base URLs of the same console may be listed
+            for (String baseUrl : URLBuilder.parse(getValue(configMap, TaskPlugin.URL_PROPERTY))) {
+                if (!baseUrl.startsWith("https://") && !baseUrl.startsWith("http://")) {
+                    errorMap.put(TaskPlugin.URL_PROPERTY, "Incorrect url format: " + baseUrl);
+                    break;
+                }
+            }
+        }
+        if (configMap.get(TaskPlugin.HTTP_CLIENT_PROPERTY) != null) {
+            try {
+                HttpTransport.forName(((Map<String, String>) configMap.get(TaskPlugin.HTTP_CLIENT_PROPERTY)).get("value"));
+            }
+            catch (IllegalArgumentException e) {
+                errorMap.put(TaskPlugin.HTTP_CLIENT_PROPERTY, e.getMessage());
+            }
+        }
+        if (errorMap.isEmpty() && TaskPlugin.PREFLIGHT_ENABLED.equals(getValue(configMap, TaskPlugin.PREFLIGHT_PROPERTY))) {
+            preflight(configMap, errorMap);
+        }
         validationResult.put("errors", errorMap);
-        return new DefaultGoPluginApiResponse(responseCode, TaskPlugin.GSON.toJson(validationResult));
+        return new DefaultGoPluginApiResponse(responseCode, TaskPlugin.gson().toJson(validationResult));
+    }
+
+    /**
+     * Test-logs in with the configured endpoint and credentials (see {@link CredentialPreflight}).  Skipped if a
+     * value is missing or refers to a variable that is only known when the job runs.
+     */
+    private void preflight(Map<String, Object> configMap, Map<String, String> errorMap) {
+        String endpoint = getValue(configMap, TaskPlugin.URL_PROPERTY);
+        String clientId = getValue(configMap, TaskPlugin.ID_PROPERTY);
+        String clientSecret = getValue(configMap, TaskPlugin.SECRET_PROPERTY);
+        for (String value : new String[] { endpoint, clientId, clientSecret }) {
+            if (value.trim().isEmpty() || CredentialPreflight.isDeferred(value)) {
+                return;
+            }
+        }
+
+        String httpClient = getValue(configMap, TaskPlugin.HTTP_CLIENT_PROPERTY);
+        HttpTransport transport = HttpTransport.forName(httpClient.isEmpty() ? TaskPlugin.DEFAULT_HTTP_CLIENT : httpClient);
+        CredentialPreflight.Problem problem = CredentialPreflight.INSTANCE.check(endpoint, clientId, clientSecret, transport);
+        if (problem != null) {
+            errorMap.put(problem.getProperty(), problem.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String getValue(Map<String, Object> configMap, String property) {
+        Map<String, Object> setting = (Map<String, Object>) configMap.get(property);
+        Object value = (setting != null) ? setting.get("value") : null;
+        return (value != null) ? value.toString() : "";
     }
 }
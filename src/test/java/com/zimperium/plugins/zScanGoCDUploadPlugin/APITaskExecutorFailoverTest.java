@@ -0,0 +1,119 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class APITaskExecutorFailoverTest {
+    private static final String PRIMARY = "https://primary.zimperium.com";
+    private static final String SECONDARY = "https://secondary.zimperium.com";
+    private static final String LOGIN = "{\"accessToken\":\"a\",\"refreshToken\":\"r\"}";
+
+    /**
+     * Fails every request to {@link #PRIMARY} as configured and answers requests to {@link #SECONDARY}.
+     */
+    private static class FailingPrimary implements HttpTransport {
+        private final int code;
+        private final IOException error;
+        final List<String> sent = new ArrayList<>();
+
+        FailingPrimary(int code, IOException error) {
+            this.code = code;
+            this.error = error;
+        }
+
+        @Override
+        public String name() {
+            return "test";
+        }
+
+        @Override
+        public ApiResponse execute(ApiRequest request, CancellationToken cancellation, String description) throws IOException {
+            sent.add(request.method() + " " + request.url());
+            if (request.url().startsWith(PRIMARY)) {
+                if (error != null) {
+                    throw error;
+                }
+                return response(code, "");
+            }
+            return response(200, LOGIN);
+        }
+    }
+
+    @Test
+    public void failsOverIdempotentRequestsOnGatewayErrors() {
+        FailingPrimary transport = new FailingPrimary(503, null);
+        APITaskExecutor executor = executor(transport);
+
+        try (ApiResponse response = executor.checkStatus("b1")) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(2, transport.sent.size());
+        assertTrue(transport.sent.get(1).startsWith("GET " + SECONDARY));
+    }
+
+    @Test
+    public void doesNotFailOverPostsOnGatewayErrors() {
+        FailingPrimary transport = new FailingPrimary(504, null);
+        APITaskExecutor executor = executor(transport);
+
+        assertFalse(executor.login("id", "secret"));
+        assertEquals(Collections.singletonList("POST " + new URLBuilder(PRIMARY).getLoginURL()), transport.sent);
+    }
+
+    @Test
+    public void doesNotFailOverPostsOnReadTimeouts() {
+        FailingPrimary transport = new FailingPrimary(0, new SocketTimeoutException("timeout"));
+        APITaskExecutor executor = executor(transport);
+
+        assertFalse(executor.login("id", "secret"));
+        assertEquals(1, transport.sent.size());
+        // the server may have processed the request, so it is not treated as unreachable
+        assertFalse(executor.wasServerUnavailable());
+    }
+
+    @Test
+    public void failsOverPostsOnConnectFailures() {
+        FailingPrimary transport = new FailingPrimary(0, new ConnectException("Connection refused"));
+        APITaskExecutor executor = executor(transport);
+
+        assertTrue(executor.login("id", "secret"));
+        assertEquals(2, transport.sent.size());
+        assertTrue(transport.sent.get(1).startsWith("POST " + SECONDARY));
+    }
+
+    @Test
+    public void readTimeoutsOfIdempotentRequestsMarkTheServerUnavailable() {
+        FailingPrimary transport = new FailingPrimary(0, new SocketTimeoutException("timeout"));
+        APITaskExecutor executor = executor(transport);
+
+        assertNull(executor.checkStatus("b1"));
+        assertTrue(executor.wasServerUnavailable());
+    }
+
+    private static APITaskExecutor executor(HttpTransport transport) {
+        JobConsoleLogger console = new JobConsoleLogger() {
+            @Override
+            public void printLine(String line) {
+            }
+        };
+        return new APITaskExecutor(new URLBuilder(PRIMARY + "," + SECONDARY), console, new CancellationToken(), transport);
+    }
+
+    private static ApiResponse response(int code, String body) {
+        return new ApiResponse(code, Collections.emptyMap(), new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), null);
+    }
+}
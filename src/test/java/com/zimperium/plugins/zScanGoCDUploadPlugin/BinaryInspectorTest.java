@@ -0,0 +1,137 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryInspectorTest {
+    private static final String INFO_PLIST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<plist version=\"1.0\"><dict>\n"
+        + "<key>CFBundleIdentifier</key>\n<string>com.example.app</string>\n"
+        + "<key>CFBundleShortVersionString</key>\n<string>1.2.3</string>\n</dict></plist>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void acceptsIpaAndReadsItsMetadata() throws IOException {
+        File ipa = zip("app.ipa", "Payload/App.app/Info.plist", INFO_PLIST, "Payload/App.app/App", "binary");
+
+        BinaryInfo info = new BinaryInspector().inspect(ipa);
+
+        assertTrue(info.isValid());
+        assertEquals("", info.getWarning());
+        assertEquals(BinaryInfo.Type.IPA, info.getType());
+        assertEquals("com.example.app", info.getPackageId());
+        assertEquals("1.2.3", info.getVersion());
+        assertEquals(2, info.getEntryCount());
+    }
+
+    @Test
+    public void acceptsApkWithUnreadableManifest() throws IOException {
+        File apk = zip("app.apk", "AndroidManifest.xml", "not binary XML", "classes.dex", "dex");
+
+        BinaryInfo info = new BinaryInspector().inspect(apk);
+
+        assertTrue(info.isValid());
+        assertEquals(BinaryInfo.Type.APK, info.getType());
+        assertEquals("", info.getPackageId());
+    }
+
+    @Test
+    public void detectsAab() throws IOException {
+        File aab = zip("app.aab", "BundleConfig.pb", "config", "base/manifest/AndroidManifest.xml", "manifest");
+
+        BinaryInfo info = new BinaryInspector().inspect(aab);
+
+        assertTrue(info.isValid());
+        assertEquals(BinaryInfo.Type.AAB, info.getType());
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws IOException {
+        File apk = zip("app.apk", "AndroidManifest.xml", "manifest", "classes.dex", "dex");
+        byte[] bytes = Files.readAllBytes(apk.toPath());
+        Files.write(apk.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+        BinaryInfo info = new BinaryInspector().inspect(apk);
+
+        assertFalse(info.isValid());
+        assertTrue(info.getProblem(), info.getProblem().contains("end of central directory"));
+    }
+
+    @Test
+    public void rejectsPackageOfTheWrongType() throws IOException {
+        File apk = zip("app.apk", "Payload/App.app/Info.plist", INFO_PLIST);
+
+        BinaryInfo info = new BinaryInspector().inspect(apk);
+
+        assertFalse(info.isValid());
+        assertTrue(info.getProblem(), info.getProblem().contains("IPA"));
+    }
+
+    @Test
+    public void rejectsFileThatIsNotAnArchive() throws IOException {
+        File ipa = folder.newFile("app.ipa");
+        Files.write(ipa.toPath(), "this is not a ZIP archive, just a few bytes of text".getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(new BinaryInspector().inspect(ipa).isValid());
+    }
+
+    @Test
+    public void uploadsArchiveWithUnparsableCentralDirectory() throws IOException {
+        File apk = zip("app.apk", "AndroidManifest.xml", "manifest");
+        byte[] bytes = Files.readAllBytes(apk.toPath());
+        // break the signature of the (only) central directory header
+        for (int i = bytes.length - 4; i >= 0; i--) {
+            if (bytes[i] == 'P' && bytes[i + 1] == 'K' && bytes[i + 2] == 1 && bytes[i + 3] == 2) {
+                bytes[i + 3] = 9;
+                break;
+            }
+        }
+        Files.write(apk.toPath(), bytes);
+
+        BinaryInfo info = new BinaryInspector().inspect(apk);
+
+        assertTrue(info.isValid());
+        assertTrue(info.getWarning(), info.getWarning().contains("central directory"));
+    }
+
+    @Test
+    public void acceptsDirectoriesWithoutInspection() throws IOException {
+        BinaryInfo info = new BinaryInspector().inspect(folder.newFolder("App.app"));
+
+        assertTrue(info.isValid());
+        assertEquals(BinaryInfo.Type.DIRECTORY, info.getType());
+    }
+
+    @Test
+    public void parsesXmlPlist() {
+        assertArrayEquals(new String[] { "com.example.app", "1.2.3" }, BinaryInspector.parsePlist(INFO_PLIST.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private File zip(String name, String... entries) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+}
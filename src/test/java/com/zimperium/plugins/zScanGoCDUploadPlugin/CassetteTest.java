@@ -0,0 +1,98 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CassetteTest {
+    private static final String SERVER = "https://zc202.zimperium.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void redactsTokensAndSecrets() {
+        ApiRequest request = new ApiRequest.Builder().url(SERVER + "/api/auth/v1/api_keys/login").get().build();
+        String body = "{\"accessToken\":\"eyJhbGciOi\",\"refreshToken\" : \"r-123\",\"clientSecret\":\"s3cr3t\",\"expiresIn\":3600}";
+
+        Cassette.Exchange exchange = Cassette.exchange(request, 0, 200, Collections.emptyMap(), body, 10);
+
+        assertFalse(exchange.body.contains("eyJhbGciOi"));
+        assertFalse(exchange.body.contains("r-123"));
+        assertFalse(exchange.body.contains("s3cr3t"));
+        assertTrue(exchange.body.contains("\"accessToken\":\"redacted\""));
+        assertTrue(exchange.body.contains("\"expiresIn\":3600"));
+    }
+
+    @Test
+    public void keepsOnlyTheHeadersThePluginReads() {
+        ApiRequest request = new ApiRequest.Builder().url(SERVER + "/api/zdev-app/public/v1/assessments/status?buildId=b1").get().build();
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("etag", Collections.singletonList("\"v1\""));
+        headers.put("Content-Type", Collections.singletonList("application/json"));
+        headers.put("Set-Cookie", Collections.singletonList("session=abc"));
+        headers.put("X-Request-Id", Collections.singletonList("trace-1"));
+
+        Cassette.Exchange exchange = Cassette.exchange(request, 0, 200, headers, "{}", 10);
+
+        assertEquals(2, exchange.headers.size());
+        assertEquals("\"v1\"", exchange.headers.get("ETag"));
+        assertEquals("application/json", exchange.headers.get("Content-Type"));
+    }
+
+    @Test
+    public void recordsPathsWithoutTheBaseUrl() {
+        ApiRequest request = new ApiRequest.Builder().url(SERVER + "/api/zdev-app/public/v1/assessments/status?buildId=b1").get().build();
+
+        Cassette.Exchange exchange = Cassette.exchange(request, 0, 200, Collections.emptyMap(), "{}", 10);
+
+        assertEquals("/api/zdev-app/public/v1/assessments/status?buildId=b1", exchange.path);
+        assertFalse(exchange.key().contains("zimperium.com"));
+    }
+
+    @Test
+    public void replaysRecordedExchangesInOrder() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cassette.jsonl");
+        ApiRequest status = new ApiRequest.Builder().url(SERVER + "/api/zdev-app/public/v1/assessments/status?buildId=b1").get().build();
+        Cassette.append(file, Cassette.failure(status, 0, new ConnectException("Connection refused"), 5));
+        Cassette.append(file, Cassette.exchange(status, 0, 200, Collections.emptyMap(), "{\"analysis\":\"InProgress\"}", 5));
+        Cassette.append(file, Cassette.exchange(status, 0, 200, Collections.emptyMap(), "{\"analysis\":\"Done\"}", 5));
+
+        // replayed against another base URL
+        ApiRequest replayed = status.newBuilder().url("https://replay.invalid" + Cassette.path(status)).build();
+        ReplayTransport transport = new ReplayTransport(Cassette.read(file), 0);
+        CancellationToken cancellation = new CancellationToken();
+        try {
+            transport.execute(replayed, cancellation, "checking status").close();
+            fail("the recorded failure is replayed");
+        }
+        catch (ConnectException e) {
+            // expected
+        }
+        List<String> bodies = Arrays.asList(
+            transport.execute(replayed, cancellation, "checking status").body().string(),
+            transport.execute(replayed, cancellation, "checking status").body().string(),
+            // the last exchange is served again once they are used up
+            transport.execute(replayed, cancellation, "checking status").body().string());
+
+        assertEquals(Arrays.asList("{\"analysis\":\"InProgress\"}", "{\"analysis\":\"Done\"}", "{\"analysis\":\"Done\"}"), bodies);
+        assertEquals(4, transport.getServed());
+        assertEquals(3, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+    }
+}
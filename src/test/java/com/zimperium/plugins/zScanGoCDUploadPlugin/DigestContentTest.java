@@ -0,0 +1,157 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DigestContentTest {
+    // check values of "123456789"
+    private static final String CHECK_SHA256 = "15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225";
+    private static final String CHECK_CRC32C = "e3069283";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void computesChecksumsWhileWritingToAStream() throws IOException {
+        DigestContent body = new DigestContent(RequestContent.of("123456789", "text/plain"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        body.writeTo(out);
+
+        assertEquals("123456789", out.toString(StandardCharsets.US_ASCII.name()));
+        assertEquals(CHECK_SHA256, body.getSha256());
+        assertEquals(CHECK_CRC32C, body.getCrc32c());
+    }
+
+    @Test
+    public void computesChecksumsWhileWritingToAChannel() throws IOException {
+        DigestContent body = new DigestContent(RequestContent.of("123456789", "text/plain"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        body.writeTo(Channels.newChannel(out));
+
+        assertEquals("123456789", out.toString(StandardCharsets.US_ASCII.name()));
+        assertEquals(CHECK_SHA256, body.getSha256());
+        assertEquals(CHECK_CRC32C, body.getCrc32c());
+    }
+
+    @Test
+    public void bothWritePathsAgreeForFilesAndPartialChannelWrites() throws IOException {
+        byte[] bytes = new byte[3 * RequestContent.BUFFER_SIZE + 17];
+        new Random(7).nextBytes(bytes);
+        File file = folder.newFile("app.apk");
+        Files.write(file.toPath(), bytes);
+
+        DigestContent streamed = new DigestContent(RequestContent.of(file, "application/octet-stream"));
+        ByteArrayOutputStream streamOut = new ByteArrayOutputStream();
+        streamed.writeTo(streamOut);
+
+        // a channel that takes only part of each buffer; only the bytes it took may be digested
+        DigestContent channeled = new DigestContent(RequestContent.of(file, "application/octet-stream"));
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        channeled.writeTo(new TrickleChannel(channelOut, 1000));
+
+        assertArrayEquals(bytes, streamOut.toByteArray());
+        assertArrayEquals(bytes, channelOut.toByteArray());
+        assertEquals(DigestContent.SHA256_HEX_LENGTH, streamed.getSha256().length());
+        assertEquals(streamed.getSha256(), channeled.getSha256());
+        assertEquals(streamed.getCrc32c(), channeled.getCrc32c());
+    }
+
+    @Test
+    public void sha256PartFailsBeforeTheBodyHasBeenWritten() throws IOException {
+        DigestContent body = new DigestContent(RequestContent.of("123456789", "text/plain"));
+        RequestContent part = body.sha256Part();
+
+        try {
+            part.writeTo(new ByteArrayOutputStream());
+            fail("the digest part must follow the content it describes");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("SHA-256"));
+        }
+
+        body.writeTo(new ByteArrayOutputStream());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        part.writeTo(out);
+        assertEquals(CHECK_SHA256, out.toString(StandardCharsets.US_ASCII.name()));
+        assertEquals(part.contentLength(), out.size());
+    }
+
+    @Test
+    public void failedAttemptClearsTheChecksumsOfThePreviousOne() throws IOException {
+        DigestContent body = new DigestContent(RequestContent.of("123456789", "text/plain"));
+        body.writeTo(new ByteArrayOutputStream());
+        assertEquals(CHECK_SHA256, body.getSha256());
+
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("connection reset");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+        try {
+            body.writeTo(broken);
+            fail("the write must fail");
+        }
+        catch (IOException e) {
+            assertEquals("connection reset", e.getMessage());
+        }
+
+        assertEquals("", body.getSha256());
+        assertEquals("", body.getCrc32c());
+    }
+
+    /**
+     * Channel that accepts at most {@code maxBytes} of every buffer.
+     */
+    private static final class TrickleChannel implements WritableByteChannel {
+        private final WritableByteChannel out;
+        private final int maxBytes;
+
+        TrickleChannel(OutputStream out, int maxBytes) {
+            this.out = Channels.newChannel(out);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + Math.min(maxBytes, slice.remaining()));
+            int written = out.write(slice);
+            src.position(src.position() + written);
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FindingsBaselineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FindingsBaseline baseline;
+
+    @Before
+    public void setUp() throws IOException {
+        baseline = new FindingsBaseline(folder.newFolder("baselines").toPath());
+    }
+
+    @Test
+    public void firstReportBecomesTheBaseline() throws IOException {
+        FindingsBaseline.Delta delta = compare("a1", "R1", "R2");
+
+        assertEquals("", delta.getBaselineAssessmentId());
+        assertEquals(2, delta.getNew());
+        assertEquals(0, delta.getFixed());
+
+        // the changes add up to the summary
+        JsonObject deltaFile = JsonParser.parseString(new String(Files.readAllBytes(deltaFile("a1")), StandardCharsets.UTF_8)).getAsJsonObject();
+        assertTrue(deltaFile.get("baselineAssessmentId").isJsonNull());
+        assertEquals(2, deltaFile.getAsJsonArray("changes").size());
+        assertEquals("new", deltaFile.getAsJsonArray("changes").get(0).getAsJsonObject().get("status").getAsString());
+        assertEquals(2, deltaFile.getAsJsonObject("summary").get("new").getAsInt());
+    }
+
+    @Test
+    public void reportsNewFixedAndUnchangedFindings() throws IOException {
+        compare("a1", "R1", "R2", "R3");
+        FindingsBaseline.Delta delta = compare("a2", "R2", "R3", "R4");
+
+        assertEquals("a1", delta.getBaselineAssessmentId());
+        assertEquals(1, delta.getNew());
+        assertEquals(1, delta.getFixed());
+        assertEquals(2, delta.getUnchanged());
+
+        JsonObject deltaFile = JsonParser.parseString(new String(Files.readAllBytes(deltaFile("a2")), StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals("a1", deltaFile.get("baselineAssessmentId").getAsString());
+        assertEquals(2, deltaFile.getAsJsonArray("changes").size());
+        assertEquals(1, deltaFile.getAsJsonObject("summary").get("fixed").getAsInt());
+    }
+
+    @Test
+    public void rerunOfTheSameAssessmentGetsTheSameDelta() throws IOException {
+        compare("a1", "R1", "R2");
+        FindingsBaseline.Delta first = compare("a2", "R2", "R3");
+        FindingsBaseline.Delta rerun = compare("a2", "R2", "R3");
+
+        assertEquals(first.toString(), rerun.toString());
+        assertEquals("a1", rerun.getBaselineAssessmentId());
+
+        // and the next assessment is still compared with a2
+        assertEquals("a2", compare("a3", "R3").getBaselineAssessmentId());
+    }
+
+    @Test
+    public void reportWithoutFindingsArrayLeavesTheBaselineAlone() throws IOException {
+        compare("a1", "R1");
+        Path report = folder.getRoot().toPath().resolve("error.json");
+        Files.write(report, "{\"error\":\"report not ready\"}".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            baseline.compare(report, "app", "main", "a2", deltaFile("a2"));
+            fail("a report without findings must not become the baseline");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("findings"));
+        }
+
+        FindingsBaseline.Delta delta = compare("a3", "R1");
+        assertEquals("a1", delta.getBaselineAssessmentId());
+        assertEquals(1, delta.getUnchanged());
+    }
+
+    @Test
+    public void emptyFindingsArrayReplacesTheBaseline() throws IOException {
+        compare("a1", "R1");
+        FindingsBaseline.Delta delta = compare("a2");
+
+        assertEquals(1, delta.getFixed());
+        assertEquals("a2", compare("a3").getBaselineAssessmentId());
+    }
+
+    @Test
+    public void branchesHaveSeparateBaselines() throws IOException {
+        compare("a1", "R1");
+        Path report = report("b1", "R1");
+        FindingsBaseline.Delta delta = baseline.compare(report, "app", "feature/x", "b1", deltaFile("b1"));
+
+        assertEquals("", delta.getBaselineAssessmentId());
+    }
+
+    @Test
+    public void sortsLargeReportsInChunks() throws IOException {
+        int count = FindingsBaseline.chunkSize * 2 + 10;
+        Path report = folder.getRoot().toPath().resolve("large.json");
+        try (Writer out = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            out.write("{\"findings\":[");
+            for (int i = 0; i < count; i++) {
+                out.write((i > 0 ? "," : "") + "{\"ruleId\":\"R" + i + "\",\"location\":\"Main.java\"}");
+            }
+            out.write("]}");
+        }
+        baseline.compare(report, "app", "main", "a1", deltaFile("a1"));
+
+        FindingsBaseline.Delta delta = compare("a2", "R0", "R1");
+        assertEquals(2, delta.getUnchanged());
+        assertEquals(count - 2, delta.getFixed());
+    }
+
+    @Test
+    public void concurrentComparisonsKeepAConsistentBaseline() throws Exception {
+        compare("a0", "R0");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<FindingsBaseline.Delta>> results = new ArrayList<>();
+            for (int i = 1; i <= 8; i++) {
+                String assessmentId = "a" + i;
+                Path report = report(assessmentId, "R0", "R" + i);
+                results.add(executor.submit((Callable<FindingsBaseline.Delta>) () ->
+                    baseline.compare(report, "app", "main", assessmentId, deltaFile(assessmentId))));
+            }
+            for (Future<FindingsBaseline.Delta> result : results) {
+                FindingsBaseline.Delta delta = result.get();
+                // each run sees a complete baseline: R0 plus at most one other finding
+                assertEquals(1, delta.getUnchanged());
+                assertTrue(delta.toString(), delta.getFixed() <= 1);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private FindingsBaseline.Delta compare(String assessmentId, String... rules) throws IOException {
+        return baseline.compare(report(assessmentId, rules), "app", "main", assessmentId, deltaFile(assessmentId));
+    }
+
+    private Path report(String assessmentId, String... rules) throws IOException {
+        StringBuilder json = new StringBuilder("{\"id\":\"" + assessmentId + "\",\"findings\":[");
+        for (int i = 0; i < rules.length; i++) {
+            json.append((i > 0) ? "," : "").append("{\"ruleId\":\"").append(rules[i])
+                .append("\",\"title\":\"Title ").append(rules[i]).append("\",\"severity\":\"high\",\"location\":\"Main.java\"}");
+        }
+        json.append("]}");
+        Path report = folder.getRoot().toPath().resolve("report-" + assessmentId + ".json");
+        Files.write(report, json.toString().getBytes(StandardCharsets.UTF_8));
+        return report;
+    }
+
+    private Path deltaFile(String assessmentId) {
+        return folder.getRoot().toPath().resolve("report-" + assessmentId + "-delta.json");
+    }
+}
@@ -0,0 +1,70 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FindingsReaderTest {
+    @Test
+    public void readsFindingsNestedInTheReport() throws IOException {
+        String report = "{\"assessment\":{\"id\":\"a1\",\"summary\":{\"total\":2},"
+            + "\"findings\":[{\"ruleId\":\"R1\",\"title\":\"Weak crypto\",\"severity\":\"HIGH\",\"location\":\"a.java\"},"
+            + "\"not a finding\",{\"checkId\":\"R2\",\"name\":\"Debuggable\",\"riskType\":\"low\",\"file\":\"AndroidManifest.xml\"}]},"
+            + "\"trailer\":[1,2,3]}";
+
+        List<Finding> findings = readAll(report);
+
+        assertEquals(2, findings.size());
+        assertEquals("R1", findings.get(0).getRuleId());
+        assertEquals("high", findings.get(0).getSeverity());
+        assertEquals("a.java", findings.get(0).getLocation());
+        assertEquals("R2", findings.get(1).getRuleId());
+        assertEquals("Debuggable", findings.get(1).getTitle());
+        assertEquals("AndroidManifest.xml", findings.get(1).getLocation());
+    }
+
+    @Test
+    public void readsTopLevelArray() throws IOException {
+        assertEquals(1, readAll("[{\"id\":\"R1\"}]").size());
+    }
+
+    @Test
+    public void tellsEmptyFindingsFromMissingFindings() throws IOException {
+        try (FindingsReader reader = new FindingsReader(new StringReader("{\"findings\":[]}"))) {
+            assertNull(reader.next());
+            assertTrue(reader.hasFindingsArray());
+        }
+        try (FindingsReader reader = new FindingsReader(new StringReader("{\"error\":\"not found\",\"items\":[{\"id\":1}]}"))) {
+            assertNull(reader.next());
+            assertFalse(reader.hasFindingsArray());
+        }
+    }
+
+    @Test
+    public void keepsReturningNullWhenDone() throws IOException {
+        try (FindingsReader reader = new FindingsReader(new StringReader("{\"issues\":[{\"id\":\"R1\"}]}"))) {
+            assertEquals("R1", reader.next().getRuleId());
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    private static List<Finding> readAll(String report) throws IOException {
+        List<Finding> findings = new ArrayList<>();
+        try (FindingsReader reader = new FindingsReader(new StringReader(report))) {
+            Finding finding;
+            while ((finding = reader.next()) != null) {
+                findings.add(finding);
+            }
+        }
+        return findings;
+    }
+}
@@ -0,0 +1,92 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NdjsonExporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesOneLinePerFindingWithTheReportIds() throws IOException {
+        String report = "{\"findings\":["
+            + "{\"id\":\"f1\",\"ruleId\":\"R1\",\"title\":\"Weak crypto\",\"severity\":\"HIGH\",\"location\":\"a.java\"},"
+            + "{\"checkId\":\"R2\",\"name\":\"Debuggable\",\"description\":\"line one\\nline two\"}]}";
+        StringWriter out = new StringWriter();
+
+        assertEquals(2, new NdjsonExporter().export(new StringReader(report), out, "a1", "app1"));
+
+        String[] lines = out.toString().split("\n", -1);
+        // two findings, each terminated by a line break
+        assertEquals(3, lines.length);
+        assertEquals("", lines[2]);
+
+        JsonObject first = JsonParser.parseString(lines[0]).getAsJsonObject();
+        assertEquals("a1", first.get("assessmentId").getAsString());
+        assertEquals("app1", first.get("zdevAppId").getAsString());
+        assertEquals("f1", first.get("findingId").getAsString());
+        assertEquals("R1", first.get("ruleId").getAsString());
+        assertEquals("high", first.get("severity").getAsString());
+        assertEquals("a.java", first.get("location").getAsString());
+
+        JsonObject second = JsonParser.parseString(lines[1]).getAsJsonObject();
+        assertEquals("R2", second.get("ruleId").getAsString());
+        assertEquals("line one\nline two", second.get("description").getAsString());
+        // empty fields are omitted
+        assertFalse(second.has("findingId"));
+        assertFalse(second.has("severity"));
+    }
+
+    @Test
+    public void exportsFiles() throws IOException {
+        Path report = folder.newFile("report.json").toPath();
+        Files.write(report, "{\"issues\":[{\"id\":\"f1\"},{\"id\":\"f2\"},{\"id\":\"f3\"}]}".getBytes(StandardCharsets.UTF_8));
+        Path export = folder.getRoot().toPath().resolve("report" + NdjsonExporter.EXTENSION);
+
+        assertEquals(3, new NdjsonExporter().export(report, export, "a1", ""));
+
+        List<String> lines = Files.readAllLines(export, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertFalse(JsonParser.parseString(lines.get(0)).getAsJsonObject().has("zdevAppId"));
+    }
+
+    @Test
+    public void writesNothingForAReportWithoutFindings() throws IOException {
+        StringWriter out = new StringWriter();
+
+        assertEquals(0, new NdjsonExporter().export(new StringReader("{\"findings\":[]}"), out, "a1", "app1"));
+        assertEquals("", out.toString());
+    }
+
+    @Test
+    public void failsAndRemovesTheExportForAReportWithoutFindingsArray() throws IOException {
+        Path report = folder.newFile("error.json").toPath();
+        Files.write(report, "{\"error\":\"report not ready\"}".getBytes(StandardCharsets.UTF_8));
+        Path export = folder.getRoot().toPath().resolve("error" + NdjsonExporter.EXTENSION);
+
+        try {
+            new NdjsonExporter().export(report, export, "a1", "app1");
+            fail("a report without findings array must not be exported as an empty file");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("findings"));
+        }
+        assertFalse(Files.exists(export));
+    }
+}
@@ -0,0 +1,155 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Outbox outbox;
+    private File binary;
+    private Context context;
+    private TaskConfig taskConfig;
+    private final BinaryInfo info = BinaryInfo.valid(BinaryInfo.Type.APK, "com.example", "1.0", 2);
+
+    @Before
+    public void setUp() throws IOException {
+        outbox = new Outbox(folder.getRoot().toPath().resolve("outbox"));
+        binary = folder.newFile("app.apk");
+        Files.write(binary.toPath(), "binary".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, String> environment = new HashMap<>();
+        environment.put("BRANCH_NAME", "main");
+        environment.put("BUILD_NUMBER", "42");
+        Map<String, Object> job = new HashMap<>();
+        job.put("environmentVariables", environment);
+        job.put("workingDirectory", folder.getRoot().getAbsolutePath());
+        context = new Context(job);
+
+        Map<String, Object> config = new HashMap<>();
+        setting(config, TaskPlugin.URL_PROPERTY, "https://zc202.zimperium.com");
+        setting(config, TaskPlugin.ID_PROPERTY, "client");
+        setting(config, TaskPlugin.SECRET_PROPERTY, "top-secret");
+        setting(config, TaskPlugin.TEAM_PROPERTY, TaskPlugin.DEFAULT_TEAM);
+        setting(config, TaskPlugin.INPUT_PROPERTY, "*.apk");
+        setting(config, TaskPlugin.REPORT_FORMAT_PROPERTY, TaskPlugin.DEFAULT_REPORT_FORMAT);
+        setting(config, TaskPlugin.HTTP_CLIENT_PROPERTY, HttpTransport.JDK);
+        taskConfig = new TaskConfig(config, context, silent(), new CancellationToken());
+    }
+
+    @Test
+    public void spoolsUploadsWithoutTheSecret() throws IOException {
+        Outbox.Entry entry = outbox.spool(binary, info, taskConfig, context);
+
+        List<Outbox.Entry> queued = outbox.list();
+        assertEquals(1, queued.size());
+        Outbox.Entry read = queued.get(0);
+        assertEquals(entry.getId(), read.getId());
+        assertEquals("https://zc202.zimperium.com", read.getEndpoint());
+        assertEquals("client", read.getClientId());
+        assertEquals(binary.getAbsolutePath(), read.getUploadName());
+        assertEquals("main", read.getContext().getEnvironmentVariables().get("BRANCH_NAME"));
+        assertEquals("com.example", read.getBinaryInfo().getPackageId());
+        assertArrayEquals(Files.readAllBytes(binary.toPath()), Files.readAllBytes(read.getArtifact().toPath()));
+
+        String manifest = new String(Files.readAllBytes(read.getDirectory().resolve(Outbox.MANIFEST)), StandardCharsets.UTF_8);
+        assertFalse(manifest.contains("top-secret"));
+    }
+
+    @Test
+    public void listsOldestFirstAndIgnoresPendingEntries() throws IOException, InterruptedException {
+        Outbox.Entry first = outbox.spool(binary, info, taskConfig, context);
+        // entries created in the same millisecond have no order
+        Thread.sleep(5);
+        Outbox.Entry second = outbox.spool(binary, info, taskConfig, context);
+        // left behind by a crash while spooling
+        Files.createDirectories(outbox.getDirectory().resolve("crashed" + Outbox.PENDING_SUFFIX));
+
+        List<Outbox.Entry> queued = outbox.list();
+        assertEquals(2, queued.size());
+        assertEquals(first.getId(), queued.get(0).getId());
+        assertEquals(second.getId(), queued.get(1).getId());
+    }
+
+    @Test
+    public void keepsFailedAttemptsQueued() throws IOException {
+        Outbox.Entry entry = outbox.spool(binary, info, taskConfig, context);
+
+        outbox.recordAttempt(entry, "connection refused");
+
+        Outbox.Entry read = outbox.refresh(entry);
+        assertNotNull(read);
+        assertEquals(1, read.getAttempts());
+        assertEquals(1, outbox.list().size());
+    }
+
+    @Test
+    public void removesUploadedEntriesButKeepsRejectedOnes() throws IOException {
+        Outbox.Entry uploaded = outbox.spool(binary, info, taskConfig, context);
+        Outbox.Entry rejected = outbox.spool(binary, info, taskConfig, context);
+        Path stale = Files.createDirectories(outbox.getDirectory().resolve("stale" + Outbox.PENDING_SUFFIX));
+
+        outbox.markUploaded(uploaded);
+        outbox.reject(rejected, "400 Bad Request");
+        assertNull(outbox.refresh(uploaded));
+        assertEquals(Collections.emptyList(), outbox.list());
+
+        outbox.removeObsolete(0);
+
+        assertFalse(Files.exists(uploaded.getDirectory()));
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(rejected.getDirectory().resolve(Outbox.FAILED_MANIFEST)));
+    }
+
+    @Test
+    public void locksEntriesOnce() throws IOException {
+        Outbox.Entry entry = outbox.spool(binary, info, taskConfig, context);
+
+        try (FileChannel lock = outbox.tryLock(entry)) {
+            assertNotNull(lock);
+            assertNull(outbox.tryLock(entry));
+        }
+        try (FileChannel lock = outbox.tryLock(entry)) {
+            assertNotNull(lock);
+        }
+    }
+
+    @Test
+    public void listsNothingWithoutADirectory() throws IOException {
+        assertEquals(Collections.emptyList(), outbox.list());
+    }
+
+    private static void setting(Map<String, Object> config, String property, String value) {
+        config.put(property, Collections.singletonMap("value", value));
+    }
+
+    private static JobConsoleLogger silent() {
+        return new JobConsoleLogger() {
+            @Override
+            public void printLine(String line) {
+            }
+        };
+    }
+}
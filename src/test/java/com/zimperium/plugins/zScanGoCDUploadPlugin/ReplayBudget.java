@@ -0,0 +1,380 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Runs whole jobs ({@link ExecuteRequest}) against the {@link Cassette}s in a directory and fails if a job takes
+ * longer, sends more requests or allocates more heap than the budgets recorded for its cassette.  Real zScan timings
+ * vary too much to notice regressions of the plugin itself; replayed exchanges do not.
+ *
+ * <p>Each cassette {@code <name>.jsonl} has a budget file {@code <name>.budget.properties} with the time scale of the
+ * replay ({@code timeScale}; 0 skips the recorded latencies and the waits between status checks) and the limits
+ * {@code maxWallMillis}, {@code maxRequests} and {@code maxAllocatedMegabytes}.  The job uploads a generated APK of
+ * {@code binaryMegabytes} megabytes; the report of the assessment ({@code <name>.report.json}, if present) is put
+ * into the report cache beforehand, as reports are downloaded with curl and are not part of a cassette.  Every job
+ * runs once to warm up and then {@link #measuredRuns} times; the medians are compared with the budgets.  Allocation
+ * is measured for the whole JVM, from the heap in use and what the garbage collector reclaimed.</p>
+ *
+ * <p>Run it with {@code ./gradlew replayBudget}.  After an intended change, {@code --update} as the second argument
+ * rewrites the budgets from the measurements, with
+ * some headroom.</p>
+ */
+public class ReplayBudget {
+    public final static int measuredRuns = 3;
+    public final static double headroom = 1.5;
+    // floors of updated budgets, so that they hold on slower machines and with other HTTP clients
+    public final static long minWallMillis = 2000;
+    public final static long minAllocatedMegabytes = 16;
+
+    private static final String ENDPOINT = "https://replay.invalid";
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Paths.get((args.length > 0) ? args[0] : "src/test/resources/cassettes");
+        boolean update = args.length > 1 && args[1].equals("--update");
+
+        List<Path> cassettes = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".jsonl")).sorted().forEach(cassettes::add);
+        }
+        if (cassettes.isEmpty()) {
+            throw new IllegalStateException("No cassettes in " + directory.toAbsolutePath());
+        }
+
+        StringBuilder console = new StringBuilder();
+        installConsole(console);
+
+        List<String> exceeded = new ArrayList<>();
+        System.out.println(String.format("%-24s %14s %10s %16s", "cassette", "wall ms", "requests", "allocated MB"));
+        for (Path cassette : cassettes) {
+            String name = cassette.getFileName().toString().replaceFirst("\\.jsonl$", "");
+            Path budgetFile = cassette.resolveSibling(name + ".budget.properties");
+            Properties budget = new Properties();
+            try (Reader reader = Files.newBufferedReader(budgetFile, StandardCharsets.UTF_8)) {
+                budget.load(reader);
+            }
+
+            List<Measurement> runs = new ArrayList<>();
+            for (int i = 0; i <= measuredRuns; i++) {
+                console.setLength(0);
+                Measurement run = run(cassette, budget);
+                if (!run.success) {
+                    System.out.print(console);
+                    throw new IllegalStateException("The job replaying " + cassette + " failed: " + run.message);
+                }
+                if (i > 0) {
+                    runs.add(run);
+                }
+            }
+            Measurement median = Measurement.median(runs);
+
+            long maxWallMillis = Long.parseLong(budget.getProperty("maxWallMillis"));
+            long maxRequests = Long.parseLong(budget.getProperty("maxRequests"));
+            double maxAllocatedMegabytes = Double.parseDouble(budget.getProperty("maxAllocatedMegabytes"));
+            System.out.println(String.format("%-24s %6d (%5d) %4d (%3d) %7.1f (%6.1f)", name, median.wallMillis, maxWallMillis,
+                median.requests, maxRequests, median.allocatedMegabytes(), maxAllocatedMegabytes));
+
+            if (update) {
+                budget.setProperty("maxWallMillis", Long.toString(Math.max(minWallMillis, Math.round(median.wallMillis * headroom))));
+                budget.setProperty("maxRequests", Long.toString(median.requests));
+                budget.setProperty("maxAllocatedMegabytes", Long.toString(Math.max(minAllocatedMegabytes, Math.round(Math.ceil(median.allocatedMegabytes() * headroom)))));
+                try (Writer writer = Files.newBufferedWriter(budgetFile, StandardCharsets.UTF_8)) {
+                    budget.store(writer, "Budgets of ./gradlew replayBudget for " + cassette.getFileName());
+                }
+                continue;
+            }
+            if (median.wallMillis > maxWallMillis) {
+                exceeded.add(name + ": wall time " + median.wallMillis + "ms > " + maxWallMillis + "ms");
+            }
+            if (median.requests > maxRequests) {
+                exceeded.add(name + ": " + median.requests + " requests > " + maxRequests);
+            }
+            if (median.allocatedMegabytes() > maxAllocatedMegabytes) {
+                exceeded.add(name + ": " + String.format("%.1f", median.allocatedMegabytes()) + "MB allocated > " + maxAllocatedMegabytes + "MB");
+            }
+        }
+
+        if (!exceeded.isEmpty()) {
+            System.out.println("Budgets exceeded:");
+            exceeded.forEach(line -> System.out.println("  " + line));
+            System.exit(1);
+        }
+    }
+
+    private static final class Measurement {
+        boolean success;
+        String message;
+        long wallMillis;
+        long requests;
+        long allocatedBytes;
+
+        double allocatedMegabytes() {
+            return allocatedBytes / (1024.0 * 1024.0);
+        }
+
+        static Measurement median(List<Measurement> runs) {
+            Measurement median = new Measurement();
+            median.success = true;
+            median.wallMillis = median(runs, run -> run.wallMillis);
+            median.requests = median(runs, run -> run.requests);
+            median.allocatedBytes = median(runs, run -> run.allocatedBytes);
+            return median;
+        }
+
+        private static long median(List<Measurement> runs, java.util.function.ToLongFunction<Measurement> value) {
+            List<Long> values = new ArrayList<>();
+            runs.forEach(run -> values.add(value.applyAsLong(run)));
+            Collections.sort(values);
+            return values.get(values.size() / 2);
+        }
+    }
+
+    /**
+     * Replays the cassette in a fresh working directory, with the plugin's files on the agent (scan history, report
+     * cache, findings baselines) in a fresh directory too.
+     */
+    private static Measurement run(Path cassette, Properties budget) throws Exception {
+        Path root = Files.createTempDirectory("zscan-replay");
+        try {
+            Path workingDirectory = Files.createDirectories(root.resolve("work"));
+            writeApk(workingDirectory.resolve("app-release.apk"), Integer.parseInt(budget.getProperty("binaryMegabytes", "8")));
+
+            System.setProperty(Cassette.REPLAY_PROPERTY, cassette.toAbsolutePath().toString());
+            System.setProperty(Cassette.TIME_SCALE_PROPERTY, budget.getProperty("timeScale", "0"));
+            System.setProperty(ScanHistory.FILE_PROPERTY, root.resolve("scan-history.properties").toString());
+            System.setProperty(ReportCache.DIRECTORY_PROPERTY, root.resolve("reports").toString());
+            System.setProperty(FindingsBaseline.DIRECTORY_PROPERTY, root.resolve("baselines").toString());
+
+            String name = cassette.getFileName().toString().replaceFirst("\\.jsonl$", "");
+            Path report = cassette.resolveSibling(name + ".report.json");
+            if (Files.exists(report)) {
+                ReportCache.open().store(ENDPOINT, budget.getProperty("assessmentId", "assessment"), TaskPlugin.DEFAULT_REPORT_FORMAT, report);
+            }
+
+            DefaultGoPluginApiRequest request = new DefaultGoPluginApiRequest("task", "1.0", "execute");
+            request.setRequestBody(requestBody(workingDirectory));
+
+            Measurement measurement = new Measurement();
+            AllocationMeter allocation = new AllocationMeter();
+            allocation.start();
+            long served = ReplayTransport.getTotalServed();
+            long start = System.nanoTime();
+            GoPluginApiResponse response = new ExecuteRequest().execute(request);
+            measurement.wallMillis = (System.nanoTime() - start) / 1_000_000;
+            measurement.requests = ReplayTransport.getTotalServed() - served;
+            measurement.allocatedBytes = allocation.stop();
+
+            JsonObject result = JsonParser.parseString(response.responseBody()).getAsJsonObject();
+            measurement.success = result.get("success").getAsBoolean();
+            measurement.message = result.get("message").getAsString();
+            return measurement;
+        }
+        finally {
+            delete(root);
+        }
+    }
+
+    private static String requestBody(Path workingDirectory) {
+        Map<String, Object> config = new HashMap<>();
+        setting(config, TaskPlugin.URL_PROPERTY, ENDPOINT);
+        setting(config, TaskPlugin.ID_PROPERTY, "client");
+        setting(config, TaskPlugin.SECRET_PROPERTY, "secret");
+        setting(config, TaskPlugin.TEAM_PROPERTY, TaskPlugin.DEFAULT_TEAM);
+        setting(config, TaskPlugin.INPUT_PROPERTY, "*.apk");
+        setting(config, TaskPlugin.REPORT_FORMAT_PROPERTY, TaskPlugin.DEFAULT_REPORT_FORMAT);
+        setting(config, TaskPlugin.OUTBOX_PROPERTY, TaskPlugin.OUTBOX_DISABLED);
+
+        Map<String, String> environment = new HashMap<>();
+        environment.put("GO_PIPELINE_NAME", "replay");
+        environment.put("GO_PIPELINE_COUNTER", "1");
+        environment.put("GO_STAGE_NAME", "scan");
+        environment.put("GO_STAGE_COUNTER", "1");
+        environment.put("GO_JOB_NAME", "upload");
+        Map<String, Object> context = new HashMap<>();
+        context.put("environmentVariables", environment);
+        context.put("workingDirectory", workingDirectory.toString());
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("config", config);
+        body.put("context", context);
+        return TaskPlugin.gson().toJson(body);
+    }
+
+    private static void setting(Map<String, Object> config, String property, String value) {
+        config.put(property, Collections.singletonMap("value", value));
+    }
+
+    /**
+     * Writes an APK the preflight check accepts, with incompressible content so its size is what is uploaded.
+     */
+    private static void writeApk(Path file, int megabytes) throws IOException {
+        Random random = new Random(megabytes);
+        byte[] chunk = new byte[1024 * 1024];
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+            zip.write("manifest".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("classes.dex"));
+            for (int i = 0; i < megabytes; i++) {
+                random.nextBytes(chunk);
+                zip.write(chunk);
+            }
+            zip.closeEntry();
+        }
+    }
+
+    /**
+     * Lets {@link JobConsoleLogger#getConsoleLogger()} work outside an agent: sets the task execution context the
+     * agent would set, with a console that collects the lines of the job.
+     */
+    private static void installConsole(StringBuilder lines) throws ReflectiveOperationException {
+        Field contextField = JobConsoleLogger.class.getDeclaredField("context");
+        Class<?> contextType = contextField.getType();
+        Class<?> consoleType = contextType.getMethod("console").getReturnType();
+
+        Object console = Proxy.newProxyInstance(ReplayBudget.class.getClassLoader(), new Class<?>[] { consoleType }, (proxy, method, arguments) -> {
+            if (method.getName().equals("printLine")) {
+                synchronized (lines) {
+                    lines.append(arguments[0]).append('\n');
+                }
+            }
+            else if (method.getName().startsWith("read")) {
+                try (InputStream in = (InputStream) arguments[0]) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+            return null;
+        });
+        Object context = Proxy.newProxyInstance(ReplayBudget.class.getClassLoader(), new Class<?>[] { contextType }, (proxy, method, arguments) ->
+            method.getName().equals("console") ? console : null);
+
+        contextField.setAccessible(true);
+        contextField.set(null, context);
+    }
+
+    /**
+     * Measures the heap allocated by all threads between {@link #start()} and {@link #stop()}: the growth of the heap
+     * in use plus what the garbage collector reclaimed in between.
+     */
+    private static final class AllocationMeter implements NotificationListener {
+        private final AtomicLong reclaimed = new AtomicLong();
+        private final AtomicLong collections = new AtomicLong();
+        private final Set<String> heapPools = new HashSet<>();
+        private long startUsed;
+        private long startCollections;
+
+        void start() throws InterruptedException {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPools.add(pool.getName());
+                }
+            }
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+            }
+            // start from a collected heap, once its notification has arrived
+            long before = collectionCount();
+            System.gc();
+            awaitNotifications(collectionCount() - before);
+            reclaimed.set(0);
+            collections.set(0);
+            startCollections = collectionCount();
+            startUsed = heapUsed();
+        }
+
+        long stop() throws Exception {
+            long used = heapUsed();
+            awaitNotifications(collectionCount() - startCollections);
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).removeNotificationListener(this);
+            }
+            return used - startUsed + reclaimed.get();
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+            for (Map.Entry<String, MemoryUsage> before : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+                if (heapPools.contains(before.getKey())) {
+                    reclaimed.addAndGet(before.getValue().getUsed() - after.get(before.getKey()).getUsed());
+                }
+            }
+            collections.incrementAndGet();
+        }
+
+        // notifications are delivered on another thread, some time after the collection
+        private void awaitNotifications(long expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (collections.get() < expected && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        private long heapUsed() {
+            long used = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    used += pool.getUsage().getUsed();
+                }
+            }
+            return used;
+        }
+
+        private static long collectionCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+            return count;
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Collections.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReportCacheTest {
+    private static final String SERVER = "https://zc202.zimperium.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path cacheDirectory;
+    private Path workingDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDirectory = folder.newFolder("cache").toPath();
+        workingDirectory = folder.newFolder("work").toPath();
+    }
+
+    @Test
+    public void servesStoredReports() throws IOException {
+        ReportCache cache = new ReportCache(cacheDirectory, 1024 * 1024);
+        cache.store(SERVER, "a1", "json", report("report-a1.json", "{\"findings\":[]}"));
+
+        Path target = workingDirectory.resolve("fetched.json");
+        assertTrue(cache.fetch(SERVER, "a1", "json", target));
+        assertEquals("{\"findings\":[]}", read(target));
+    }
+
+    @Test
+    public void keysByServerAssessmentAndFormat() throws IOException {
+        ReportCache cache = new ReportCache(cacheDirectory, 1024 * 1024);
+        cache.store(SERVER, "a1", "json", report("report-a1.json", "{}"));
+
+        Path target = workingDirectory.resolve("fetched");
+        assertFalse(cache.fetch("https://other.zimperium.com", "a1", "json", target));
+        assertFalse(cache.fetch(SERVER, "a2", "json", target));
+        assertFalse(cache.fetch(SERVER, "a1", "sarif", target));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    public void fetchedReportIsIndependentOfTheCachedOne() throws IOException {
+        ReportCache cache = new ReportCache(cacheDirectory, 1024 * 1024);
+        cache.store(SERVER, "a1", "json", report("report-a1.json", "original"));
+
+        Path first = workingDirectory.resolve("first.json");
+        assertTrue(cache.fetch(SERVER, "a1", "json", first));
+        FileTime fetched = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(first, fetched);
+        Files.write(first, "modified by a later step".getBytes(StandardCharsets.UTF_8));
+
+        Path second = workingDirectory.resolve("second.json");
+        assertTrue(cache.fetch(SERVER, "a1", "json", second));
+        assertEquals("original", read(second));
+        assertEquals("modified by a later step", read(first));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedReports() throws IOException {
+        ReportCache cache = new ReportCache(cacheDirectory, 25);
+        cache.store(SERVER, "a1", "json", report("r1", "0123456789"));
+        cache.store(SERVER, "a2", "json", report("r2", "0123456789"));
+        Files.setLastModifiedTime(cache.reportPath(SERVER, "a1", "json"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(cache.reportPath(SERVER, "a2", "json"), FileTime.fromMillis(2000));
+
+        cache.store(SERVER, "a3", "json", report("r3", "0123456789"));
+
+        Path target = workingDirectory.resolve("fetched");
+        assertFalse(cache.fetch(SERVER, "a1", "json", target));
+        assertTrue(cache.fetch(SERVER, "a2", "json", target));
+        assertTrue(cache.fetch(SERVER, "a3", "json", target));
+    }
+
+    @Test
+    public void doesNotStoreReportsLargerThanTheCache() throws IOException {
+        ReportCache cache = new ReportCache(cacheDirectory, 4);
+        cache.store(SERVER, "a1", "json", report("r1", "0123456789"));
+
+        assertFalse(cache.fetch(SERVER, "a1", "json", workingDirectory.resolve("fetched")));
+    }
+
+    private Path report(String name, String content) throws IOException {
+        Path report = workingDirectory.resolve(name);
+        Files.write(report, content.getBytes(StandardCharsets.UTF_8));
+        return report;
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,128 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.thoughtworks.go.plugin.api.task.JobConsoleLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the API calls of a job 1,000 times against a transport that counts the connections it has handed out, with
+ * the server failing every call of every other run, and checks that every response is closed: connections in use
+ * and open responses go back to where they started after each run.
+ */
+public class ResponseLeakTest {
+    private static final String SERVER = "https://zc202.zimperium.com";
+    private static final int RUNS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Answers the calls of a job; the connection of a response is back in the pool once the response is closed.
+     */
+    private static class PooledTransport implements HttpTransport {
+        private final URLBuilder urls = new URLBuilder(SERVER);
+        final AtomicInteger inUse = new AtomicInteger();
+        int maxInUse;
+        boolean failing;
+
+        @Override
+        public String name() {
+            return "pooled";
+        }
+
+        @Override
+        public ApiResponse execute(ApiRequest request, CancellationToken cancellation, String description) throws IOException {
+            if (request.content() != null) {
+                request.content().writeTo(OutputStream.nullOutputStream());
+            }
+
+            String url = request.url();
+            int code = 200;
+            String body;
+            if (url.equals(urls.getLoginURL()) || url.equals(urls.getRefreshURL())) {
+                body = "{\"accessToken\":\"a\",\"refreshToken\":\"r\"}";
+            }
+            else if (url.equals(urls.getUploadURL())) {
+                body = "{\"zdevAppId\":\"app\",\"teamId\":null,\"buildId\":\"build\"}";
+            }
+            else if (url.equals(urls.getTeamsURL())) {
+                body = "{\"content\":[{\"name\":\"Default\",\"id\":\"team\"}]}";
+            }
+            else if (url.startsWith(urls.getStatusURL(""))) {
+                body = "{\"id\":\"assessment\",\"zdevMetadata\":{\"analysis\":\"Done\"}}";
+            }
+            else {
+                body = "{}";
+            }
+            if (failing) {
+                code = 500;
+                body = "{\"message\":\"internal error\"}";
+            }
+
+            maxInUse = Math.max(maxInUse, inUse.incrementAndGet());
+            return new ApiResponse(code, Collections.emptyMap(), new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                inUse::decrementAndGet);
+        }
+    }
+
+    @Test
+    public void connectionsAndOpenResponsesStayFlat() throws IOException {
+        File binary = folder.newFile("app.apk");
+        Files.write(binary.toPath(), new byte[64 * 1024]);
+        Map<String, Object> job = new HashMap<>();
+        job.put("environmentVariables", new HashMap<String, String>());
+        job.put("workingDirectory", folder.getRoot().getAbsolutePath());
+        Context context = new Context(job);
+        BinaryInfo info = BinaryInfo.valid(BinaryInfo.Type.APK, "com.example", "1.0", 1);
+
+        PooledTransport transport = new PooledTransport();
+        long openResponses = TaskPlugin.metrics().openResponses.get();
+        for (int run = 0; run < RUNS; run++) {
+            transport.failing = (run % 2 == 1);
+            APITaskExecutor executor = new APITaskExecutor(new URLBuilder(SERVER), silent(), new CancellationToken(), transport);
+
+            executor.login("id", "secret");
+            try (ApiResponse upload = executor.uploadBinary(binary, context, info)) {
+                assertEquals(transport.failing ? 500 : 200, upload.code());
+            }
+            executor.assignAppToTeamByName("app", "Default", "build");
+            executor.refreshToken();
+            StatusSnapshot snapshot = new StatusSnapshot("build");
+            try (ApiResponse status = executor.checkStatus("build", snapshot)) {
+                if (status.isSuccessful()) {
+                    snapshot.update(status);
+                }
+                else {
+                    status.body().errorString();
+                }
+            }
+
+            assertEquals("connections in use after run " + run, 0, transport.inUse.get());
+            assertEquals("open responses after run " + run, openResponses, TaskPlugin.metrics().openResponses.get());
+        }
+        assertTrue("at most one connection in use at a time, was " + transport.maxInUse, transport.maxInUse <= 1);
+    }
+
+    private static JobConsoleLogger silent() {
+        return new JobConsoleLogger() {
+            @Override
+            public void printLine(String line) {
+            }
+        };
+    }
+}
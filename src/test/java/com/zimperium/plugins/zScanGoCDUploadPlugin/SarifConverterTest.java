@@ -0,0 +1,88 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SarifConverterTest {
+    @Test
+    public void writesAResultPerFindingAndARulePerDistinctRule() throws IOException {
+        String report = "{\"findings\":["
+            + "{\"id\":\"f1\",\"ruleId\":\"R1\",\"title\":\"Weak crypto\",\"description\":\"Uses DES\",\"severity\":\"HIGH\","
+            + "\"category\":\"Crypto\",\"location\":\"a.java\"},"
+            + "{\"id\":\"f2\",\"ruleId\":\"R1\",\"title\":\"Weak crypto\",\"severity\":\"HIGH\",\"location\":\"b.java\"},"
+            + "{\"ruleId\":\"R2\",\"title\":\"Debuggable\",\"severity\":\"low\"}]}";
+        StringWriter out = new StringWriter();
+
+        assertEquals(3, new SarifConverter().convert(new StringReader(report), out));
+
+        JsonObject sarif = JsonParser.parseString(out.toString()).getAsJsonObject();
+        assertEquals(SarifConverter.SARIF_VERSION, sarif.get("version").getAsString());
+        JsonObject run = sarif.getAsJsonArray("runs").get(0).getAsJsonObject();
+
+        JsonArray results = run.getAsJsonArray("results");
+        assertEquals(3, results.size());
+        JsonObject first = results.get(0).getAsJsonObject();
+        assertEquals("R1", first.get("ruleId").getAsString());
+        assertEquals("error", first.get("level").getAsString());
+        assertEquals("Weak crypto", first.getAsJsonObject("message").get("text").getAsString());
+        assertEquals("a.java", first.getAsJsonArray("locations").get(0).getAsJsonObject()
+            .getAsJsonObject("physicalLocation").getAsJsonObject("artifactLocation").get("uri").getAsString());
+        assertEquals("f1", first.getAsJsonObject("properties").get("findingId").getAsString());
+        // findings without a location have no locations
+        assertNull(results.get(2).getAsJsonObject().get("locations"));
+        assertEquals("note", results.get(2).getAsJsonObject().get("level").getAsString());
+
+        JsonObject driver = run.getAsJsonObject("tool").getAsJsonObject("driver");
+        assertEquals(SarifConverter.toolName, driver.get("name").getAsString());
+        JsonArray rules = driver.getAsJsonArray("rules");
+        assertEquals(2, rules.size());
+        JsonObject rule = rules.get(0).getAsJsonObject();
+        assertEquals("R1", rule.get("id").getAsString());
+        assertEquals("Uses DES", rule.getAsJsonObject("fullDescription").get("text").getAsString());
+        assertEquals("Crypto", rule.getAsJsonObject("properties").get("category").getAsString());
+        assertFalse(rules.get(1).getAsJsonObject().has("fullDescription"));
+    }
+
+    @Test
+    public void writesAnEmptyLogForAReportWithoutFindings() throws IOException {
+        StringWriter out = new StringWriter();
+
+        assertEquals(0, new SarifConverter().convert(new StringReader("{\"findings\":[]}"), out));
+
+        JsonObject run = JsonParser.parseString(out.toString()).getAsJsonObject().getAsJsonArray("runs").get(0).getAsJsonObject();
+        assertEquals(0, run.getAsJsonArray("results").size());
+        assertEquals(0, run.getAsJsonObject("tool").getAsJsonObject("driver").getAsJsonArray("rules").size());
+    }
+
+    @Test
+    public void failsForAReportWithoutFindingsArray() {
+        try {
+            new SarifConverter().convert(new StringReader("{\"report\":{\"results\":[{\"id\":\"f1\"}]}}"), new StringWriter());
+            fail("a report layout that is not recognized must not become an empty log");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("findings"));
+        }
+    }
+
+    @Test
+    public void mapsSeveritiesToLevels() {
+        assertEquals("error", SarifConverter.toLevel("critical"));
+        assertEquals("error", SarifConverter.toLevel("high"));
+        assertEquals("warning", SarifConverter.toLevel("medium"));
+        assertEquals("note", SarifConverter.toLevel("informational"));
+        assertEquals("warning", SarifConverter.toLevel(""));
+    }
+}
@@ -0,0 +1,80 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the zScan server, for benchmarks and tests.  Every request is answered with a small JSON
+ * body after its request body has been read completely (and discarded), so uploads of any size can be sent to it.
+ */
+public class StandInServer implements AutoCloseable {
+    public static final String RESPONSE = "{\"id\":\"assessment\",\"buildId\":\"build\",\"zdevMetadata\":{\"analysis\":\"Done\"}}";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    static {
+        // the server writes headers and body separately; without TCP_NODELAY small responses wait for delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public StandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] buffer = new byte[RequestContent.BUFFER_SIZE];
+        long received = 0;
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                received += read;
+            }
+        }
+        requests.incrementAndGet();
+        bytesReceived.addAndGet(received);
+
+        byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", APITaskExecutor.JSON_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return base URL of the server, without a trailing slash
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
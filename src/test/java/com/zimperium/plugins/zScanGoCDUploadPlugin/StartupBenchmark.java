@@ -0,0 +1,72 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the cold start of the plugin: how long it takes to load and instantiate {@link TaskPlugin}, and how long
+ * the first (and second) {@code configuration} and {@code view} requests take to be answered.
+ *
+ * <p>Every iteration loads the plugin and its dependencies in a new class loader, as the agent does when it loads
+ * the plugin jar, so class loading and static initialization are measured each time.  Run it with
+ * {@code ./gradlew startupBenchmark}; the number of iterations can be passed as the first argument.</p>
+ */
+public class StartupBenchmark {
+    private static final String[] REQUESTS = { "configuration", "view" };
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+
+        List<URL> classpath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classpath.add(new File(entry).toURI().toURL());
+        }
+
+        Map<String, List<Long>> samples = new LinkedHashMap<>();
+        for (int i = 0; i < iterations; i++) {
+            try (URLClassLoader loader = new URLClassLoader(classpath.toArray(new URL[0]), ClassLoader.getPlatformClassLoader())) {
+                long start = System.nanoTime();
+                Class<?> pluginClass = Class.forName(TaskPlugin.class.getName(), true, loader);
+                Object plugin = pluginClass.getDeclaredConstructor().newInstance();
+                record(samples, "load and instantiate", start);
+
+                Class<?> requestClass = loader.loadClass("com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest");
+                Method handle = pluginClass.getMethod("handle", loader.loadClass("com.thoughtworks.go.plugin.api.request.GoPluginApiRequest"));
+                for (String name : REQUESTS) {
+                    Object request = requestClass.getConstructor(String.class, String.class, String.class).newInstance("task", "1.0", name);
+                    start = System.nanoTime();
+                    handle.invoke(plugin, request);
+                    record(samples, "first '" + name + "' request", start);
+
+                    start = System.nanoTime();
+                    handle.invoke(plugin, request);
+                    record(samples, "second '" + name + "' request", start);
+                }
+            }
+        }
+
+        System.out.println("Plugin start-up, " + iterations + " iterations (milliseconds)");
+        System.out.println(String.format("%-32s %10s %10s %10s", "", "median", "p90", "max"));
+        for (Map.Entry<String, List<Long>> sample : samples.entrySet()) {
+            List<Long> nanos = sample.getValue();
+            Collections.sort(nanos);
+            System.out.println(String.format("%-32s %10.3f %10.3f %10.3f", sample.getKey(), millis(nanos, 0.5), millis(nanos, 0.9), millis(nanos, 1.0)));
+        }
+    }
+
+    private static void record(Map<String, List<Long>> samples, String name, long start) {
+        samples.computeIfAbsent(name, key -> new ArrayList<>()).add(System.nanoTime() - start);
+    }
+
+    private static double millis(List<Long> sortedNanos, double quantile) {
+        int index = (int) Math.ceil(quantile * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(0, index)) / 1_000_000.0;
+    }
+}
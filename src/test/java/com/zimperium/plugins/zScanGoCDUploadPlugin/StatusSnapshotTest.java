@@ -0,0 +1,81 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatusSnapshotTest {
+    private static final String URL = "https://zc202.zimperium.com/api/zdev-app/public/v1/assessments/status?buildId=b1";
+
+    @Test
+    public void pollsUnconditionallyUntilAStatusIsKnown() {
+        StatusSnapshot snapshot = new StatusSnapshot("b1");
+
+        ApiRequest request = snapshot.addConditions(new ApiRequest.Builder().url(URL).get()).build();
+
+        assertNull(request.header("If-None-Match"));
+        assertNull(request.header("If-Modified-Since"));
+        assertNull(snapshot.getAnalysis());
+    }
+
+    @Test
+    public void sendsTheValidatorsOfTheLastStatus() throws IOException {
+        StatusSnapshot snapshot = new StatusSnapshot("b1");
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("ETag", Collections.singletonList("\"v1\""));
+        headers.put("Last-Modified", Collections.singletonList("Mon, 19 Oct 2026 06:00:00 GMT"));
+
+        assertTrue(snapshot.update(response(200, headers, "{\"id\":null,\"zdevMetadata\":{\"analysis\":\"InProgress\"}}", null)));
+        ApiRequest request = snapshot.addConditions(new ApiRequest.Builder().url(URL).get()).build();
+
+        assertEquals("InProgress", snapshot.getAnalysis());
+        assertNull(snapshot.getAssessmentId());
+        assertEquals("\"v1\"", request.header("If-None-Match"));
+        assertEquals("Mon, 19 Oct 2026 06:00:00 GMT", request.header("If-Modified-Since"));
+    }
+
+    @Test
+    public void keepsTheStatusWhenNotModified() throws IOException {
+        StatusSnapshot snapshot = new StatusSnapshot("b1");
+        String status = "{\"id\":null,\"zdevMetadata\":{\"analysis\":\"InProgress\"}}";
+        snapshot.update(response(200, Collections.singletonMap("ETag", Collections.singletonList("\"v1\"")), status, null));
+        AtomicBoolean closed = new AtomicBoolean();
+
+        assertFalse(snapshot.update(response(304, Collections.emptyMap(), "", () -> closed.set(true))));
+
+        assertTrue(closed.get());
+        assertEquals("InProgress", snapshot.getAnalysis());
+        assertEquals(2, snapshot.getPolls());
+        assertEquals(1, snapshot.getNotModified());
+        assertEquals(status.length(), snapshot.getBytes());
+    }
+
+    @Test
+    public void readsTheAssessmentIdOnceDone() throws IOException {
+        StatusSnapshot snapshot = new StatusSnapshot("b1");
+
+        snapshot.update(response(200, Collections.emptyMap(), "{\"id\":\"a1\",\"zdevMetadata\":{\"analysis\":\"Done\"}}", null));
+
+        assertEquals("Done", snapshot.getAnalysis());
+        assertEquals("a1", snapshot.getAssessmentId());
+        // no validators, so the next poll is unconditional
+        assertNull(snapshot.addConditions(new ApiRequest.Builder().url(URL).get()).build().header("If-None-Match"));
+    }
+
+    private static ApiResponse response(int code, Map<String, List<String>> headers, String body, Closeable onClose) {
+        return new ApiResponse(code, headers, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), onClose);
+    }
+}
@@ -0,0 +1,96 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the throughput and latency of the HTTP transports ({@link HttpTransport#OKHTTP} and
+ * {@link HttpTransport#JDK}) against a local {@link StandInServer}: the latency of small GET requests, like status
+ * polls, and the throughput of file uploads.
+ *
+ * <p>Run it with {@code ./gradlew transportBenchmark}.  Optional arguments: the number of GET requests (default
+ * 2000), the number of uploads (default 10) and the size of the uploaded file in megabytes (default 64).  The first
+ * quarter of each series warms up the client and is not counted.</p>
+ */
+public class TransportBenchmark {
+    public static void main(String[] args) throws Exception {
+        int requests = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        int uploads = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        int megabytes = (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+
+        File file = File.createTempFile("zscan-benchmark", ".apk");
+        file.deleteOnExit();
+        try (RandomAccessFile content = new RandomAccessFile(file, "rw")) {
+            content.setLength(megabytes * 1024L * 1024L);
+        }
+
+        System.out.println(String.format("%-8s %12s %12s %12s %14s", "client", "GET p50 ms", "GET p99 ms", "GET max ms", "upload MB/s"));
+        try (StandInServer server = new StandInServer()) {
+            for (String name : new String[] { HttpTransport.OKHTTP, HttpTransport.JDK }) {
+                HttpTransport transport = HttpTransport.forName(name);
+                List<Long> latencies = getLatencies(transport, server, requests);
+                double throughput = uploadThroughput(transport, server, file, uploads);
+                System.out.println(String.format("%-8s %12.3f %12.3f %12.3f %14.1f", name,
+                    millis(latencies, 0.5), millis(latencies, 0.99), millis(latencies, 1.0), throughput));
+            }
+        }
+    }
+
+    private static List<Long> getLatencies(HttpTransport transport, StandInServer server, int requests) throws IOException {
+        CancellationToken cancellation = new CancellationToken();
+        ApiRequest request = new ApiRequest.Builder()
+            .url(server.getBaseUrl() + "/api/zdev-app/public/v1/assessments/status?buildId=build")
+            .get()
+            .build();
+
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            try (ApiResponse response = transport.execute(request, cancellation, "benchmark status request")) {
+                response.body().string();
+            }
+            if (i >= requests / 4) {
+                latencies.add(System.nanoTime() - start);
+            }
+        }
+        Collections.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * @return megabytes per second of the uploads after the warm-up
+     */
+    private static double uploadThroughput(HttpTransport transport, StandInServer server, File file, int uploads) throws IOException {
+        CancellationToken cancellation = new CancellationToken();
+        long bytes = 0;
+        long nanos = 0;
+        for (int i = 0; i < uploads; i++) {
+            MultipartContent body = new MultipartContent.Builder()
+                .addFormDataPart("buildFile", file.getName(), RequestContent.of(file, APITaskExecutor.FILE_TYPE))
+                .build();
+            ApiRequest request = new ApiRequest.Builder()
+                .url(server.getBaseUrl() + "/api/zdev-upload/public/v1/uploads/build")
+                .post(body)
+                .build();
+
+            long start = System.nanoTime();
+            try (ApiResponse response = transport.execute(request, cancellation, "benchmark upload")) {
+                response.body().string();
+            }
+            if (i >= uploads / 4) {
+                nanos += System.nanoTime() - start;
+                bytes += body.contentLength();
+            }
+        }
+        return (nanos > 0) ? bytes / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0) : 0;
+    }
+
+    private static double millis(List<Long> sortedNanos, double quantile) {
+        int index = (int) Math.ceil(quantile * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(0, index)) / 1_000_000.0;
+    }
+}
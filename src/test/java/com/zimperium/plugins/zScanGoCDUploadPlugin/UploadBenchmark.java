@@ -0,0 +1,137 @@
+package com.zimperium.plugins.zScanGoCDUploadPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Compares the cost of sending a file through a channel ({@link FileChannelContent#writeTo(WritableByteChannel)},
+ * from pooled direct or memory-mapped buffers) with sending it through a stream (read into a heap buffer and
+ * written to an {@link OutputStream}): heap allocation and CPU time of the sending thread per gigabyte sent.
+ *
+ * <p>Each path is measured for a file below {@link FileChannelContent#mapThreshold} (pooled direct buffers) and one
+ * above it (memory-mapped), written to a channel that only reads the bytes, which isolates the cost of reading the
+ * file, and uploaded with the {@link HttpTransport#OKHTTP} transport to a local {@link StandInServer}, which adds
+ * the copies into the client's buffers.  Run it with {@code ./gradlew uploadBenchmark}; the number of gigabytes
+ * sent per measurement can be passed as the first argument (default 2).</p>
+ */
+public class UploadBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final long GIGABYTE = 1024L * 1024L * 1024L;
+
+    public static void main(String[] args) throws Exception {
+        long gigabytes = (args.length > 0) ? Long.parseLong(args[0]) : 2;
+
+        File small = file(FileChannelContent.mapThreshold / 2);
+        File large = file(FileChannelContent.mapRegionSize * 2);
+
+        System.out.println(String.format("%-8s %-8s %-8s %16s %12s", "target", "file", "path", "allocated MB/GB", "CPU ms/GB"));
+        try (StandInServer server = new StandInServer()) {
+            for (String target : new String[] { "discard", HttpTransport.OKHTTP }) {
+                for (File file : new File[] { small, large }) {
+                    for (boolean channel : new boolean[] { true, false }) {
+                        int repetitions = (int) Math.max(1, gigabytes * GIGABYTE / file.length());
+                        // warm up, then measure
+                        send(target, server, file, channel, Math.max(1, repetitions / 4));
+                        long allocated = THREADS.getCurrentThreadAllocatedBytes();
+                        long cpu = THREADS.getCurrentThreadCpuTime();
+                        long bytes = send(target, server, file, channel, repetitions);
+                        allocated = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+                        cpu = THREADS.getCurrentThreadCpuTime() - cpu;
+
+                        double sentGigabytes = bytes / (double) GIGABYTE;
+                        System.out.println(String.format("%-8s %-8s %-8s %16.1f %12.1f", target,
+                            (file == small) ? "small" : "mapped", channel ? "channel" : "stream",
+                            allocated / (1024.0 * 1024.0) / sentGigabytes, cpu / 1_000_000.0 / sentGigabytes));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes sent
+     */
+    private static long send(String target, StandInServer server, File file, boolean channel, int repetitions) throws IOException {
+        CancellationToken cancellation = new CancellationToken();
+        long bytes = 0;
+        for (int i = 0; i < repetitions; i++) {
+            RequestContent content = RequestContent.of(file, APITaskExecutor.FILE_TYPE);
+            if (!channel) {
+                content = streamOnly(content);
+            }
+
+            if (target.equals("discard")) {
+                content.writeTo(DISCARD);
+            }
+            else {
+                ApiRequest request = new ApiRequest.Builder()
+                    .url(server.getBaseUrl() + "/api/zdev-upload/public/v1/uploads/build")
+                    .post(content)
+                    .build();
+                try (ApiResponse response = HttpTransport.forName(target).execute(request, cancellation, "benchmark upload")) {
+                    response.body().string();
+                }
+            }
+            bytes += file.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the content without its channel path, so writing it to a channel goes through a stream
+     */
+    private static RequestContent streamOnly(RequestContent content) {
+        return new RequestContent() {
+            @Override
+            public String contentType() {
+                return content.contentType();
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                return content.contentLength();
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                content.writeTo(out);
+            }
+        };
+    }
+
+    // reads every byte, as a socket would, so mapped pages are actually loaded
+    private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        private final CRC32C checksum = new CRC32C();
+
+        @Override
+        public int write(ByteBuffer source) {
+            int remaining = source.remaining();
+            checksum.update(source);
+            return remaining;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private static File file(long size) throws IOException {
+        File file = File.createTempFile("zscan-benchmark", ".apk");
+        file.deleteOnExit();
+        try (RandomAccessFile content = new RandomAccessFile(file, "rw")) {
+            content.setLength(size);
+        }
+        return file;
+    }
+}